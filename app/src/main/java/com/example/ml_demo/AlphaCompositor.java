@@ -0,0 +1,207 @@
+package com.example.ml_demo;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 显著性Alpha合成引擎 - 将模型预测结果作为透明通道合成到原图上
+ * 纯Java实现，只操作 int[] 像素行，不依赖Android，可以在JVM上直接验证
+ */
+public class AlphaCompositor {
+  // 每个子任务至少处理的行数，太小会导致任务调度开销大于计算本身
+  private static final int MIN_ROWS_PER_TASK = 16;
+
+  private final int maskWidth;
+  private final int maskHeight;
+  private final ForkJoinPool pool;
+
+  // 按图片宽度缓存的水平插值权重，同一宽度只计算一次
+  private volatile HorizontalWeights cachedWeights;
+
+  /**
+   * 按行读取原图像素，pixels 中按 width 行宽连续存放 rows 行
+   */
+  public interface RowSource {
+    void readRows(int[] pixels, int y, int rows);
+  }
+
+  /**
+   * 按行写出合成结果，pixels 中按 width 行宽连续存放 rows 行
+   */
+  public interface RowSink {
+    void writeRows(int[] pixels, int y, int rows);
+  }
+
+  public AlphaCompositor(int maskWidth, int maskHeight) {
+    this(maskWidth, maskHeight, ForkJoinPool.commonPool());
+  }
+
+  public AlphaCompositor(int maskWidth, int maskHeight, ForkJoinPool pool) {
+    this.maskWidth = maskWidth;
+    this.maskHeight = maskHeight;
+    this.pool = pool;
+  }
+
+  /**
+   * 掩码尺寸不同时返回共用同一个线程池的新实例，例如分块推理得到的画布尺寸掩码
+   */
+  public AlphaCompositor withMaskSize(int width, int height) {
+    if (width == maskWidth && height == maskHeight) {
+      return this;
+    }
+    return new AlphaCompositor(width, height, pool);
+  }
+
+  /**
+   * 对整张图片进行合成，pixels 与 out 均为 width * height 的ARGB数组（可以是同一个数组）
+   */
+  public void composite(final int[] pixels, final int width, int height, float[] predictions,
+      final int[] out) {
+    composite(new RowSource() {
+      @Override
+      public void readRows(int[] rowPixels, int y, int rows) {
+        System.arraycopy(pixels, y * width, rowPixels, 0, rows * width);
+      }
+    }, new RowSink() {
+      @Override
+      public void writeRows(int[] rowPixels, int y, int rows) {
+        System.arraycopy(rowPixels, 0, out, y * width, rows * width);
+      }
+    }, width, height, predictions);
+  }
+
+  /**
+   * 按行分块并行合成，每个子任务持有自己的行缓冲区，只读写互不重叠的行
+   */
+  public void composite(RowSource source, RowSink sink, int width, int height,
+      float[] predictions) {
+    if (predictions.length < maskWidth * maskHeight) {
+      throw new IllegalArgumentException("预测结果尺寸不匹配: " + predictions.length);
+    }
+    HorizontalWeights weights = weightsFor(width);
+    int parallelism = Math.max(1, pool.getParallelism());
+    int rowsPerTask = Math.max(MIN_ROWS_PER_TASK, (height + parallelism * 4 - 1) / (parallelism * 4));
+    pool.invoke(new CompositeTask(source, sink, width, height, predictions, weights, rowsPerTask,
+        0, height));
+  }
+
+  /**
+   * 合成单行像素，从 srcOffset / dstOffset 开始各读写 width 个像素
+   */
+  void compositeRow(int[] src, int srcOffset, int[] dst, int dstOffset, int width, int height,
+      int y, float[] predictions, HorizontalWeights weights) {
+    float scaleY = (float) height / maskHeight;
+    float predY = y / scaleY;
+    int y1 = Math.max(0, Math.min(maskHeight - 1, (int) predY));
+    int y2 = Math.max(0, Math.min(maskHeight - 1, y1 + 1));
+    float fy = predY - y1;
+    float fy1 = 1 - fy;
+    int row1 = y1 * maskWidth;
+    int row2 = y2 * maskWidth;
+
+    int[] x1s = weights.x1;
+    int[] x2s = weights.x2;
+    float[] fxs = weights.fx;
+    float[] fx1s = weights.fx1;
+    for (int x = 0; x < width; x++) {
+      int x1 = x1s[x];
+      int x2 = x2s[x];
+      float fx = fxs[x];
+      float fx1 = fx1s[x];
+
+      // 双线性插值，运算顺序与逐像素实现保持一致，保证结果逐位相同
+      float interpolatedPred = predictions[row1 + x1] * fx1 * fy1
+          + predictions[row1 + x2] * fx * fy1
+          + predictions[row2 + x1] * fx1 * fy
+          + predictions[row2 + x2] * fx * fy;
+
+      int alpha = Math.max(0, Math.min(255, (int) (interpolatedPred * 255)));
+      dst[dstOffset + x] = (alpha << 24) | (src[srcOffset + x] & 0x00FFFFFF);
+    }
+  }
+
+  HorizontalWeights weightsFor(int width) {
+    HorizontalWeights weights = cachedWeights;
+    if (weights == null || weights.width != width) {
+      weights = new HorizontalWeights(width, maskWidth);
+      cachedWeights = weights;
+    }
+    return weights;
+  }
+
+  /**
+   * 水平方向的插值下标和权重，只与图片宽度有关
+   */
+  static final class HorizontalWeights {
+    final int width;
+    final int[] x1;
+    final int[] x2;
+    final float[] fx;
+    final float[] fx1;
+
+    HorizontalWeights(int width, int maskWidth) {
+      this.width = width;
+      x1 = new int[width];
+      x2 = new int[width];
+      fx = new float[width];
+      fx1 = new float[width];
+      float scaleX = (float) width / maskWidth;
+      for (int x = 0; x < width; x++) {
+        float predX = x / scaleX;
+        int left = Math.max(0, Math.min(maskWidth - 1, (int) predX));
+        x1[x] = left;
+        x2[x] = Math.max(0, Math.min(maskWidth - 1, left + 1));
+        fx[x] = predX - left;
+        fx1[x] = 1 - fx[x];
+      }
+    }
+  }
+
+  private class CompositeTask extends RecursiveAction {
+    private final RowSource source;
+    private final RowSink sink;
+    private final int width;
+    private final int height;
+    private final float[] predictions;
+    private final HorizontalWeights weights;
+    private final int rowsPerTask;
+    private final int startRow;
+    private final int endRow;
+
+    CompositeTask(RowSource source, RowSink sink, int width, int height, float[] predictions,
+        HorizontalWeights weights, int rowsPerTask, int startRow, int endRow) {
+      this.source = source;
+      this.sink = sink;
+      this.width = width;
+      this.height = height;
+      this.predictions = predictions;
+      this.weights = weights;
+      this.rowsPerTask = rowsPerTask;
+      this.startRow = startRow;
+      this.endRow = endRow;
+    }
+
+    @Override
+    protected void compute() {
+      int rows = endRow - startRow;
+      if (rows > rowsPerTask) {
+        int mid = startRow + rows / 2;
+        invokeAll(
+            new CompositeTask(source, sink, width, height, predictions, weights, rowsPerTask,
+                startRow, mid),
+            new CompositeTask(source, sink, width, height, predictions, weights, rowsPerTask,
+                mid, endRow));
+        return;
+      }
+
+      int[] buffer = new int[rows * width];
+      source.readRows(buffer, startRow, rows);
+      for (int i = 0; i < rows; i++) {
+        int offset = i * width;
+        compositeRow(buffer, offset, buffer, offset, width, height, startRow + i, predictions,
+            weights);
+      }
+      sink.writeRows(buffer, startRow, rows);
+    }
+  }
+}
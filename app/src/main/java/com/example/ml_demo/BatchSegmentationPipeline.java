@@ -0,0 +1,529 @@
+package com.example.ml_demo;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+
+import org.pytorch.IValue;
+import org.pytorch.Module;
+import org.pytorch.Tensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量分割流水线 - 解码、预处理、推理、后处理、PNG编码分别在独立线程中执行
+ * 相邻阶段之间使用有界队列，限制同时在内存中的图片数量
+ * 模型只在推理线程中调用，多张图片共享同一个 Module
+ */
+public class BatchSegmentationPipeline {
+  private static final String TAG = "批量处理日志";
+  // 每个阶段之间最多缓存的任务数，全分辨率图片较大，保持较小的值
+  private static final int QUEUE_CAPACITY = 2;
+  // 预处理和推理交替使用两个输入缓冲区，推理当前图片时可以同时准备下一张
+  private static final int PREPROCESSOR_COUNT = 2;
+
+  /**
+   * 处理进度回调，在编码线程中执行
+   */
+  public interface Listener {
+    void onItemCompleted(ItemResult result);
+
+    void onBatchCompleted(Summary summary);
+  }
+
+  /**
+   * 单张图片的处理结果和各阶段耗时
+   */
+  public static class ItemResult {
+    public final int index;
+    public final Uri uri;
+    public final String outputPath;
+    public final Exception error;
+    public final long decodeTime;
+    public final long preprocessTime;
+    public final long inferenceTime;
+    public final long postprocessTime;
+    public final long encodeTime;
+    public final long totalTime;
+
+    ItemResult(Job job, long finishTime) {
+      this.index = job.index;
+      this.uri = job.uri;
+      this.outputPath = job.outputPath;
+      this.error = job.error;
+      this.decodeTime = job.decodeTime;
+      this.preprocessTime = job.preprocessTime;
+      this.inferenceTime = job.inferenceTime;
+      this.postprocessTime = job.postprocessTime;
+      this.encodeTime = job.encodeTime;
+      this.totalTime = TimeUnit.NANOSECONDS.toMillis(finishTime - job.startTime);
+    }
+
+    public boolean isSuccess() {
+      return error == null;
+    }
+  }
+
+  /**
+   * 整批处理的汇总统计
+   */
+  public static class Summary {
+    public final int total;
+    public final int succeeded;
+    public final int failed;
+    public final long elapsedTime;
+    public final boolean cancelled;
+
+    Summary(int total, int succeeded, int failed, long elapsedTime, boolean cancelled) {
+      this.total = total;
+      this.succeeded = succeeded;
+      this.failed = failed;
+      this.elapsedTime = elapsedTime;
+      this.cancelled = cancelled;
+    }
+
+    /**
+     * 吞吐量：每秒处理的图片数
+     */
+    public float getThroughput() {
+      return elapsedTime > 0 ? succeeded * 1000f / elapsedTime : 0;
+    }
+  }
+
+  private final ContentResolver contentResolver;
+  private final Module module;
+  // 统计使用的名称，等比例模式单独统计，便于和拉伸模式对比
+  private final String metricsName;
+  private final int inputWidth;
+  private final int inputHeight;
+  private final int decodeSize;
+  private final File outputDir;
+  private final HistoryIndex historyIndex;
+  private final CutoutWriter.Format cutoutFormat;
+  private final GuidedMaskRefiner.Config refinement;
+  private final LetterboxTransform.Mode resizeMode;
+  private final Listener listener;
+
+  private final PipelineMetrics metrics = PipelineMetrics.getInstance();
+  private final List<Thread> stages = new ArrayList<>();
+  private final BlockingQueue<TensorPreprocessor> preprocessors =
+      new ArrayBlockingQueue<>(PREPROCESSOR_COUNT);
+  private final AtomicInteger succeeded = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+  private volatile boolean cancelled = false;
+  private long batchStartTime;
+  private int total;
+
+  public BatchSegmentationPipeline(ContentResolver contentResolver, Module module,
+      String modelName, int inputWidth, int inputHeight, int decodeSize, File outputDir,
+      CutoutWriter.Format cutoutFormat, GuidedMaskRefiner.Config refinement,
+      LetterboxTransform.Mode resizeMode, Listener listener) {
+    this.contentResolver = contentResolver;
+    this.module = module;
+    this.metricsName = resizeMode == LetterboxTransform.Mode.LETTERBOX
+        ? modelName + " (letterbox)" : modelName;
+    this.resizeMode = resizeMode;
+    this.inputWidth = inputWidth;
+    this.inputHeight = inputHeight;
+    this.decodeSize = decodeSize;
+    this.outputDir = outputDir;
+    this.historyIndex = HistoryIndex.getInstance(outputDir);
+    this.cutoutFormat = cutoutFormat;
+    this.refinement = refinement;
+    this.listener = listener;
+    for (int i = 0; i < PREPROCESSOR_COUNT; i++) {
+      preprocessors.add(new TensorPreprocessor(inputWidth, inputHeight));
+    }
+  }
+
+  /**
+   * 启动流水线，立即返回
+   */
+  public void start(List<Uri> uris) {
+    total = uris.size();
+    batchStartTime = System.currentTimeMillis();
+
+    BlockingQueue<Job> decodeQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    BlockingQueue<Job> preprocessQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    BlockingQueue<Job> inferenceQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    BlockingQueue<Job> postprocessQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    BlockingQueue<Job> encodeQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    stages.add(new SourceStage(uris, decodeQueue));
+    stages.add(new DecodeStage(decodeQueue, preprocessQueue));
+    stages.add(new PreprocessStage(preprocessQueue, inferenceQueue));
+    stages.add(new InferenceStage(inferenceQueue, postprocessQueue));
+    stages.add(new PostprocessStage(postprocessQueue, encodeQueue));
+    stages.add(new EncodeStage(encodeQueue));
+    for (Thread stage : stages) {
+      stage.start();
+    }
+  }
+
+  /**
+   * 取消处理，已经完成的图片会保留
+   * 只中断各阶段线程，推理线程会在 forward 返回后退出，汇总回调在所有阶段退出后才执行
+   */
+  public void cancel() {
+    cancelled = true;
+    for (Thread stage : stages) {
+      stage.interrupt();
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * 在编码线程中调用，等待其余阶段退出后报告汇总
+   * 取消时推理线程可能仍在 forward 中，报告完成后调用方会认为模型已经空闲
+   */
+  private void finishBatch() {
+    awaitOtherStages();
+    Summary summary = new Summary(total, succeeded.get(), failed.get(),
+        System.currentTimeMillis() - batchStartTime, cancelled);
+    Log.d(TAG, String.format(Locale.US, "批量处理完成: %d/%d, 耗时 %dms, %.2f 张/秒",
+        summary.succeeded, summary.total, summary.elapsedTime, summary.getThroughput()));
+    listener.onBatchCompleted(summary);
+  }
+
+  private void awaitOtherStages() {
+    boolean interrupted = false;
+    for (Thread stage : stages) {
+      if (stage == Thread.currentThread()) {
+        continue;
+      }
+      while (true) {
+        try {
+          stage.join();
+          break;
+        } catch (InterruptedException e) {
+          // 重复调用 cancel() 会再次中断编码线程，仍然要等到阶段退出
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * 流水线中传递的单个任务，同一时间只被一个阶段持有
+   */
+  private static class Job {
+    // 结束标记
+    static final Job END = new Job(-1, null);
+
+    final int index;
+    final Uri uri;
+    // System.nanoTime()
+    long startTime;
+    SampledImage image;
+    TensorPreprocessor preprocessor;
+    Tensor inputTensor;
+    // 图片在模型输入中的位置，后处理时去掉填充区域
+    LetterboxTransform transform;
+    float[] predictions;
+    Bitmap cutout;
+    String outputPath;
+    Exception error;
+    long decodeTime;
+    long preprocessTime;
+    long inferenceTime;
+    long postprocessTime;
+    long encodeTime;
+
+    Job(int index, Uri uri) {
+      this.index = index;
+      this.uri = uri;
+    }
+  }
+
+  /**
+   * 流水线阶段，从输入队列取任务，处理后放入输出队列，出错的任务直接向下游传递
+   */
+  private abstract class Stage extends Thread {
+    private final BlockingQueue<Job> input;
+    private final BlockingQueue<Job> output;
+
+    Stage(String name, BlockingQueue<Job> input, BlockingQueue<Job> output) {
+      super(name);
+      this.input = input;
+      this.output = output;
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!cancelled) {
+          Job job = input.take();
+          if (job != Job.END && job.error == null) {
+            long start = System.nanoTime();
+            try {
+              process(job);
+            } catch (Exception e) {
+              Log.e(TAG, getName() + " 处理失败: " + job.uri, e);
+              job.error = e;
+            }
+            record(job, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+          }
+          emit(job);
+          if (job == Job.END) {
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        // 取消处理
+      }
+      onCancelled();
+    }
+
+    void emit(Job job) throws InterruptedException {
+      output.put(job);
+    }
+
+    void onCancelled() {
+    }
+
+    /**
+     * 处理任务，各阶段自行向 {@link PipelineMetrics} 记录细分耗时
+     */
+    abstract void process(Job job) throws Exception;
+
+    /**
+     * 记录整个阶段的耗时（毫秒），用于进度显示
+     */
+    abstract void record(Job job, long elapsed);
+  }
+
+  private class SourceStage extends Thread {
+    private final List<Uri> uris;
+    private final BlockingQueue<Job> output;
+
+    SourceStage(List<Uri> uris, BlockingQueue<Job> output) {
+      super("batch-source");
+      this.uris = uris;
+      this.output = output;
+    }
+
+    @Override
+    public void run() {
+      try {
+        for (int i = 0; i < uris.size() && !cancelled; i++) {
+          Job job = new Job(i, uris.get(i));
+          job.startTime = System.nanoTime();
+          output.put(job);
+        }
+        output.put(Job.END);
+      } catch (InterruptedException e) {
+        // 取消处理
+      }
+    }
+  }
+
+  private class DecodeStage extends Stage {
+    DecodeStage(BlockingQueue<Job> input, BlockingQueue<Job> output) {
+      super("batch-decode", input, output);
+    }
+
+    @Override
+    void process(Job job) throws IOException {
+      PipelineMetrics.Span span = metrics.start(metricsName, PipelineMetrics.Stage.DECODE);
+      job.image = SampledImage.decode(contentResolver, job.uri, decodeSize);
+      span.stop();
+    }
+
+    @Override
+    void record(Job job, long elapsed) {
+      job.decodeTime = elapsed;
+    }
+  }
+
+  private class PreprocessStage extends Stage {
+    PreprocessStage(BlockingQueue<Job> input, BlockingQueue<Job> output) {
+      super("batch-preprocess", input, output);
+    }
+
+    @Override
+    void process(Job job) throws InterruptedException {
+      // 两个缓冲区都在使用时等待推理线程归还
+      TensorPreprocessor preprocessor = preprocessors.take();
+      try {
+        PipelineMetrics.Span span = metrics.start(metricsName, PipelineMetrics.Stage.PREPROCESS);
+        job.transform = LetterboxTransform.create(resizeMode, job.image.getOrientedWidth(),
+            job.image.getOrientedHeight(), inputWidth, inputHeight);
+        job.inputTensor = preprocessor.process(job.image.getInferenceBitmap(),
+            job.image.getOrientation(), job.transform);
+        span.stop();
+        job.preprocessor = preprocessor;
+      } finally {
+        if (job.preprocessor == null) {
+          preprocessors.add(preprocessor);
+        }
+      }
+    }
+
+    @Override
+    void record(Job job, long elapsed) {
+      job.preprocessTime = elapsed;
+    }
+  }
+
+  private class InferenceStage extends Stage {
+    InferenceStage(BlockingQueue<Job> input, BlockingQueue<Job> output) {
+      super("batch-inference", input, output);
+    }
+
+    @Override
+    void process(Job job) {
+      // 唯一调用 module.forward 的线程
+      try {
+        PipelineMetrics.Span span = metrics.start(metricsName, PipelineMetrics.Stage.INFERENCE);
+        Tensor output = module.forward(IValue.from(job.inputTensor)).toTuple()[0].toTensor();
+        job.predictions = output.getDataAsFloatArray();
+        span.stop();
+      } finally {
+        job.inputTensor = null;
+        preprocessors.add(job.preprocessor);
+        job.preprocessor = null;
+      }
+    }
+
+    @Override
+    void record(Job job, long elapsed) {
+      job.inferenceTime = elapsed;
+    }
+  }
+
+  private class PostprocessStage extends Stage {
+    private final MaskPostProcessor maskPostProcessor = new MaskPostProcessor();
+    private final AlphaCompositor alphaCompositor = new AlphaCompositor(inputWidth, inputHeight);
+    private final GuidedMaskRefiner maskRefiner = new GuidedMaskRefiner(inputWidth, inputHeight);
+
+    PostprocessStage(BlockingQueue<Job> input, BlockingQueue<Job> output) {
+      super("batch-postprocess", input, output);
+    }
+
+    @Override
+    void process(Job job) throws IOException {
+      PipelineMetrics.Span span = metrics.start(metricsName, PipelineMetrics.Stage.POSTPROCESS);
+      // 去掉填充区域，掩码与原图比例一致
+      final int maskWidth = job.transform.getContentWidth();
+      final int maskHeight = job.transform.getContentHeight();
+      job.predictions = job.transform.crop(job.predictions);
+      maskPostProcessor.process(job.predictions, maskWidth, maskHeight);
+      span.stop();
+
+      SampledImage image = job.image;
+      final Bitmap original = image.getFullResolutionBitmap();
+      job.image = null;
+      metrics.record(metricsName, PipelineMetrics.Stage.FULL_DECODE, image.getFullDecodeNanos());
+
+      // 原图不旋转，按EXIF方向读取行带，抠图是旋转后的尺寸
+      span = metrics.start(metricsName, refinement != null
+          ? PipelineMetrics.Stage.REFINE : PipelineMetrics.Stage.COMPOSITE);
+      final int orientation = image.getOrientation();
+      final int rawWidth = original.getWidth();
+      final int rawHeight = original.getHeight();
+      final int width = ExifOrientation.orientedWidth(orientation, rawWidth, rawHeight);
+      final int height = ExifOrientation.orientedHeight(orientation, rawWidth, rawHeight);
+      final Bitmap cutout = BitmapPool.getInstance().get(width, height, Bitmap.Config.ARGB_8888);
+      AlphaCompositor.RowSource source = new AlphaCompositor.RowSource() {
+        @Override
+        public void readRows(int[] pixels, int y, int rows) {
+          ExifOrientation.readRows((p, rawX, rawY, w, h) -> original.getPixels(p, 0, w, rawX,
+              rawY, w, h), orientation, rawWidth, rawHeight, pixels, y, rows);
+        }
+      };
+      AlphaCompositor.RowSink sink = new AlphaCompositor.RowSink() {
+        @Override
+        public void writeRows(int[] pixels, int y, int rows) {
+          cutout.setPixels(pixels, 0, width, 0, y, width, rows);
+        }
+      };
+      if (refinement != null) {
+        maskRefiner.refine(source, sink, width, height, job.predictions, maskWidth, maskHeight,
+            refinement);
+      } else {
+        alphaCompositor.withMaskSize(maskWidth, maskHeight)
+            .composite(source, sink, width, height, job.predictions);
+      }
+      span.stop();
+      job.cutout = cutout;
+      // 批量处理的原图和推理小图不会显示，合成后放回复用池给下一张使用
+      BitmapPool pool = BitmapPool.getInstance();
+      pool.put(original);
+      pool.put(image.getInferenceBitmap());
+    }
+
+    @Override
+    void record(Job job, long elapsed) {
+      job.postprocessTime = elapsed;
+    }
+  }
+
+  private class EncodeStage extends Stage {
+    private final String batchPrefix =
+        new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+
+    EncodeStage(BlockingQueue<Job> input) {
+      super("batch-encode", input, null);
+    }
+
+    @Override
+    void process(Job job) throws IOException {
+      File file = new File(outputDir,
+          batchPrefix + "_" + job.index + cutoutFormat.getExtension());
+      PipelineMetrics.Span span = metrics.start(metricsName, PipelineMetrics.Stage.SAVE);
+      CutoutWriter.encode(job.cutout, file, cutoutFormat);
+      span.stop();
+      try {
+        historyIndex.add(file, job.cutout);
+      } catch (IOException e) {
+        Log.w(TAG, "写入历史索引失败", e);
+      }
+      BitmapPool.getInstance().put(job.cutout);
+      job.cutout = null;
+      job.outputPath = file.getAbsolutePath();
+    }
+
+    @Override
+    void record(Job job, long elapsed) {
+      job.encodeTime = elapsed;
+    }
+
+    @Override
+    void emit(Job job) {
+      if (job == Job.END) {
+        finishBatch();
+        return;
+      }
+      long finishTime = System.nanoTime();
+      if (job.error == null) {
+        succeeded.incrementAndGet();
+        metrics.record(metricsName, PipelineMetrics.Stage.TOTAL, finishTime - job.startTime);
+      } else {
+        failed.incrementAndGet();
+      }
+      listener.onItemCompleted(new ItemResult(job, finishTime));
+    }
+
+    @Override
+    void onCancelled() {
+      finishBatch();
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package com.example.ml_demo;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bitmap复用池 - 按像素内存大小分桶保存不再使用的可变Bitmap，解码（inBitmap）、旋转、掩码和抠图阶段从这里借用
+ * 借出的Bitmap通过 reconfigure 调整为需要的尺寸，只复用不超过需要大小 {@link #MAX_OVERSIZE} 倍的，避免浪费
+ * 总大小超过上限时丢弃最久未使用的；放回后调用者不能再使用这个Bitmap
+ */
+public final class BitmapPool {
+  // 默认上限，大约能放下一张1200万像素原图和它的抠图
+  public static final long DEFAULT_MAX_BYTES = 128L * 1024 * 1024;
+  private static final int MAX_OVERSIZE = 2;
+
+  private static volatile BitmapPool instance;
+
+  // 像素内存字节数到同样大小的Bitmap
+  private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+  // 放回的顺序，队首是最久未使用的
+  private final ArrayDeque<Bitmap> lru = new ArrayDeque<>();
+  private long maxBytes;
+  private long sizeBytes = 0;
+  private long hits = 0;
+  private long misses = 0;
+  private long puts = 0;
+  private long evictions = 0;
+
+  private BitmapPool(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  public static BitmapPool getInstance() {
+    if (instance == null) {
+      synchronized (BitmapPool.class) {
+        if (instance == null) {
+          instance = new BitmapPool(DEFAULT_MAX_BYTES);
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * 借用一张透明的可变Bitmap，池中没有合适的时新建
+   */
+  public Bitmap get(int width, int height, Bitmap.Config config) {
+    Bitmap bitmap = take(width, height, config);
+    if (bitmap == null) {
+      return Bitmap.createBitmap(width, height, config);
+    }
+    bitmap.reconfigure(width, height, config);
+    bitmap.eraseColor(Color.TRANSPARENT);
+    return bitmap;
+  }
+
+  /**
+   * 借用一张至少能放下 width x height 像素的Bitmap作为解码的 inBitmap，没有时返回null
+   * 解码器会自己调整尺寸，这里不清除内容；解码失败时调用者应当放回
+   */
+  public Bitmap getForDecode(int width, int height, Bitmap.Config config) {
+    return take(width, height, config);
+  }
+
+  /**
+   * 放回不再使用的Bitmap，不可变或已回收的直接忽略
+   */
+  public void put(Bitmap bitmap) {
+    if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+        || bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+      return;
+    }
+    int size = bitmap.getAllocationByteCount();
+    synchronized (this) {
+      if (size > maxBytes || lru.contains(bitmap)) {
+        return;
+      }
+      buckets.computeIfAbsent(size, k -> new ArrayDeque<>()).push(bitmap);
+      lru.addLast(bitmap);
+      sizeBytes += size;
+      puts++;
+      trimToSize(maxBytes);
+    }
+  }
+
+  /**
+   * 丢弃最久未使用的Bitmap，直到总大小不超过 maxBytes
+   */
+  public synchronized void trimToSize(long maxBytes) {
+    while (sizeBytes > maxBytes && !lru.isEmpty()) {
+      Bitmap eldest = lru.pollFirst();
+      int size = eldest.getAllocationByteCount();
+      ArrayDeque<Bitmap> bucket = buckets.get(size);
+      bucket.remove(eldest);
+      if (bucket.isEmpty()) {
+        buckets.remove(size);
+      }
+      sizeBytes -= size;
+      evictions++;
+      eldest.recycle();
+    }
+  }
+
+  public synchronized void clear() {
+    trimToSize(0);
+  }
+
+  /**
+   * 调整上限，新的上限更小时立即丢弃多余的
+   */
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    trimToSize(maxBytes);
+  }
+
+  /**
+   * 响应系统内存回调：内存紧张或界面不可见时清空，其他情况减半
+   */
+  public void onTrimMemory(int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      clear();
+    } else {
+      synchronized (this) {
+        trimToSize(sizeBytes / 2);
+      }
+    }
+  }
+
+  /**
+   * 解码到池中借用的Bitmap，width 和 height 是预计的解码尺寸，不能复用时退回普通解码
+   * 解码结果总是可变的，用完后可以放回
+   */
+  public Bitmap decode(byte[] data, BitmapFactory.Options options, int width, int height) {
+    options.inMutable = true;
+    options.inBitmap = getForDecode(width, height, Bitmap.Config.ARGB_8888);
+    if (options.inBitmap == null) {
+      return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+    Bitmap decoded;
+    try {
+      decoded = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    } catch (IllegalArgumentException e) {
+      // 预计的尺寸不准确或格式不支持复用
+      put(options.inBitmap);
+      options.inBitmap = null;
+      return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+    if (decoded == null) {
+      // 数据无法解码时借用的Bitmap没有被使用，放回池中
+      put(options.inBitmap);
+    }
+    return decoded;
+  }
+
+  /**
+   * 先读取尺寸再解码文件到借用的Bitmap
+   */
+  public Bitmap decodeFile(String path) {
+    BitmapFactory.Options bounds = new BitmapFactory.Options();
+    bounds.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(path, bounds);
+    if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+      return null;
+    }
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inMutable = true;
+    options.inBitmap = getForDecode(bounds.outWidth, bounds.outHeight, Bitmap.Config.ARGB_8888);
+    Bitmap decoded;
+    try {
+      decoded = BitmapFactory.decodeFile(path, options);
+    } catch (IllegalArgumentException e) {
+      put(options.inBitmap);
+      options.inBitmap = null;
+      return BitmapFactory.decodeFile(path, options);
+    }
+    if (decoded == null) {
+      put(options.inBitmap);
+    }
+    return decoded;
+  }
+
+  public synchronized void resetStats() {
+    hits = 0;
+    misses = 0;
+    puts = 0;
+    evictions = 0;
+  }
+
+  /**
+   * 统计页面显示的文本
+   */
+  public synchronized String formatStats() {
+    long requests = hits + misses;
+    return String.format(Locale.US,
+        "Bitmap复用池: 命中 %d / %d (%.0f%%), 放回 %d, 丢弃 %d, 占用 %dKB / %dKB, %d 张\n",
+        hits, requests, requests > 0 ? hits * 100.0 / requests : 0.0, puts, evictions,
+        sizeBytes / 1024, maxBytes / 1024, lru.size());
+  }
+
+  public synchronized JSONObject toJson() throws JSONException {
+    JSONObject json = new JSONObject();
+    json.put("hits", hits);
+    json.put("misses", misses);
+    json.put("puts", puts);
+    json.put("evictions", evictions);
+    json.put("sizeBytes", sizeBytes);
+    json.put("maxBytes", maxBytes);
+    json.put("count", lru.size());
+    return json;
+  }
+
+  private synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+    long required = (long) width * height * bytesPerPixel(config);
+    if (required > Integer.MAX_VALUE) {
+      misses++;
+      return null;
+    }
+    Iterator<Map.Entry<Integer, ArrayDeque<Bitmap>>> iterator =
+        buckets.tailMap((int) required, true).entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Integer, ArrayDeque<Bitmap>> entry = iterator.next();
+      if (entry.getKey() > required * MAX_OVERSIZE) {
+        break;
+      }
+      Bitmap bitmap = entry.getValue().pop();
+      if (entry.getValue().isEmpty()) {
+        iterator.remove();
+      }
+      lru.remove(bitmap);
+      sizeBytes -= entry.getKey();
+      hits++;
+      return bitmap;
+    }
+    misses++;
+    return null;
+  }
+
+  private static int bytesPerPixel(Bitmap.Config config) {
+    if (config == Bitmap.Config.ALPHA_8) {
+      return 1;
+    }
+    if (config == Bitmap.Config.RGB_565) {
+      return 2;
+    }
+    return 4;
+  }
+}
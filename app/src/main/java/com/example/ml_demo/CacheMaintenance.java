@@ -0,0 +1,149 @@
+package com.example.ml_demo;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 历史图片清理 - 在后台线程逐个删除历史图片及其缩略图和缓存的预测结果，只删除历史索引中的条目
+ * 可以全部清空，也可以从最旧的开始删除直到总大小不超过预算；每删除一张就更新索引，中途退出也不会留下不一致的清单
+ */
+public class CacheMaintenance {
+  private static final String TAG = "清空缓存日志";
+  // 进度回调的最小间隔，避免大量条目时频繁刷新界面
+  private static final long PROGRESS_INTERVAL_MS = 50;
+
+  /**
+   * 清理进度回调，在主线程执行
+   */
+  public interface Listener {
+    void onProgress(int deleted, int total);
+
+    void onCompleted(int deleted, long freedBytes, long remainingBytes);
+
+    void onFailed(Exception e);
+  }
+
+  private final File directory;
+  private final HistoryIndex historyIndex;
+  private final ExecutorService executor;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private volatile boolean cancelled = false;
+
+  public CacheMaintenance(File directory) {
+    this.directory = directory;
+    this.historyIndex = HistoryIndex.getInstance(directory);
+    this.executor = Executors.newSingleThreadExecutor(r -> new Thread(() -> {
+      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+      r.run();
+    }, "cache-maintenance"));
+  }
+
+  /**
+   * 删除全部历史图片
+   */
+  public void clearAll(Listener listener) {
+    trimToSize(0, listener);
+  }
+
+  /**
+   * 从最旧的历史图片开始删除，直到总大小不超过 budgetBytes
+   */
+  public void trimToSize(long budgetBytes, Listener listener) {
+    cancelled = false;
+    executor.execute(() -> {
+      try {
+        run(budgetBytes, listener);
+      } catch (IOException | RuntimeException e) {
+        Log.e(TAG, "清理失败", e);
+        mainHandler.post(() -> listener.onFailed(e));
+      }
+    });
+  }
+
+  /**
+   * 停止清理，已经删除的不会恢复
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * 不再接受新的清理任务，正在进行的会继续完成
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private void run(long budgetBytes, Listener listener) throws IOException {
+    List<HistoryIndex.Item> items = new ArrayList<>(historyIndex.load());
+    // load() 按从新到旧排列，从最旧的开始删除
+    Collections.reverse(items);
+    long[] sizes = new long[items.size()];
+    long totalBytes = 0;
+    for (int i = 0; i < items.size(); i++) {
+      sizes[i] = sizeOf(items.get(i));
+      totalBytes += sizes[i];
+    }
+
+    int toDelete = 0;
+    long remaining = totalBytes;
+    while (toDelete < items.size() && remaining > budgetBytes) {
+      remaining -= sizes[toDelete];
+      toDelete++;
+    }
+    final int total = toDelete;
+
+    int deleted = 0;
+    long freedBytes = 0;
+    long lastProgress = 0;
+    for (; deleted < total && !cancelled; deleted++) {
+      HistoryIndex.Item item = items.get(deleted);
+      File maskFile = ResultCache.maskFileFor(directory, item.getName());
+      if (maskFile != null) {
+        maskFile.delete();
+      }
+      historyIndex.delete(item);
+      freedBytes += sizes[deleted];
+
+      long now = SystemClock.uptimeMillis();
+      if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+        lastProgress = now;
+        final int progress = deleted + 1;
+        mainHandler.post(() -> listener.onProgress(progress, total));
+      }
+    }
+    historyIndex.compact();
+
+    final int deletedCount = deleted;
+    final long freed = freedBytes;
+    final long remainingBytes = totalBytes - freedBytes;
+    Log.d(TAG, "删除历史图片 " + deletedCount + "/" + total + " 张, 释放 " + freed / 1024 + "KB");
+    mainHandler.post(() -> {
+      listener.onProgress(deletedCount, total);
+      listener.onCompleted(deletedCount, freed, remainingBytes);
+    });
+  }
+
+  /**
+   * 一张历史图片占用的空间，包括缩略图和缓存的预测结果
+   */
+  private long sizeOf(HistoryIndex.Item item) {
+    long size = item.getFile().length() + historyIndex.getThumbnailFile(item).length();
+    File maskFile = ResultCache.maskFileFor(directory, item.getName());
+    if (maskFile != null) {
+      size += maskFile.length();
+    }
+    return size;
+  }
+}
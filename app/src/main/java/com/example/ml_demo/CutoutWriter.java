@@ -0,0 +1,215 @@
+package com.example.ml_demo;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 抠图保存队列 - 在后台线程编码并写入文件，不阻塞推理和合成
+ * 最多同时排队 maxPending 个文件，队列已满时提交线程等待；同一路径尚未开始写入的请求合并为最后一次
+ * 先写入临时文件再重命名，读取历史图片时不会读到写了一半的文件
+ */
+public class CutoutWriter {
+  private static final String TAG = "保存图片日志";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  public static final int DEFAULT_MAX_PENDING = 2;
+
+  public enum Format {
+    PNG(".png"),
+    // 无损WebP保留透明通道，文件比PNG小，编码也更快
+    WEBP_LOSSLESS(".webp");
+
+    private final String extension;
+
+    Format(String extension) {
+      this.extension = extension;
+    }
+
+    public String getExtension() {
+      return extension;
+    }
+
+    /**
+     * Android 11 起支持指定无损WebP，更早的版本使用PNG
+     */
+    public static Format preferred() {
+      return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? WEBP_LOSSLESS : PNG;
+    }
+  }
+
+  /**
+   * 写入完成的回调，在主线程执行
+   */
+  public interface Callback {
+    void onSaved(String path);
+
+    void onFailed(Exception e);
+  }
+
+  private final File outputDir;
+  private final Format format;
+  private final int maxPending;
+  private final ExecutorService executor;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  // 等待写入的文件，按提交顺序排列，只在持有 this 锁时访问
+  private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+
+  public CutoutWriter(File outputDir, Format format) {
+    this(outputDir, format, DEFAULT_MAX_PENDING);
+  }
+
+  public CutoutWriter(File outputDir, Format format, int maxPending) {
+    this.outputDir = outputDir;
+    this.format = format;
+    this.maxPending = maxPending;
+    this.executor = Executors.newSingleThreadExecutor(r -> new Thread(() -> {
+      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+      r.run();
+    }, "cutout-writer"));
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
+  /**
+   * 提交一张图片，文件名为 baseName 加格式扩展名
+   * 写入期间不能再修改 bitmap
+   *
+   * @param callback 可以为 null
+   * @return 写入完成后得到文件的绝对路径
+   */
+  public CompletableFuture<String> write(Bitmap bitmap, String baseName, Callback callback)
+      throws InterruptedException {
+    File target = new File(outputDir, baseName + format.getExtension());
+    String path = target.getAbsolutePath();
+    CompletableFuture<String> future = new CompletableFuture<>();
+    if (callback != null) {
+      future.whenComplete((savedPath, error) -> mainHandler.post(() -> {
+        if (error == null) {
+          callback.onSaved(savedPath);
+        } else {
+          callback.onFailed(error instanceof Exception ? (Exception) error
+              : new RuntimeException(error));
+        }
+      }));
+    }
+
+    synchronized (this) {
+      PendingWrite existing = pending.get(path);
+      if (existing != null) {
+        // 同一文件还没开始写，只保留最新的图片
+        existing.bitmap = bitmap;
+        existing.futures.add(future);
+        return future;
+      }
+      while (pending.size() >= maxPending) {
+        wait();
+      }
+      PendingWrite write = new PendingWrite(bitmap);
+      write.futures.add(future);
+      pending.put(path, write);
+    }
+    try {
+      executor.execute(() -> flush(target));
+    } catch (RejectedExecutionException e) {
+      synchronized (this) {
+        pending.remove(path);
+        notifyAll();
+      }
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * 不再接受新的请求，已经排队的文件会继续写完
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private void flush(File target) {
+    PendingWrite write;
+    synchronized (this) {
+      write = pending.remove(target.getAbsolutePath());
+      notifyAll();
+    }
+    try {
+      long start = System.currentTimeMillis();
+      encode(write.bitmap, target, format);
+      Log.d(TAG, "保存完成: " + target.getName() + ", 耗时 "
+          + (System.currentTimeMillis() - start) + "ms");
+      for (CompletableFuture<String> future : write.futures) {
+        future.complete(target.getAbsolutePath());
+      }
+    } catch (IOException | RuntimeException e) {
+      Log.e(TAG, "保存失败: " + target, e);
+      for (CompletableFuture<String> future : write.futures) {
+        future.completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * 编码并写入文件，先写临时文件再重命名
+   */
+  public static void encode(Bitmap bitmap, File target, Format format) throws IOException {
+    File temp = new File(target.getPath() + ".tmp");
+    boolean compressed;
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE)) {
+      compressed = compress(bitmap, format, out);
+    } catch (IOException e) {
+      temp.delete();
+      throw e;
+    }
+    if (!compressed) {
+      temp.delete();
+      throw new IOException("图片编码失败: " + target.getName());
+    }
+    if (!temp.renameTo(target)) {
+      temp.delete();
+      throw new IOException("无法写入文件: " + target);
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private static boolean compress(Bitmap bitmap, Format format, OutputStream out) {
+    if (format == Format.WEBP_LOSSLESS && Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+      // 无损模式下 quality 表示压缩力度，取较低的值换取编码速度
+      return bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSLESS, 25, out);
+    }
+    if (format == Format.WEBP_LOSSLESS) {
+      // Android 11 之前 quality 为100的WEBP就是无损编码
+      return bitmap.compress(Bitmap.CompressFormat.WEBP, 100, out);
+    }
+    // 使用PNG格式和最高质量保存，确保透明度和细节不丢失
+    return bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+  }
+
+  private static class PendingWrite {
+    Bitmap bitmap;
+    final List<CompletableFuture<String>> futures = new ArrayList<>();
+
+    PendingWrite(Bitmap bitmap) {
+      this.bitmap = bitmap;
+    }
+  }
+}
@@ -3,9 +3,9 @@ package com.example.ml_demo;
 import android.app.Activity;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
@@ -16,17 +16,22 @@ import android.widget.LinearLayout;
 import android.widget.ScrollView;
 import android.widget.SeekBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.Nullable;
 
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class Display3dActivity extends Activity implements SensorEventListener {
-  private Bitmap currentOriginalBitmap;
+  public static final String EXTRA_RESULT_ID = "result_id";
+
   private Bitmap currentResultBitmap;
-  private String currentResultString;
-  
-  // 模型输出尺寸常量
-  public final int WIDTH_SIZE = 320;
-  public final int HEIGHT_SIZE = 320;
+  private SegmentationResult currentResult;
+  private String resultId;
+  // 全分辨率原图在后台解码，解码完成前先显示推理用的预览图
+  private ExecutorService decodeExecutor;
   
   // 传感器相关
   private SensorManager sensorManager;
@@ -88,21 +93,59 @@ public class Display3dActivity extends Activity implements SensorEventListener {
     accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
     gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
     
-    // 从内存中获取数据
-    ImageDataManager dataManager = ImageDataManager.getInstance();
-    currentOriginalBitmap = dataManager.getOriginalBitmap();
-    currentResultString = dataManager.getResultString();
-
-    if (currentResultString != null) {
-      currentResultBitmap = BitmapFactory.decodeFile(currentResultString);
+    // 配置变化重建时沿用上一个实例持有的引用，否则从 ResultStore 取出一份
+    resultId = getIntent().getStringExtra(EXTRA_RESULT_ID);
+    SegmentationResult result = (SegmentationResult) getLastNonConfigurationInstance();
+    if (result == null) {
+      result = ResultStore.getInstance().acquire(resultId);
     }
-
-    if (dataManager.hasData()) {
-      setContentView(show3DView(currentOriginalBitmap, currentResultBitmap));
-    } else {
+    if (result == null) {
+      // 结果已被释放，例如进程重建或内存不足
+      resultId = null;
       finish();
+      return;
+    }
+    currentResult = result;
+    currentResultBitmap = result.getCutoutBitmap();
+    // 结果中的原图保持解码时的方向，通过 OrientedDrawable 在绘制时旋转，不生成旋转后的副本
+    final int orientation = result.getOrientation();
+    Bitmap original = result.peekOriginalBitmap();
+    setContentView(show3DView(new OrientedDrawable(original != null ? original
+        : result.getPreviewBitmap(), orientation), currentResultBitmap));
+    if (original == null) {
+      loadOriginal(result, orientation);
     }
   }
+
+  /**
+   * 命中缓存的结果只解码过预览图，全分辨率原图第一次在这里解码，不阻塞主线程
+   */
+  private void loadOriginal(final SegmentationResult result, final int orientation) {
+    decodeExecutor = Executors.newSingleThreadExecutor();
+    decodeExecutor.execute(() -> {
+      Bitmap original;
+      try {
+        original = result.getOriginalBitmap();
+      } catch (IOException e) {
+        runOnUiThread(() -> {
+          if (!isDestroyed()) {
+            Toast.makeText(this, "原图解码失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+          }
+        });
+        return;
+      }
+      runOnUiThread(() -> {
+        if (!isDestroyed()) {
+          motionImageView.setOriginal(new OrientedDrawable(original, orientation));
+        }
+      });
+    });
+  }
+
+  @Override
+  public Object onRetainNonConfigurationInstance() {
+    return currentResult;
+  }
   
   @Override
   protected void onResume() {
@@ -127,12 +170,17 @@ public class Display3dActivity extends Activity implements SensorEventListener {
   @Override
   protected void onDestroy() {
     super.onDestroy();
-    // Activity销毁时可以选择清除数据，释放内存
-    // 注意：如果有其他Activity也需要使用这些数据，可以不在这里清除
-    // ImageDataManager.getInstance().clearData();
+    // 配置变化时引用交给新的实例，否则释放
+    if (!isChangingConfigurations()) {
+      ResultStore.getInstance().release(resultId);
+    }
+    // 解码出的原图属于结果，这里只停止后台任务
+    if (decodeExecutor != null) {
+      decodeExecutor.shutdownNow();
+    }
   }
 
-  private View show3DView(Bitmap currentOriginalBitmap, Bitmap currentResultBitmap) {
+  private View show3DView(Drawable original, Bitmap currentResultBitmap) {
     // 创建ScrollView作为根布局
     ScrollView scrollView = new ScrollView(this);
     
@@ -155,7 +203,7 @@ public class Display3dActivity extends Activity implements SensorEventListener {
     mainLayout.addView(divider);
     
     // 创建自定义的MotionImageView来处理传感器输入
-    motionImageView = new MotionImageView(this, currentOriginalBitmap, currentResultBitmap);
+    motionImageView = new MotionImageView(this, original, currentResultBitmap);
     LinearLayout.LayoutParams imageParams = new LinearLayout.LayoutParams(
         LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT);
     motionImageView.setLayoutParams(imageParams);
@@ -477,7 +525,7 @@ public class Display3dActivity extends Activity implements SensorEventListener {
    * 自定义ImageView，支持动态偏移绘制和平滑动画
    */
   private class MotionImageView extends View {
-    private Bitmap originalBitmap;
+    private Drawable originalDrawable;
     private Bitmap resultBitmap;
     private Bitmap scaledResultBitmap;
     private Paint overlayPaint;
@@ -490,9 +538,9 @@ public class Display3dActivity extends Activity implements SensorEventListener {
     private static final float ANIMATION_SMOOTHNESS = 0.15f; // 动画平滑度
     private boolean isAnimating = false;
     
-    public MotionImageView(Context context, Bitmap originalBitmap, Bitmap resultBitmap) {
+    public MotionImageView(Context context, Drawable originalDrawable, Bitmap resultBitmap) {
       super(context);
-      this.originalBitmap = originalBitmap;
+      this.originalDrawable = originalDrawable;
       this.resultBitmap = resultBitmap;
       
       // 初始化Paint
@@ -500,12 +548,21 @@ public class Display3dActivity extends Activity implements SensorEventListener {
       overlayPaint.setAlpha(255);
       
       // 保存原始结果图片，避免预处理时的质量损失
-      if (originalBitmap != null && resultBitmap != null) {
+      if (originalDrawable != null && resultBitmap != null) {
         // 直接使用原始结果图片，在绘制时再进行高质量缩放
         scaledResultBitmap = resultBitmap;
       }
     }
     
+    /**
+     * 全分辨率原图解码完成后替换预览图，两者的宽高比相同
+     */
+    public void setOriginal(Drawable originalDrawable) {
+      this.originalDrawable = originalDrawable;
+      requestLayout();
+      invalidate();
+    }
+
     public void updateOffset(float offsetX, float offsetY) {
       this.targetOffsetX = offsetX;
       this.targetOffsetY = offsetY;
@@ -555,7 +612,7 @@ public class Display3dActivity extends Activity implements SensorEventListener {
     protected void onDraw(Canvas canvas) {
       super.onDraw(canvas);
       
-      if (originalBitmap == null || scaledResultBitmap == null) {
+      if (originalDrawable == null || scaledResultBitmap == null) {
         return;
       }
       
@@ -568,19 +625,15 @@ public class Display3dActivity extends Activity implements SensorEventListener {
       }
       
       // 计算原图的绘制位置（宽度match_parent，高度按比例缩放）
-      float originalScale = (float) viewWidth / originalBitmap.getWidth();
+      float originalScale = (float) viewWidth / originalDrawable.getIntrinsicWidth();
       int scaledOriginalWidth = viewWidth; // 宽度填满
-      int scaledOriginalHeight = (int) (originalBitmap.getHeight() * originalScale);
+      int scaledOriginalHeight = (int) (originalDrawable.getIntrinsicHeight() * originalScale);
       int originalX = 0; // 左对齐
       int originalY = (viewHeight - scaledOriginalHeight) / 2; // 垂直居中
       
-      // 使用Paint进行绘制
-      Paint highQualityPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
-      
-      // 绘制底层原图 - 直接在Canvas上缩放，避免创建新Bitmap
-      android.graphics.Rect originalSrcRect = new android.graphics.Rect(0, 0, originalBitmap.getWidth(), originalBitmap.getHeight());
-      android.graphics.Rect originalDstRect = new android.graphics.Rect(originalX, originalY, originalX + scaledOriginalWidth, originalY + scaledOriginalHeight);
-      canvas.drawBitmap(originalBitmap, originalSrcRect, originalDstRect, highQualityPaint);
+      // 绘制底层原图 - 旋转和缩放都由画布矩阵完成，避免创建新Bitmap
+      originalDrawable.setBounds(originalX, originalY, originalX + scaledOriginalWidth, originalY + scaledOriginalHeight);
+      originalDrawable.draw(canvas);
       
       // 计算结果图片的绘制位置（居中 + 传感器偏移）
       int resultWidth = (int) (scaledOriginalWidth * 1.2f);
@@ -606,11 +659,11 @@ public class Display3dActivity extends Activity implements SensorEventListener {
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
       super.onMeasure(widthMeasureSpec, heightMeasureSpec);
       
-      if (originalBitmap != null) {
+      if (originalDrawable != null) {
         int width = MeasureSpec.getSize(widthMeasureSpec);
         
         // 宽度match_parent，高度根据图片比例计算
-        float aspectRatio = (float) originalBitmap.getHeight() / originalBitmap.getWidth();
+        float aspectRatio = (float) originalDrawable.getIntrinsicHeight() / originalDrawable.getIntrinsicWidth();
         int height = (int) (width * aspectRatio);
         
         // 确保高度至少有一个最小值，避免过小
@@ -2,140 +2,329 @@ package com.example.ml_demo;
 
 import android.app.Activity;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.util.Log;
+import android.util.LruCache;
 import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.Button;
+import android.widget.GridView;
 import android.widget.ImageView;
-import android.widget.Spinner;
+import android.widget.ProgressBar;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import androidx.annotation.Nullable;
 
 public class DisplaySegmentActivity extends Activity {
+  private static final String TAG = "历史图片日志";
+  // 缩略图解码线程数，网格快速滚动时排队的任务在单元格复用时取消
+  private static final int THUMBNAIL_THREADS = 2;
+  // “清理到50MB”按钮保留的历史图片总大小
+  private static final long TRIM_BUDGET_BYTES = 50L * 1024 * 1024;
 
   private ImageView croppedImageView;
   private Button clearButton;
-  private Spinner historySpinner;
-  private List<String> historyImagePaths;
-  private List<String> historyImageOptions;
-  private ArrayAdapter<String> historyAdapter;
+  private Button trimButton;
+  private ProgressBar clearProgressBar;
+  private CacheMaintenance cacheMaintenance;
+  private GridView historyGrid;
+  private TextView historyTitleText;
+  private HistoryIndex historyIndex;
+  private HistoryAdapter historyAdapter;
+  private ExecutorService thumbnailExecutor;
+  // 按像素字节数计算大小的缩略图缓存，只在主线程访问
+  private LruCache<String, Bitmap> thumbnailCache;
+  private Future<?> fullImageTask;
 
   @Override
   protected void onCreate(@Nullable Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
     setContentView(R.layout.activity_display_segment);
 
+    historyIndex = HistoryIndex.getInstance(getCacheDir());
+    cacheMaintenance = new CacheMaintenance(getCacheDir());
+    thumbnailExecutor = Executors.newFixedThreadPool(THUMBNAIL_THREADS);
+    int cacheBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+    thumbnailCache = new LruCache<String, Bitmap>(cacheBytes) {
+      @Override
+      protected int sizeOf(String key, Bitmap value) {
+        return value.getByteCount();
+      }
+    };
+
     init();
     loadCroppedImage();
   }
 
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+    thumbnailExecutor.shutdownNow();
+    // 正在进行的清理在后台继续完成，索引始终保持一致
+    cacheMaintenance.shutdown();
+    thumbnailCache.evictAll();
+  }
+
   private void init() {
     croppedImageView = findViewById(R.id.croppedImageView);
     clearButton = findViewById(R.id.clearButton);
-    historySpinner = findViewById(R.id.historySpinner);
+    trimButton = findViewById(R.id.trimButton);
+    clearProgressBar = findViewById(R.id.clearProgressBar);
+    historyGrid = findViewById(R.id.historyGrid);
+    historyTitleText = findViewById(R.id.historyTitleText);
 
-    setupHistorySpinner();
+    setupHistoryGrid();
 
     clearButton.setOnClickListener(new View.OnClickListener() {
       @Override
       public void onClick(View v) {
-        try {
-          File cacheDir = getCacheDir();
-          if (cacheDir.exists()) {
-            File[] files = cacheDir.listFiles();
-            if (files != null) {
-              for (File file : files) {
-                file.delete();
-              }
-            }
-          }
-        } catch (Exception e) {
-          Log.e("清空缓存日志", "清空缓存失败: " + e.getMessage());
-          throw new RuntimeException(e);
-        }
-        finish();
-        Toast.makeText(DisplaySegmentActivity.this, "历史图片已清空！", Toast.LENGTH_LONG).show();
+        startClearing(0);
       }
     });
-  }
-
-  private void setupHistorySpinner() {
-    historyImagePaths = new ArrayList<>();
-    loadHistoryImages();
-    historyImageOptions = new ArrayList<>();
-    for (int i = 0; i < historyImagePaths.size(); i++) {
-      historyImageOptions.add(historyImagePaths.get(i).split("/")[historyImagePaths.get(i).split("/").length - 1]);
-    }
 
-    historyAdapter = new ArrayAdapter<>(this,
-        android.R.layout.simple_spinner_item, historyImageOptions);
-    historyAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+    trimButton.setOnClickListener(new View.OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        startClearing(TRIM_BUDGET_BYTES);
+      }
+    });
+  }
 
-    historySpinner.setAdapter(historyAdapter);
+  /**
+   * 在后台删除历史图片，budgetBytes 为0时全部清空
+   */
+  private void startClearing(final long budgetBytes) {
+    clearButton.setEnabled(false);
+    trimButton.setEnabled(false);
+    clearProgressBar.setProgress(0);
+    clearProgressBar.setVisibility(View.VISIBLE);
+    cacheMaintenance.trimToSize(budgetBytes, new CacheMaintenance.Listener() {
+      @Override
+      public void onProgress(int deleted, int total) {
+        if (isDestroyed()) {
+          return;
+        }
+        clearProgressBar.setMax(Math.max(total, 1));
+        clearProgressBar.setProgress(deleted);
+        historyTitleText.setText("正在删除 " + deleted + "/" + total + ": ");
+      }
 
-    historySpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
       @Override
-      public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-        if (position > 0 && position <= historyImagePaths.size()) {
-          loadHistoryImage(historyImagePaths.get(position));
+      public void onCompleted(int deleted, long freedBytes, long remainingBytes) {
+        if (isDestroyed()) {
+          return;
+        }
+        if (budgetBytes == 0) {
+          finish();
+          Toast.makeText(DisplaySegmentActivity.this, "历史图片已清空！", Toast.LENGTH_LONG).show();
+          return;
         }
+        clearProgressBar.setVisibility(View.GONE);
+        clearButton.setEnabled(true);
+        trimButton.setEnabled(true);
+        Toast.makeText(DisplaySegmentActivity.this, "删除 " + deleted + " 张，释放 "
+            + freedBytes / 1024 / 1024 + "MB，剩余 " + remainingBytes / 1024 / 1024 + "MB",
+            Toast.LENGTH_LONG).show();
+        reloadHistory();
       }
 
       @Override
-      public void onNothingSelected(AdapterView<?> parent) {
-        // 不做任何操作
+      public void onFailed(Exception e) {
+        if (isDestroyed()) {
+          return;
+        }
+        clearProgressBar.setVisibility(View.GONE);
+        clearButton.setEnabled(true);
+        trimButton.setEnabled(true);
+        Toast.makeText(DisplaySegmentActivity.this, "清空缓存失败: " + e.getMessage(),
+            Toast.LENGTH_SHORT).show();
+        reloadHistory();
       }
     });
   }
 
-  private void loadHistoryImages() {
-    historyImagePaths.clear();
-    File cacheDir = getCacheDir();
-    File[] files = cacheDir.listFiles();
-
-    if (files != null) {
-      List<File> imageFiles = new ArrayList<>();
-      historyImagePaths.add("请选择历史图片...");
-      Collections.addAll(imageFiles, files);
-      for (int i = 0; i < imageFiles.size(); i++) {
-        historyImagePaths.add(imageFiles.get(i).getAbsolutePath());
-        Log.d("保存图片日志", "历史图片路径: " + historyImagePaths.get(i));
+  private void setupHistoryGrid() {
+    historyAdapter = new HistoryAdapter();
+    historyGrid.setAdapter(historyAdapter);
+    historyGrid.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+      @Override
+      public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+        loadHistoryImage(historyAdapter.getItem(position));
       }
-    }
+    });
+    // 单元格移出屏幕时取消还没开始的解码
+    historyGrid.setRecyclerListener(new AbsListView.RecyclerListener() {
+      @Override
+      public void onMovedToScrapHeap(View view) {
+        ((ThumbnailHolder) view.getTag()).cancel();
+      }
+    });
+
+    reloadHistory();
   }
 
-  private void loadHistoryImage(String imagePath) {
-    try {
-      Bitmap historyBitmap = BitmapFactory.decodeFile(imagePath);
-      if (historyBitmap != null) {
-        // 显示历史图片到原图位置
-        croppedImageView.setImageBitmap(historyBitmap);
-        Toast.makeText(this, "历史图片加载成功", Toast.LENGTH_SHORT).show();
-      } else {
-        Toast.makeText(this, "无法加载历史图片", Toast.LENGTH_SHORT).show();
-      }
-    } catch (Exception e) {
-      Toast.makeText(this, "加载历史图片失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+  /**
+   * 清单在后台读取，条目再多也不阻塞页面打开
+   */
+  private void reloadHistory() {
+    thumbnailExecutor.execute(() -> {
+      List<HistoryIndex.Item> items = historyIndex.load();
+      Log.d(TAG, "历史图片 " + items.size() + " 张");
+      runOnUiThread(() -> {
+        if (isDestroyed()) {
+          return;
+        }
+        historyTitleText.setText("历史图片 (" + items.size() + "): ");
+        historyAdapter.setItems(items);
+      });
+    });
+  }
+
+  private void loadHistoryImage(HistoryIndex.Item item) {
+    if (fullImageTask != null) {
+      fullImageTask.cancel(false);
     }
+    // 按屏幕宽度采样解码，不加载超出显示需要的像素
+    final int reqSize = getResources().getDisplayMetrics().widthPixels;
+    fullImageTask = thumbnailExecutor.submit(() -> {
+      Bitmap historyBitmap = HistoryIndex.decodeSampled(item.getFile(), reqSize);
+      runOnUiThread(() -> {
+        if (isDestroyed()) {
+          return;
+        }
+        if (historyBitmap != null) {
+          // 显示历史图片到原图位置
+          croppedImageView.setImageBitmap(historyBitmap);
+          Toast.makeText(this, "历史图片加载成功", Toast.LENGTH_SHORT).show();
+        } else {
+          Toast.makeText(this, "无法加载历史图片", Toast.LENGTH_SHORT).show();
+        }
+      });
+    });
   }
 
   private void loadCroppedImage() {
     String imagePath = getIntent().getStringExtra("cropped_image_path");
 
     if (imagePath != null) {
-      Bitmap croppedBitmap = BitmapFactory.decodeFile(imagePath);
-      if (croppedBitmap != null) {
-        croppedImageView.setImageBitmap(croppedBitmap);
+      final int reqSize = getResources().getDisplayMetrics().widthPixels;
+      thumbnailExecutor.execute(() -> {
+        Bitmap croppedBitmap = HistoryIndex.decodeSampled(new File(imagePath), reqSize);
+        if (croppedBitmap != null) {
+          runOnUiThread(() -> croppedImageView.setImageBitmap(croppedBitmap));
+        }
+      });
+    }
+  }
+
+  /**
+   * 单元格复用时记录正在显示的条目和解码任务
+   */
+  private static class ThumbnailHolder {
+    final ImageView imageView;
+    String name;
+    Future<?> task;
+
+    ThumbnailHolder(ImageView imageView) {
+      this.imageView = imageView;
+    }
+
+    void cancel() {
+      name = null;
+      if (task != null) {
+        task.cancel(false);
+        task = null;
+      }
+    }
+  }
+
+  /**
+   * 历史图片网格，单元格复用，缩略图先查内存缓存，未命中时在后台按单元格大小解码
+   */
+  private class HistoryAdapter extends BaseAdapter {
+    private List<HistoryIndex.Item> items = new ArrayList<>();
+
+    void setItems(List<HistoryIndex.Item> items) {
+      this.items = items;
+      notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+      return items.size();
+    }
+
+    @Override
+    public HistoryIndex.Item getItem(int position) {
+      return items.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+      return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+      ThumbnailHolder holder;
+      if (convertView == null) {
+        ImageView imageView = new ImageView(parent.getContext());
+        int cellSize = ((GridView) parent).getColumnWidth();
+        imageView.setLayoutParams(new AbsListView.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT,
+            cellSize > 0 ? cellSize : ViewGroup.LayoutParams.WRAP_CONTENT));
+        imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
+        imageView.setBackgroundColor(0xffffffff);
+        holder = new ThumbnailHolder(imageView);
+        imageView.setTag(holder);
+        convertView = imageView;
+      } else {
+        holder = (ThumbnailHolder) convertView.getTag();
+      }
+
+      HistoryIndex.Item item = items.get(position);
+      if (item.getName().equals(holder.name)) {
+        return convertView;
       }
+      holder.cancel();
+      holder.name = item.getName();
+      Bitmap cached = thumbnailCache.get(item.getName());
+      if (cached != null) {
+        holder.imageView.setImageBitmap(cached);
+        return convertView;
+      }
+      holder.imageView.setImageBitmap(null);
+      int columnWidth = ((GridView) parent).getColumnWidth();
+      final int reqSize = columnWidth > 0
+          ? Math.min(columnWidth, HistoryIndex.THUMBNAIL_SIZE) : HistoryIndex.THUMBNAIL_SIZE;
+      holder.task = thumbnailExecutor.submit(() -> {
+        Bitmap thumbnail = historyIndex.loadThumbnail(item, reqSize);
+        if (thumbnail == null) {
+          return;
+        }
+        runOnUiThread(() -> {
+          if (isDestroyed()) {
+            return;
+          }
+          thumbnailCache.put(item.getName(), thumbnail);
+          // 解码期间单元格可能已被复用到其他条目
+          if (item.getName().equals(holder.name)) {
+            holder.imageView.setImageBitmap(thumbnail);
+          }
+        });
+      });
+      return convertView;
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+package com.example.ml_demo;
+
+/**
+ * EXIF方向的坐标变换 - 不生成旋转后的图片副本，而是在读取像素时按方向换算坐标
+ * 纯Java实现，只操作 int[] 像素，不依赖Android，可以在JVM上直接验证
+ * 方向值与 ExifInterface.ORIENTATION_* 相同，变换方式与旋转/翻转后的图片逐像素一致
+ */
+public final class ExifOrientation {
+  public static final int NORMAL = 1;
+  public static final int FLIP_HORIZONTAL = 2;
+  public static final int ROTATE_180 = 3;
+  public static final int FLIP_VERTICAL = 4;
+  // 顺时针旋转90度后水平翻转
+  public static final int TRANSPOSE = 5;
+  public static final int ROTATE_90 = 6;
+  // 顺时针旋转270度后水平翻转
+  public static final int TRANSVERSE = 7;
+  public static final int ROTATE_270 = 8;
+
+  /**
+   * 从原图读取一个矩形区域，pixels 中按 w 行宽连续存放 h 行
+   */
+  public interface PixelReader {
+    void read(int[] pixels, int x, int y, int w, int h);
+  }
+
+  private ExifOrientation() {
+  }
+
+  public static boolean swapsDimensions(int orientation) {
+    return orientation == ROTATE_90 || orientation == ROTATE_270 || orientation == TRANSPOSE
+        || orientation == TRANSVERSE;
+  }
+
+  /**
+   * 旋转后的宽度
+   */
+  public static int orientedWidth(int orientation, int width, int height) {
+    return swapsDimensions(orientation) ? height : width;
+  }
+
+  public static int orientedHeight(int orientation, int width, int height) {
+    return swapsDimensions(orientation) ? width : height;
+  }
+
+  /**
+   * 读取旋转后图片的第 y 行开始的 rows 行，每次只从原图读取对应的一条行带或列带
+   *
+   * @param width  原图宽度（未旋转）
+   * @param height 原图高度（未旋转）
+   * @param out    按旋转后的宽度连续存放 rows 行
+   */
+  public static void readRows(PixelReader reader, int orientation, int width, int height,
+      int[] out, int y, int rows) {
+    switch (orientation) {
+      case FLIP_HORIZONTAL, ROTATE_180, FLIP_VERTICAL -> {
+        boolean flipX = orientation != FLIP_VERTICAL;
+        boolean flipY = orientation != FLIP_HORIZONTAL;
+        // 旋转后的行对应原图的行，上下翻转时行带取自原图底部
+        reader.read(out, 0, flipY ? height - y - rows : y, width, rows);
+        if (flipY) {
+          reverseRows(out, width, rows);
+        }
+        if (flipX) {
+          for (int i = 0; i < rows; i++) {
+            reverse(out, i * width, width);
+          }
+        }
+      }
+      case TRANSPOSE, ROTATE_90, TRANSVERSE, ROTATE_270 -> {
+        // 旋转后的行对应原图的列，读取 rows 列宽、整列高的列带后转置
+        boolean fromRight = orientation == TRANSVERSE || orientation == ROTATE_270;
+        boolean flipColumn = orientation == ROTATE_90 || orientation == TRANSVERSE;
+        int[] band = new int[rows * height];
+        reader.read(band, fromRight ? width - y - rows : y, 0, rows, height);
+        for (int i = 0; i < rows; i++) {
+          int column = fromRight ? rows - 1 - i : i;
+          int offset = i * height;
+          for (int x = 0; x < height; x++) {
+            int rawY = flipColumn ? height - 1 - x : x;
+            out[offset + x] = band[rawY * rows + column];
+          }
+        }
+      }
+      default -> reader.read(out, 0, y, width, rows);
+    }
+  }
+
+  private static void reverse(int[] pixels, int offset, int length) {
+    for (int i = offset, j = offset + length - 1; i < j; i++, j--) {
+      int t = pixels[i];
+      pixels[i] = pixels[j];
+      pixels[j] = t;
+    }
+  }
+
+  private static void reverseRows(int[] pixels, int width, int rows) {
+    int[] row = new int[width];
+    for (int i = 0, j = rows - 1; i < j; i++, j--) {
+      System.arraycopy(pixels, i * width, row, 0, width);
+      System.arraycopy(pixels, j * width, pixels, i * width, width);
+      System.arraycopy(row, 0, pixels, j * width, width);
+    }
+  }
+}
@@ -0,0 +1,364 @@
+package com.example.ml_demo;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 高分辨率掩码细化 - 以原图亮度为引导，对低分辨率预测结果做快速导向滤波（Fast Guided Filter）
+ * 在中间分辨率上用积分图计算盒式滤波得到线性系数 a、b，再把系数双线性放大到原图尺寸，
+ * 由 alpha = a * I + b 生成贴合原图边缘的全分辨率透明度；各步骤都按行分块并行
+ * 纯Java实现，只操作 int[] 像素行，不依赖Android，可以在JVM上直接验证
+ */
+public class GuidedMaskRefiner {
+  // 每个子任务至少处理的行数，与 AlphaCompositor 一致
+  private static final int MIN_ROWS_PER_TASK = 16;
+  // 耗时估计的平滑系数，新的测量值占的比例
+  private static final double ESTIMATE_WEIGHT = 0.3;
+
+  /**
+   * 细化参数，按模型配置
+   */
+  public static final class Config {
+    // 质量优先：中间分辨率更高、边缘更锐利
+    public static final Config QUALITY = new Config(1280, 8, 1e-3f, 600);
+    // 速度优先：中间分辨率较低，正则更强，适合噪声较多的轻量模型
+    public static final Config FAST = new Config(768, 6, 4e-3f, 250);
+
+    /**
+     * 中间分辨率的长边，原图更小时使用原图尺寸
+     */
+    public final int guideSize;
+    /**
+     * 盒式滤波半径，以中间分辨率的像素计
+     */
+    public final int radius;
+    /**
+     * 正则系数，越大越接近原始掩码，越小越贴合原图边缘（亮度范围 0~1）
+     */
+    public final float epsilon;
+    /**
+     * 细化的时间预算，预计超出时降低中间分辨率
+     */
+    public final long budgetMillis;
+
+    public Config(int guideSize, int radius, float epsilon, long budgetMillis) {
+      if (guideSize <= 0 || radius <= 0 || epsilon <= 0 || budgetMillis <= 0) {
+        throw new IllegalArgumentException("细化参数无效");
+      }
+      this.guideSize = guideSize;
+      this.radius = radius;
+      this.epsilon = epsilon;
+      this.budgetMillis = budgetMillis;
+    }
+
+    /**
+     * 模型对应的默认参数：完整版 U2NET 的掩码更精细，使用质量优先的参数
+     */
+    public static Config forModel(String modelName) {
+      return modelName != null && modelName.startsWith("u2netp") ? FAST : QUALITY;
+    }
+  }
+
+  private final int maskWidth;
+  private final int maskHeight;
+  private final ForkJoinPool pool;
+
+  // 每个中间分辨率像素和每个原图像素的耗时估计（纳秒），用于在时间预算内选择中间分辨率
+  private volatile double guideNanosPerPixel = 0;
+  private volatile double fullNanosPerPixel = 0;
+
+  public GuidedMaskRefiner(int maskWidth, int maskHeight) {
+    this(maskWidth, maskHeight, ForkJoinPool.commonPool());
+  }
+
+  public GuidedMaskRefiner(int maskWidth, int maskHeight, ForkJoinPool pool) {
+    this.maskWidth = maskWidth;
+    this.maskHeight = maskHeight;
+    this.pool = pool;
+  }
+
+  /**
+   * 细化并合成，source 和 sink 的约定与 {@link AlphaCompositor} 相同
+   */
+  public void refine(AlphaCompositor.RowSource source, AlphaCompositor.RowSink sink, int width,
+      int height, float[] predictions, Config config) {
+    refine(source, sink, width, height, predictions, maskWidth, maskHeight, config);
+  }
+
+  /**
+   * 预测结果的尺寸与构造时不同时使用，例如分块推理得到的画布尺寸掩码
+   */
+  public void refine(AlphaCompositor.RowSource source, AlphaCompositor.RowSink sink, int width,
+      int height, float[] predictions, int maskWidth, int maskHeight, Config config) {
+    if (predictions.length < maskWidth * maskHeight) {
+      throw new IllegalArgumentException("预测结果尺寸不匹配: " + predictions.length);
+    }
+    int guideLongSide = chooseGuideSize(width, height, Math.max(maskWidth, maskHeight), config);
+    float scale = Math.min(1f, (float) guideLongSide / Math.max(width, height));
+    int guideWidth = Math.max(1, Math.round(width * scale));
+    int guideHeight = Math.max(1, Math.round(height * scale));
+
+    long start = System.nanoTime();
+    float[] guide = downsampleGuide(source, width, height, guideWidth, guideHeight);
+    float[][] coefficients = solve(guide, guideWidth, guideHeight, predictions, maskWidth,
+        maskHeight, config);
+    long solved = System.nanoTime();
+    applyCoefficients(source, sink, width, height, coefficients[0], coefficients[1],
+        guideWidth, guideHeight);
+    long finished = System.nanoTime();
+
+    guideNanosPerPixel = smooth(guideNanosPerPixel,
+        (double) (solved - start) / (guideWidth * guideHeight));
+    fullNanosPerPixel = smooth(fullNanosPerPixel, (double) (finished - solved) / width / height);
+  }
+
+  /**
+   * 在时间预算内选择中间分辨率的长边，还没有测量数据时使用配置值
+   * 原图全分辨率的最后一步无法省略，只缩小中间分辨率，最低不小于掩码尺寸
+   */
+  int chooseGuideSize(int width, int height, int maskSize, Config config) {
+    int longSide = Math.min(config.guideSize, Math.max(width, height));
+    double guideCost = guideNanosPerPixel;
+    if (guideCost <= 0) {
+      return longSide;
+    }
+    double budgetNanos = config.budgetMillis * 1e6 - fullNanosPerPixel * width * height;
+    double aspect = (double) Math.min(width, height) / Math.max(width, height);
+    double affordablePixels = Math.max(0, budgetNanos) / guideCost;
+    int affordableLongSide = (int) Math.sqrt(affordablePixels / aspect);
+    int minLongSide = Math.min(maskSize, Math.max(width, height));
+    return Math.max(minLongSide, Math.min(longSide, affordableLongSide));
+  }
+
+  /**
+   * 按区域平均把原图缩小为中间分辨率的亮度图（0~1），每个子任务只读取自己对应的原图行带
+   */
+  float[] downsampleGuide(final AlphaCompositor.RowSource source, final int width,
+      final int height, final int guideWidth, final int guideHeight) {
+    final float[] guide = new float[guideWidth * guideHeight];
+    forEachRows(guideHeight, (start, end) -> {
+      int bandStart = start * height / guideHeight;
+      int bandEnd = end * height / guideHeight;
+      int[] band = new int[(bandEnd - bandStart) * width];
+      source.readRows(band, bandStart, bandEnd - bandStart);
+      for (int gy = start; gy < end; gy++) {
+        int y0 = gy * height / guideHeight;
+        int y1 = Math.max(y0 + 1, (gy + 1) * height / guideHeight);
+        for (int gx = 0; gx < guideWidth; gx++) {
+          int x0 = gx * width / guideWidth;
+          int x1 = Math.max(x0 + 1, (gx + 1) * width / guideWidth);
+          float sum = 0;
+          for (int y = y0; y < y1; y++) {
+            int offset = (y - bandStart) * width;
+            for (int x = x0; x < x1; x++) {
+              sum += luminance(band[offset + x]);
+            }
+          }
+          guide[gy * guideWidth + gx] = sum / ((y1 - y0) * (x1 - x0));
+        }
+      }
+    });
+    return guide;
+  }
+
+  /**
+   * 在中间分辨率上求解导向滤波，返回平滑后的系数 {meanA, meanB}
+   */
+  float[][] solve(float[] guide, final int guideWidth, final int guideHeight,
+      final float[] predictions, final int maskWidth, final int maskHeight, Config config) {
+    final int size = guideWidth * guideHeight;
+    // 预测结果双线性放大到中间分辨率
+    final float[] input = new float[size];
+    final AlphaCompositor.HorizontalWeights weights =
+        new AlphaCompositor.HorizontalWeights(guideWidth, maskWidth);
+    forEachRows(guideHeight, (start, end) -> {
+      for (int y = start; y < end; y++) {
+        sampleRow(predictions, maskWidth, maskHeight, weights, y, guideHeight, input,
+            y * guideWidth);
+      }
+    });
+
+    final float[] guideInput = new float[size];
+    final float[] guideSquare = new float[size];
+    for (int i = 0; i < size; i++) {
+      guideInput[i] = guide[i] * input[i];
+      guideSquare[i] = guide[i] * guide[i];
+    }
+
+    int radius = Math.max(1, Math.min(config.radius, Math.max(guideWidth, guideHeight) / 2));
+    double[] integral = new double[(guideWidth + 1) * (guideHeight + 1)];
+    final float[] meanGuide = boxMean(guide, guideWidth, guideHeight, radius, integral);
+    final float[] meanInput = boxMean(input, guideWidth, guideHeight, radius, integral);
+    final float[] meanGuideInput = boxMean(guideInput, guideWidth, guideHeight, radius, integral);
+    final float[] meanGuideSquare = boxMean(guideSquare, guideWidth, guideHeight, radius,
+        integral);
+
+    // 原地复用数组：a 写入 guideInput，b 写入 guideSquare
+    final float epsilon = config.epsilon;
+    final float[] a = guideInput;
+    final float[] b = guideSquare;
+    for (int i = 0; i < size; i++) {
+      float variance = meanGuideSquare[i] - meanGuide[i] * meanGuide[i];
+      float covariance = meanGuideInput[i] - meanGuide[i] * meanInput[i];
+      a[i] = covariance / (variance + epsilon);
+      b[i] = meanInput[i] - a[i] * meanGuide[i];
+    }
+    return new float[][]{boxMean(a, guideWidth, guideHeight, radius, integral),
+        boxMean(b, guideWidth, guideHeight, radius, integral)};
+  }
+
+  /**
+   * 用积分图计算 (2r+1)^2 窗口内的均值，边界处只按窗口内实际的像素数平均
+   * 积分图使用 double 累加，百万像素级别也不会丢失精度；integral 由调用者复用
+   */
+  float[] boxMean(final float[] values, final int width, final int height, final int radius,
+      final double[] integral) {
+    final int stride = width + 1;
+    // 先按行求前缀和，再按列累加，两步分别按行和按列分块并行
+    forEachRows(height, (start, end) -> {
+      for (int y = start; y < end; y++) {
+        int row = (y + 1) * stride;
+        int src = y * width;
+        integral[row] = 0;
+        double sum = 0;
+        for (int x = 0; x < width; x++) {
+          sum += values[src + x];
+          integral[row + x + 1] = sum;
+        }
+      }
+    });
+    for (int x = 0; x <= width; x++) {
+      integral[x] = 0;
+    }
+    forEachRows(width, (start, end) -> {
+      for (int y = 2; y <= height; y++) {
+        int row = y * stride;
+        int previous = row - stride;
+        for (int x = start + 1; x <= end; x++) {
+          integral[row + x] += integral[previous + x];
+        }
+      }
+    });
+
+    final float[] out = new float[width * height];
+    forEachRows(height, (start, end) -> {
+      for (int y = start; y < end; y++) {
+        int top = Math.max(0, y - radius);
+        int bottom = Math.min(height, y + radius + 1);
+        int topRow = top * stride;
+        int bottomRow = bottom * stride;
+        for (int x = 0; x < width; x++) {
+          int left = Math.max(0, x - radius);
+          int right = Math.min(width, x + radius + 1);
+          double sum = integral[bottomRow + right] - integral[topRow + right]
+              - integral[bottomRow + left] + integral[topRow + left];
+          out[y * width + x] = (float) (sum / ((bottom - top) * (right - left)));
+        }
+      }
+    });
+    return out;
+  }
+
+  /**
+   * 系数双线性放大到原图尺寸，与原图亮度组合得到透明度并写出合成结果
+   */
+  private void applyCoefficients(final AlphaCompositor.RowSource source,
+      final AlphaCompositor.RowSink sink, final int width, final int height, final float[] meanA,
+      final float[] meanB, final int guideWidth, final int guideHeight) {
+    final AlphaCompositor.HorizontalWeights weights =
+        new AlphaCompositor.HorizontalWeights(width, guideWidth);
+    forEachRows(height, (start, end) -> {
+      int rows = end - start;
+      int[] buffer = new int[rows * width];
+      float[] rowA = new float[width];
+      float[] rowB = new float[width];
+      source.readRows(buffer, start, rows);
+      for (int i = 0; i < rows; i++) {
+        int y = start + i;
+        sampleRow(meanA, guideWidth, guideHeight, weights, y, height, rowA, 0);
+        sampleRow(meanB, guideWidth, guideHeight, weights, y, height, rowB, 0);
+        int offset = i * width;
+        for (int x = 0; x < width; x++) {
+          int pixel = buffer[offset + x];
+          float value = rowA[x] * luminance(pixel) + rowB[x];
+          int alpha = Math.max(0, Math.min(255, (int) (value * 255)));
+          buffer[offset + x] = (alpha << 24) | (pixel & 0x00FFFFFF);
+        }
+      }
+      sink.writeRows(buffer, start, rows);
+    });
+  }
+
+  /**
+   * 双线性采样一行，坐标换算与 {@link AlphaCompositor#compositeRow} 相同
+   */
+  private static void sampleRow(float[] values, int valuesWidth, int valuesHeight,
+      AlphaCompositor.HorizontalWeights weights, int y, int height, float[] out, int outOffset) {
+    float predY = y / ((float) height / valuesHeight);
+    int y1 = Math.max(0, Math.min(valuesHeight - 1, (int) predY));
+    int y2 = Math.max(0, Math.min(valuesHeight - 1, y1 + 1));
+    float fy = predY - y1;
+    float fy1 = 1 - fy;
+    int row1 = y1 * valuesWidth;
+    int row2 = y2 * valuesWidth;
+    for (int x = 0; x < weights.width; x++) {
+      int x1 = weights.x1[x];
+      int x2 = weights.x2[x];
+      float fx = weights.fx[x];
+      float fx1 = weights.fx1[x];
+      out[outOffset + x] = values[row1 + x1] * fx1 * fy1 + values[row1 + x2] * fx * fy1
+          + values[row2 + x1] * fx1 * fy + values[row2 + x2] * fx * fy;
+    }
+  }
+
+  private static float luminance(int pixel) {
+    return (((pixel >> 16) & 0xff) * 0.299f + ((pixel >> 8) & 0xff) * 0.587f
+        + (pixel & 0xff) * 0.114f) / 255f;
+  }
+
+  private static double smooth(double estimate, double sample) {
+    return estimate <= 0 ? sample : estimate + (sample - estimate) * ESTIMATE_WEIGHT;
+  }
+
+  /**
+   * 把 [0, count) 按行分块并行执行，每个子任务处理互不重叠的 [start, end)
+   */
+  private void forEachRows(int count, RowRange body) {
+    int parallelism = Math.max(1, pool.getParallelism());
+    int rowsPerTask = Math.max(MIN_ROWS_PER_TASK,
+        (count + parallelism * 4 - 1) / (parallelism * 4));
+    pool.invoke(new RowTask(body, rowsPerTask, 0, count));
+  }
+
+  private interface RowRange {
+    void run(int start, int end);
+  }
+
+  private static class RowTask extends RecursiveAction {
+    private final RowRange body;
+    private final int rowsPerTask;
+    private final int start;
+    private final int end;
+
+    RowTask(RowRange body, int rowsPerTask, int start, int end) {
+      this.body = body;
+      this.rowsPerTask = rowsPerTask;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      int rows = end - start;
+      if (rows > rowsPerTask) {
+        int mid = start + rows / 2;
+        invokeAll(new RowTask(body, rowsPerTask, start, mid),
+            new RowTask(body, rowsPerTask, mid, end));
+        return;
+      }
+      if (rows > 0) {
+        body.run(start, end);
+      }
+    }
+  }
+}
@@ -0,0 +1,388 @@
+package com.example.ml_demo;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 历史图片索引 - 在 history 子目录保存一份清单和每张抠图的缩略图
+ * 打开历史页面时只需要读取清单，不用解码全尺寸的抠图；清单每行一条记录，新结果直接追加
+ * 清单里没有的图片（旧版本留下的或清单写入失败的）在加载时补充，缩略图在第一次显示时生成
+ * 删除时追加一行删除标记，不用重写整个清单；标记在下次加载或 {@link #compact()} 时清除
+ * 同一个目录只有一个实例，通过 {@link #getInstance(File)} 获取
+ */
+public final class HistoryIndex {
+  private static final String TAG = "历史索引日志";
+  private static final String HISTORY_DIR = "history";
+  private static final String MANIFEST_NAME = "index.txt";
+  private static final String THUMBNAIL_EXTENSION = ".webp";
+  private static final String DELETED_MARK = "-";
+  // 缩略图长边的像素数，网格单元不超过这个尺寸
+  public static final int THUMBNAIL_SIZE = 256;
+  private static final String[] IMAGE_EXTENSIONS = {".png", ".webp", ".jpg", ".jpeg"};
+
+  private static final Map<String, HistoryIndex> instances = new HashMap<>();
+
+  /**
+   * 一张历史图片
+   */
+  public static final class Item {
+    private final String name;
+    private final File file;
+    private final long timestamp;
+
+    Item(String name, File file, long timestamp) {
+      this.name = name;
+      this.file = file;
+      this.timestamp = timestamp;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    public long getTimestamp() {
+      return timestamp;
+    }
+  }
+
+  private final File directory;
+  private final File thumbnailDirectory;
+  private final File manifestFile;
+  // 文件名到记录，只在持有 this 锁时访问
+  private final Map<String, Item> items = new LinkedHashMap<>();
+  private boolean loaded = false;
+  // 清单中有删除标记或重复行，需要重写
+  private boolean dirty = false;
+
+  private HistoryIndex(File directory) {
+    this.directory = directory;
+    this.thumbnailDirectory = new File(directory, HISTORY_DIR);
+    this.manifestFile = new File(thumbnailDirectory, MANIFEST_NAME);
+  }
+
+  public static HistoryIndex getInstance(File directory) {
+    synchronized (instances) {
+      String path = directory.getAbsolutePath();
+      HistoryIndex index = instances.get(path);
+      if (index == null) {
+        index = new HistoryIndex(directory);
+        instances.put(path, index);
+      }
+      return index;
+    }
+  }
+
+  /**
+   * 登记一张刚写入的抠图，用内存里的图片生成缩略图，不再从文件解码
+   */
+  public void add(File file, Bitmap image) throws IOException {
+    ensureDirectory();
+    writeThumbnail(image, thumbnailFile(file.getName()));
+    Item item = new Item(file.getName(), file, System.currentTimeMillis());
+    synchronized (this) {
+      // 未加载时只追加到清单，加载时会读到这一行
+      if (loaded) {
+        items.remove(item.name);
+        items.put(item.name, item);
+      }
+      appendToManifest(item);
+    }
+  }
+
+  /**
+   * 读取清单并和目录中的文件对照，返回按时间从新到旧排列的记录
+   * 清单和目录不一致时重写清单，不要在主线程调用
+   */
+  public synchronized List<Item> load() {
+    if (!loaded) {
+      readManifest();
+      loaded = true;
+    }
+    boolean changed = reconcile() || dirty;
+    if (changed) {
+      try {
+        rewriteManifest();
+      } catch (IOException e) {
+        Log.w(TAG, "重写清单失败", e);
+      }
+    }
+    List<Item> result = new ArrayList<>(items.values());
+    Collections.reverse(result);
+    return result;
+  }
+
+  /**
+   * 删除一张历史图片和它的缩略图，并在清单中追加删除标记
+   */
+  public void delete(Item item) throws IOException {
+    item.file.delete();
+    thumbnailFile(item.name).delete();
+    synchronized (this) {
+      items.remove(item.name);
+      ensureDirectory();
+      try (Writer writer = new OutputStreamWriter(
+          new FileOutputStream(manifestFile, true), StandardCharsets.UTF_8)) {
+        writer.write(item.name + '\t' + DELETED_MARK + '\n');
+      }
+      dirty = true;
+    }
+  }
+
+  /**
+   * 重写清单，去掉删除标记
+   */
+  public synchronized void compact() throws IOException {
+    if (!loaded) {
+      readManifest();
+      loaded = true;
+    }
+    rewriteManifest();
+  }
+
+  /**
+   * 缩略图文件，可能还没有生成
+   */
+  File getThumbnailFile(Item item) {
+    return thumbnailFile(item.name);
+  }
+
+  private void remove(String name) {
+    items.remove(name);
+    thumbnailFile(name).delete();
+  }
+
+  /**
+   * 读取缩略图，按 reqSize 采样；缩略图不存在时从原图采样解码并补写
+   */
+  public Bitmap loadThumbnail(Item item, int reqSize) {
+    File thumbnail = thumbnailFile(item.name);
+    if (thumbnail.isFile()) {
+      Bitmap bitmap = decodeSampled(thumbnail, reqSize);
+      if (bitmap != null) {
+        return bitmap;
+      }
+    }
+    Bitmap source = decodeSampled(item.file, THUMBNAIL_SIZE);
+    if (source == null) {
+      return null;
+    }
+    Bitmap scaled = scaleToThumbnail(source);
+    if (scaled != source) {
+      source.recycle();
+    }
+    try {
+      ensureDirectory();
+      writeThumbnail(scaled, thumbnail);
+    } catch (IOException e) {
+      Log.w(TAG, "保存缩略图失败: " + item.name, e);
+    }
+    return scaled;
+  }
+
+  private File thumbnailFile(String name) {
+    return new File(thumbnailDirectory, name + THUMBNAIL_EXTENSION);
+  }
+
+  private void ensureDirectory() throws IOException {
+    if (!thumbnailDirectory.exists() && !thumbnailDirectory.mkdirs()) {
+      throw new IOException("无法创建目录: " + thumbnailDirectory);
+    }
+  }
+
+  /**
+   * 清单格式：每行 文件名\t时间戳，按写入顺序排列；同名的后一行覆盖前一行，时间戳为 - 表示已删除
+   */
+  private void readManifest() {
+    if (!manifestFile.isFile()) {
+      return;
+    }
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(manifestFile), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int tab = line.indexOf('\t');
+        if (tab <= 0) {
+          continue;
+        }
+        String name = line.substring(0, tab);
+        if (items.containsKey(name)) {
+          dirty = true;
+        }
+        if (DELETED_MARK.equals(line.substring(tab + 1))) {
+          items.remove(name);
+          dirty = true;
+          continue;
+        }
+        long timestamp;
+        try {
+          timestamp = Long.parseLong(line.substring(tab + 1));
+        } catch (NumberFormatException e) {
+          // 进程退出时写了一半的最后一行
+          continue;
+        }
+        items.remove(name);
+        items.put(name, new Item(name, new File(directory, name), timestamp));
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "读取清单失败", e);
+    }
+  }
+
+  /**
+   * 删除文件已不存在的记录，补充清单中没有的图片，返回是否有变化
+   */
+  private boolean reconcile() {
+    boolean changed = false;
+    File[] files = directory.listFiles();
+    Map<String, File> present = new HashMap<>();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isFile() && isImage(file.getName())) {
+          present.put(file.getName(), file);
+        }
+      }
+    }
+
+    List<String> removed = new ArrayList<>();
+    for (String name : items.keySet()) {
+      if (present.remove(name) == null) {
+        removed.add(name);
+      }
+    }
+    for (String name : removed) {
+      remove(name);
+      changed = true;
+    }
+
+    if (!present.isEmpty()) {
+      List<Item> found = new ArrayList<>();
+      for (File file : present.values()) {
+        found.add(new Item(file.getName(), file, file.lastModified()));
+      }
+      found.sort((a, b) -> Long.compare(a.timestamp, b.timestamp));
+      // 补充的记录按修改时间插到已有记录之前，保持清单整体从旧到新
+      Map<String, Item> merged = new LinkedHashMap<>();
+      for (Item item : found) {
+        merged.put(item.name, item);
+      }
+      merged.putAll(items);
+      items.clear();
+      items.putAll(merged);
+      changed = true;
+    }
+    return changed;
+  }
+
+  private void appendToManifest(Item item) throws IOException {
+    try (Writer writer = new OutputStreamWriter(
+        new FileOutputStream(manifestFile, true), StandardCharsets.UTF_8)) {
+      writer.write(item.name + '\t' + item.timestamp + '\n');
+    }
+  }
+
+  private void rewriteManifest() throws IOException {
+    ensureDirectory();
+    File temp = new File(manifestFile.getPath() + ".tmp");
+    try (Writer writer = new OutputStreamWriter(new BufferedOutputStream(
+        new FileOutputStream(temp)), StandardCharsets.UTF_8)) {
+      for (Item item : items.values()) {
+        writer.write(item.name + '\t' + item.timestamp + '\n');
+      }
+    } catch (IOException e) {
+      temp.delete();
+      throw e;
+    }
+    if (!temp.renameTo(manifestFile)) {
+      temp.delete();
+      throw new IOException("无法写入文件: " + manifestFile);
+    }
+    dirty = false;
+  }
+
+  static boolean isImage(String name) {
+    if (name.endsWith(".tmp")) {
+      return false;
+    }
+    String lower = name.toLowerCase(Locale.ROOT);
+    for (String extension : IMAGE_EXTENSIONS) {
+      if (lower.endsWith(extension)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 按短边不小于 reqSize 采样解码，只读取一次文件头
+   */
+  static Bitmap decodeSampled(File file, int reqSize) {
+    BitmapFactory.Options bounds = new BitmapFactory.Options();
+    bounds.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(file.getPath(), bounds);
+    if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+      return null;
+    }
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = SampledImage.calculateInSampleSize(bounds.outWidth, bounds.outHeight,
+        reqSize);
+    return BitmapFactory.decodeFile(file.getPath(), options);
+  }
+
+  private static Bitmap scaleToThumbnail(Bitmap image) {
+    int longSide = Math.max(image.getWidth(), image.getHeight());
+    if (longSide <= THUMBNAIL_SIZE) {
+      return image;
+    }
+    float scale = (float) THUMBNAIL_SIZE / longSide;
+    return Bitmap.createScaledBitmap(image, Math.max(1, Math.round(image.getWidth() * scale)),
+        Math.max(1, Math.round(image.getHeight() * scale)), true);
+  }
+
+  @SuppressWarnings("deprecation")
+  private static void writeThumbnail(Bitmap image, File target) throws IOException {
+    Bitmap thumbnail = scaleToThumbnail(image);
+    File temp = new File(target.getPath() + ".tmp");
+    boolean compressed;
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+      // 缩略图只用于预览，有损WebP保留透明通道，文件只有几KB
+      compressed = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+          ? thumbnail.compress(Bitmap.CompressFormat.WEBP_LOSSY, 80, out)
+          : thumbnail.compress(Bitmap.CompressFormat.WEBP, 80, out);
+    } catch (IOException e) {
+      temp.delete();
+      throw e;
+    }
+    if (thumbnail != image) {
+      thumbnail.recycle();
+    }
+    if (!compressed || !temp.renameTo(target)) {
+      temp.delete();
+      throw new IOException("无法写入缩略图: " + target.getName());
+    }
+  }
+}
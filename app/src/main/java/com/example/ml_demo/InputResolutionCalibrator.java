@@ -0,0 +1,247 @@
+package com.example.ml_demo;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.pytorch.IValue;
+import org.pytorch.Module;
+import org.pytorch.Tensor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 模型输入分辨率校准 - 在设备上按从小到大的候选分辨率实际运行几次推理，
+ * 选择推理耗时不超过目标的最大分辨率；结果按模型和设备保存，之后直接使用
+ * U2NET 系列是全卷积网络，输入只需要是32的倍数，掩码尺寸随输入变化
+ * 与 {@link ModelRegistry} 一样在进程内共享，页面重建时不会对同一个模型重复校准
+ */
+public class InputResolutionCalibrator {
+  private static final String TAG = "分辨率校准日志";
+  private static final String PREFS_NAME = "input_resolution";
+  // 候选的正方形输入边长，从小到大
+  public static final int[] CANDIDATE_SIZES = {192, 256, 320, 448};
+  // 未校准时使用的输入边长，也是模型训练时的尺寸
+  public static final int DEFAULT_SIZE = 320;
+  // 单次推理的目标耗时，加上解码和合成后整体在1秒以内
+  public static final long DEFAULT_TARGET_MILLIS = 500;
+  private static final int NONE = -1;
+  private static final int WARMUP_RUNS = 1;
+  private static final int TIMED_RUNS = 3;
+
+  /**
+   * 校准完成回调，在主线程执行
+   */
+  public interface Callback {
+    void onCalibrated(String modelName, Result result);
+  }
+
+  /**
+   * 校准结果：选中的边长和每个候选的推理耗时中位数，超出目标后不再测量的记为-1
+   */
+  public static final class Result {
+    public final int size;
+    public final long[] latencyMillis;
+
+    Result(int size, long[] latencyMillis) {
+      this.size = size;
+      this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * 状态栏显示的文本，例如 "256 (192=80ms, 256=140ms, 320=610ms)"
+     */
+    public String format() {
+      StringBuilder text = new StringBuilder().append(size);
+      String separator = " (";
+      for (int i = 0; i < CANDIDATE_SIZES.length; i++) {
+        if (latencyMillis[i] < 0) {
+          continue;
+        }
+        text.append(separator).append(String.format(Locale.US, "%d=%dms", CANDIDATE_SIZES[i],
+            latencyMillis[i]));
+        separator = ", ";
+      }
+      return separator.equals(" (") ? text.toString() : text.append(')').toString();
+    }
+  }
+
+  private static InputResolutionCalibrator instance;
+
+  private final SharedPreferences preferences;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  // 正在校准的模型，同一模型的并发请求共享一次校准
+  private final Map<String, FutureTask<Result>> pendingCalibrations = new HashMap<>();
+
+  public InputResolutionCalibrator(Context context) {
+    this.preferences = context.getApplicationContext()
+        .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+  }
+
+  /**
+   * 进程内共享的校准器，旋转屏幕后新的页面等待同一次校准的结果；shutdown() 之后再获取时重新创建
+   */
+  public static synchronized InputResolutionCalibrator getInstance(Context context) {
+    if (instance == null) {
+      instance = new InputResolutionCalibrator(context);
+    }
+    return instance;
+  }
+
+  /**
+   * 已保存的校准结果，没有时返回null
+   */
+  public Result getStored(String modelName) {
+    int size = preferences.getInt(sizeKey(modelName), 0);
+    if (size <= 0) {
+      return null;
+    }
+    String latencies = preferences.getString(latencyKey(modelName), null);
+    long[] latencyMillis = new long[CANDIDATE_SIZES.length];
+    Arrays.fill(latencyMillis, -1);
+    if (latencies != null) {
+      String[] parts = latencies.split(",");
+      for (int i = 0; i < parts.length && i < latencyMillis.length; i++) {
+        try {
+          latencyMillis[i] = Long.parseLong(parts[i]);
+        } catch (NumberFormatException e) {
+          latencyMillis[i] = -1;
+        }
+      }
+    }
+    return new Result(size, latencyMillis);
+  }
+
+  /**
+   * 在后台线程校准并保存结果；校准期间调用者不能用同一个模型推理
+   * 同一模型已经在校准时不再重复运行，结果同时回调给所有调用者；shutdown() 之后的请求直接丢弃
+   */
+  public synchronized void calibrateAsync(final Module module, final String modelName,
+      final long targetMillis, final Callback callback) {
+    if (executor.isShutdown()) {
+      Log.w(TAG, "校准器已关闭，忽略 " + modelName + " 的校准请求");
+      return;
+    }
+    FutureTask<Result> task = pendingCalibrations.get(modelName);
+    if (task == null) {
+      task = new FutureTask<>(() -> {
+        try {
+          return calibrate(module, modelName, targetMillis);
+        } finally {
+          synchronized (this) {
+            pendingCalibrations.remove(modelName);
+          }
+        }
+      });
+      pendingCalibrations.put(modelName, task);
+      executor.execute(task);
+    }
+    final FutureTask<Result> result = task;
+    // 单线程执行器保证此时校准任务已经结束
+    executor.execute(() -> {
+      try {
+        Result calibrated = result.get();
+        mainHandler.post(() -> callback.onCalibrated(modelName, calibrated));
+      } catch (Exception e) {
+        Log.e(TAG, modelName + " 校准失败", e);
+      }
+    });
+  }
+
+  /**
+   * 按从小到大的顺序测量，超过目标后更大的分辨率只会更慢，不再测量
+   * 最小的可用分辨率也超出目标时仍然使用它；所有候选都无法运行时使用 DEFAULT_SIZE，不保存结果
+   */
+  public Result calibrate(Module module, String modelName, long targetMillis) {
+    long[] latencyMillis = new long[CANDIDATE_SIZES.length];
+    Arrays.fill(latencyMillis, -1);
+    int chosen = NONE;
+    for (int i = 0; i < CANDIDATE_SIZES.length; i++) {
+      int size = CANDIDATE_SIZES[i];
+      try {
+        latencyMillis[i] = measure(module, size);
+      } catch (RuntimeException e) {
+        // 个别模型不支持某些输入尺寸
+        Log.w(TAG, modelName + " 不支持输入尺寸 " + size, e);
+        continue;
+      }
+      Log.d(TAG, modelName + " " + size + "x" + size + ": " + latencyMillis[i] + "ms");
+      if (latencyMillis[i] > targetMillis) {
+        if (chosen == NONE) {
+          chosen = size;
+        }
+        break;
+      }
+      chosen = size;
+    }
+    if (chosen == NONE) {
+      // 下次加载模型时重新校准
+      Log.e(TAG, modelName + " 所有候选尺寸都无法运行，使用默认尺寸 " + DEFAULT_SIZE);
+      return new Result(DEFAULT_SIZE, latencyMillis);
+    }
+
+    StringBuilder latencies = new StringBuilder();
+    for (int i = 0; i < latencyMillis.length; i++) {
+      latencies.append(i > 0 ? "," : "").append(latencyMillis[i]);
+    }
+    preferences.edit()
+        .putInt(sizeKey(modelName), chosen)
+        .putString(latencyKey(modelName), latencies.toString())
+        .apply();
+    return new Result(chosen, latencyMillis);
+  }
+
+  /**
+   * 删除保存的结果，下次加载模型时重新校准
+   */
+  public void clear(String modelName) {
+    preferences.edit().remove(sizeKey(modelName)).remove(latencyKey(modelName)).apply();
+  }
+
+  public synchronized void shutdown() {
+    synchronized (InputResolutionCalibrator.class) {
+      if (instance == this) {
+        instance = null;
+      }
+    }
+    executor.shutdownNow();
+    pendingCalibrations.clear();
+  }
+
+  /**
+   * 预热后多次推理取中位数，输入内容不影响耗时
+   */
+  private static long measure(Module module, int size) {
+    Tensor input = Tensor.fromBlob(new float[3 * size * size], new long[]{1, 3, size, size});
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      module.forward(IValue.from(input));
+    }
+    long[] samples = new long[TIMED_RUNS];
+    for (int i = 0; i < TIMED_RUNS; i++) {
+      long start = System.nanoTime();
+      module.forward(IValue.from(input));
+      samples[i] = (System.nanoTime() - start) / 1_000_000;
+    }
+    Arrays.sort(samples);
+    return samples[TIMED_RUNS / 2];
+  }
+
+  // 系统或设备变化后重新校准
+  private static String sizeKey(String modelName) {
+    return "size:" + modelName + ":" + Build.FINGERPRINT;
+  }
+
+  private static String latencyKey(String modelName) {
+    return "latency:" + modelName + ":" + Build.FINGERPRINT;
+  }
+}
@@ -0,0 +1,133 @@
+package com.example.ml_demo;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁延迟直方图 - 以微秒为单位按对数分桶，每个2的幂次区间再细分为8个桶，分位数的相对误差不超过12.5%
+ * 多个线程可以同时记录，读取时生成快照，不会阻塞记录线程
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // 小于该值的微秒数每个值一个桶
+  private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+  private static final int LINEAR_EXPONENT = SUB_BUCKET_BITS + 1;
+  // 2^36 微秒约19小时，更大的值都记入最后一个桶
+  private static final int MAX_EXPONENT = 36;
+  static final int BUCKET_COUNT =
+      LINEAR_LIMIT + (MAX_EXPONENT - LINEAR_EXPONENT + 1) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * 记录一次耗时
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    buckets.incrementAndGet(bucketIndex(nanos / 1000));
+    sum.addAndGet(nanos);
+    long current;
+    while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+      // 其他线程同时更新了最大值，重试
+    }
+  }
+
+  /**
+   * 清空数据，与记录并发执行时可能丢失少量样本
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets.set(i, 0);
+    }
+    sum.set(0);
+    max.set(0);
+  }
+
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] = buckets.get(i);
+      count += counts[i];
+    }
+    return new Snapshot(counts, count, sum.get(), max.get());
+  }
+
+  static int bucketIndex(long micros) {
+    if (micros < LINEAR_LIMIT) {
+      return (int) micros;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return LINEAR_LIMIT + (exponent - LINEAR_EXPONENT) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  /**
+   * 桶内最大的微秒数
+   */
+  static long bucketUpperBound(int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    int exponent = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + LINEAR_EXPONENT;
+    int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT;
+    int shift = exponent - SUB_BUCKET_BITS;
+    return ((long) (SUB_BUCKET_COUNT + subBucket) << shift) + (1L << shift) - 1;
+  }
+
+  /**
+   * 某一时刻的直方图数据，时间单位都是纳秒
+   */
+  public static final class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    Snapshot(long[] counts, long count, long sum, long max) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public long getMean() {
+      return count > 0 ? sum / count : 0;
+    }
+
+    /**
+     * @param quantile 0到1之间，例如 0.99 表示p99
+     */
+    public long getPercentile(double quantile) {
+      if (count == 0) {
+        return 0;
+      }
+      long target = Math.max(1, (long) Math.ceil(quantile * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= target) {
+          // 桶的上界可能超过实际记录的最大值
+          return Math.min(bucketUpperBound(i) * 1000 + 999, max);
+        }
+      }
+      return max;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package com.example.ml_demo;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 实时帧调度 - 只处理最新的帧，处理不过来的旧帧直接丢弃
+ * 预处理和推理各占一个线程，推理第N帧时同时预处理第N+1帧；输入缓冲区有三个：
+ * 推理中、已就绪等待推理、预处理中各一个，新的帧预处理完成时替换还没开始推理的旧帧
+ * 纯Java实现，帧类型和两个阶段由 {@link Worker} 提供，可以在JVM上用合成的帧直接验证
+ */
+public final class LatestFrameScheduler<F> {
+  public static final int SLOT_COUNT = 3;
+  private static final int NONE = -1;
+
+  /**
+   * 两个阶段的实现，slot 是输入缓冲区的编号，0 ~ SLOT_COUNT-1
+   */
+  public interface Worker<F> {
+    /**
+     * 在预处理线程把帧写入编号为 slot 的输入缓冲区
+     */
+    void preprocess(F frame, int slot) throws Exception;
+
+    /**
+     * 在推理线程使用编号为 slot 的输入缓冲区，返回前不会再写入这个缓冲区
+     */
+    void infer(int slot) throws Exception;
+
+    /**
+     * 帧已经预处理或被丢弃，不再使用；相机的帧需要在这里归还
+     */
+    void release(F frame);
+
+    /**
+     * 某一帧处理失败，在出错的线程中调用，之后继续处理新的帧
+     */
+    void onError(Exception e);
+  }
+
+  private final Worker<F> worker;
+  private final Thread preprocessThread;
+  private final Thread inferenceThread;
+  private final Object lock = new Object();
+  // 以下字段都由 lock 保护
+  private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>(SLOT_COUNT);
+  private F pendingFrame;
+  private int readySlot = NONE;
+  private boolean running = false;
+  private boolean stopped = false;
+  private long offeredCount;
+  private long droppedCount;
+  private long inferredCount;
+
+  public LatestFrameScheduler(Worker<F> worker, ThreadFactory threadFactory) {
+    this.worker = worker;
+    for (int i = 0; i < SLOT_COUNT; i++) {
+      freeSlots.add(i);
+    }
+    this.preprocessThread = threadFactory.newThread(this::preprocessLoop);
+    this.inferenceThread = threadFactory.newThread(this::inferenceLoop);
+  }
+
+  public void start() {
+    synchronized (lock) {
+      if (running || stopped) {
+        throw new IllegalStateException("调度器只能启动一次");
+      }
+      running = true;
+    }
+    preprocessThread.start();
+    inferenceThread.start();
+  }
+
+  /**
+   * 提交一帧，替换还没开始预处理的上一帧；停止后提交的帧直接归还
+   */
+  public void offer(F frame) {
+    F dropped;
+    synchronized (lock) {
+      if (!running) {
+        dropped = frame;
+      } else {
+        dropped = pendingFrame;
+        pendingFrame = frame;
+        offeredCount++;
+        if (dropped != null) {
+          droppedCount++;
+        }
+        lock.notifyAll();
+      }
+    }
+    if (dropped != null) {
+      worker.release(dropped);
+    }
+  }
+
+  /**
+   * 停止两个线程并等待正在执行的阶段结束，还没处理的帧会被归还
+   */
+  public void stop() throws InterruptedException {
+    F pending;
+    synchronized (lock) {
+      running = false;
+      stopped = true;
+      pending = pendingFrame;
+      pendingFrame = null;
+      lock.notifyAll();
+    }
+    if (pending != null) {
+      worker.release(pending);
+    }
+    preprocessThread.interrupt();
+    inferenceThread.interrupt();
+    preprocessThread.join();
+    inferenceThread.join();
+  }
+
+  /**
+   * 已提交的帧数
+   */
+  public long getOfferedCount() {
+    synchronized (lock) {
+      return offeredCount;
+    }
+  }
+
+  /**
+   * 没有推理就被丢弃的帧数，包括预处理前被替换的和预处理后被更新的帧替换的
+   */
+  public long getDroppedCount() {
+    synchronized (lock) {
+      return droppedCount;
+    }
+  }
+
+  public long getInferredCount() {
+    synchronized (lock) {
+      return inferredCount;
+    }
+  }
+
+  private void preprocessLoop() {
+    while (true) {
+      F frame;
+      int slot;
+      synchronized (lock) {
+        while (running && (pendingFrame == null || freeSlots.isEmpty())) {
+          if (!await()) {
+            return;
+          }
+        }
+        if (!running) {
+          return;
+        }
+        frame = pendingFrame;
+        pendingFrame = null;
+        slot = freeSlots.poll();
+      }
+
+      boolean prepared = false;
+      try {
+        worker.preprocess(frame, slot);
+        prepared = true;
+      } catch (Exception e) {
+        worker.onError(e);
+      } finally {
+        worker.release(frame);
+      }
+
+      synchronized (lock) {
+        if (!prepared) {
+          freeSlots.add(slot);
+          droppedCount++;
+          continue;
+        }
+        if (readySlot != NONE) {
+          // 还没开始推理的旧帧被更新的帧替换
+          freeSlots.add(readySlot);
+          droppedCount++;
+        }
+        readySlot = slot;
+        lock.notifyAll();
+      }
+    }
+  }
+
+  private void inferenceLoop() {
+    while (true) {
+      int slot;
+      synchronized (lock) {
+        while (running && readySlot == NONE) {
+          if (!await()) {
+            return;
+          }
+        }
+        if (!running) {
+          return;
+        }
+        slot = readySlot;
+        readySlot = NONE;
+      }
+
+      try {
+        worker.infer(slot);
+      } catch (Exception e) {
+        worker.onError(e);
+      }
+
+      synchronized (lock) {
+        freeSlots.add(slot);
+        inferredCount++;
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * 在 lock 上等待，被中断时返回false，调用者持有 lock
+   */
+  private boolean await() {
+    try {
+      lock.wait();
+      return true;
+    } catch (InterruptedException e) {
+      return false;
+    }
+  }
+}
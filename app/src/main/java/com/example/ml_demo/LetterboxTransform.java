@@ -0,0 +1,96 @@
+package com.example.ml_demo;
+
+/**
+ * 预处理时图片在模型输入中的位置 - 拉伸模式占满整个输入，等比例模式按长边缩放后居中，其余部分填充
+ * 推理后只取有效区域的预测结果，得到与原图比例一致的掩码，后续阶段按掩码尺寸线性映射回原图
+ * 纯Java实现，不依赖Android，可以在JVM上直接验证
+ */
+public final class LetterboxTransform {
+  /**
+   * 缩放到模型输入的方式
+   */
+  public enum Mode {
+    // 不保持比例，直接拉伸到输入尺寸
+    STRETCH,
+    // 保持比例，长边占满输入，短边方向两侧填充
+    LETTERBOX
+  }
+
+  private final int inputWidth;
+  private final int inputHeight;
+  private final int contentX;
+  private final int contentY;
+  private final int contentWidth;
+  private final int contentHeight;
+
+  private LetterboxTransform(int inputWidth, int inputHeight, int contentX, int contentY,
+      int contentWidth, int contentHeight) {
+    this.inputWidth = inputWidth;
+    this.inputHeight = inputHeight;
+    this.contentX = contentX;
+    this.contentY = contentY;
+    this.contentWidth = contentWidth;
+    this.contentHeight = contentHeight;
+  }
+
+  /**
+   * @param imageWidth  原图（已旋转）宽度
+   * @param imageHeight 原图（已旋转）高度
+   */
+  public static LetterboxTransform create(Mode mode, int imageWidth, int imageHeight,
+      int inputWidth, int inputHeight) {
+    if (mode == Mode.STRETCH) {
+      return new LetterboxTransform(inputWidth, inputHeight, 0, 0, inputWidth, inputHeight);
+    }
+    double scale = Math.min((double) inputWidth / imageWidth, (double) inputHeight / imageHeight);
+    int contentWidth = Math.max(1, Math.min(inputWidth, (int) Math.round(imageWidth * scale)));
+    int contentHeight = Math.max(1,
+        Math.min(inputHeight, (int) Math.round(imageHeight * scale)));
+    return new LetterboxTransform(inputWidth, inputHeight, (inputWidth - contentWidth) / 2,
+        (inputHeight - contentHeight) / 2, contentWidth, contentHeight);
+  }
+
+  /**
+   * 是否有填充区域
+   */
+  public boolean isPadded() {
+    return contentWidth != inputWidth || contentHeight != inputHeight;
+  }
+
+  public int getContentX() {
+    return contentX;
+  }
+
+  public int getContentY() {
+    return contentY;
+  }
+
+  /**
+   * 图片在模型输入中的宽度，也是去掉填充后的掩码宽度
+   */
+  public int getContentWidth() {
+    return contentWidth;
+  }
+
+  public int getContentHeight() {
+    return contentHeight;
+  }
+
+  /**
+   * 从模型输入尺寸的预测结果中取出有效区域，没有填充时直接返回原数组
+   */
+  public float[] crop(float[] predictions) {
+    if (predictions.length < inputWidth * inputHeight) {
+      throw new IllegalArgumentException("预测结果尺寸不匹配: " + predictions.length);
+    }
+    if (!isPadded()) {
+      return predictions;
+    }
+    float[] cropped = new float[contentWidth * contentHeight];
+    for (int y = 0; y < contentHeight; y++) {
+      System.arraycopy(predictions, (contentY + y) * inputWidth + contentX, cropped,
+          y * contentWidth, contentWidth);
+    }
+    return cropped;
+  }
+}
@@ -0,0 +1,136 @@
+package com.example.ml_demo;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.view.View;
+
+/**
+ * 实时分割的掩码叠加层 - 推理线程随时提交新的预测结果，界面按显示刷新率绘制
+ * 新结果到达后在 FADE_MILLIS 内逐帧从上一次的结果过渡过去，推理帧率较低时画面不会跳变
+ * 前景保持原样，背景按预测值调暗；低分辨率的掩码由绘制时的画布缩放铺满预览区域
+ */
+public class LiveMaskOverlayView extends View {
+  // 两次推理结果之间的过渡时间
+  private static final long FADE_MILLIS = 150;
+  // 完全是背景时叠加的黑色透明度
+  private static final int MAX_DIM_ALPHA = 180;
+
+  private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+  private final Rect bounds = new Rect();
+  // 推理线程提交、主线程读取
+  private volatile Frame latest;
+
+  // 以下字段只在主线程使用
+  private Frame shown;
+  private float[] previous;
+  private long fadeStart;
+  private boolean settled = true;
+  private Bitmap overlay;
+  private int[] pixels;
+
+  public LiveMaskOverlayView(Context context) {
+    super(context);
+  }
+
+  /**
+   * 提交一次推理结果，可以在任意线程调用；predictions 之后不能再修改
+   *
+   * @param predictions 0~1的显著性预测，width x height 行优先排列
+   */
+  public void publish(float[] predictions, int width, int height) {
+    latest = new Frame(predictions, width, height);
+    postInvalidateOnAnimation();
+  }
+
+  /**
+   * 清除叠加层，例如相机停止时
+   */
+  public void clear() {
+    latest = null;
+    shown = null;
+    previous = null;
+    settled = true;
+    invalidate();
+  }
+
+  @Override
+  protected void onDraw(Canvas canvas) {
+    super.onDraw(canvas);
+    Frame frame = latest;
+    if (frame == null) {
+      return;
+    }
+    long now = SystemClock.uptimeMillis();
+    if (frame != shown) {
+      // 从当前显示的画面开始过渡，尺寸变化时直接切换
+      previous = shown != null && shown.width == frame.width && shown.height == frame.height
+          ? blend(shown.predictions, now) : null;
+      shown = frame;
+      fadeStart = now;
+      settled = false;
+    }
+    if (!settled) {
+      float t = previous != null ? Math.min(1f, (float) (now - fadeStart) / FADE_MILLIS) : 1f;
+      render(frame, t);
+      settled = t >= 1f;
+      if (!settled) {
+        // 过渡期间每个显示帧都重绘
+        postInvalidateOnAnimation();
+      }
+    }
+    bounds.set(0, 0, getWidth(), getHeight());
+    canvas.drawBitmap(overlay, null, bounds, paint);
+  }
+
+  /**
+   * 过渡中途又有新结果时，以当前混合后的预测作为新的起点
+   */
+  private float[] blend(float[] current, long now) {
+    if (settled || previous == null) {
+      return current;
+    }
+    float t = Math.min(1f, (float) (now - fadeStart) / FADE_MILLIS);
+    float[] mixed = new float[current.length];
+    for (int i = 0; i < current.length; i++) {
+      mixed[i] = previous[i] + (current[i] - previous[i]) * t;
+    }
+    return mixed;
+  }
+
+  private void render(Frame frame, float t) {
+    int count = frame.width * frame.height;
+    if (overlay == null || overlay.getWidth() != frame.width
+        || overlay.getHeight() != frame.height) {
+      overlay = Bitmap.createBitmap(frame.width, frame.height, Bitmap.Config.ARGB_8888);
+      pixels = new int[count];
+    }
+    float[] current = frame.predictions;
+    for (int i = 0; i < count; i++) {
+      float p = previous != null ? previous[i] + (current[i] - previous[i]) * t : current[i];
+      int alpha = (int) ((1f - p) * MAX_DIM_ALPHA);
+      if (alpha < 0) {
+        alpha = 0;
+      } else if (alpha > MAX_DIM_ALPHA) {
+        alpha = MAX_DIM_ALPHA;
+      }
+      pixels[i] = alpha << 24;
+    }
+    overlay.setPixels(pixels, 0, frame.width, 0, 0, frame.width, frame.height);
+  }
+
+  private static final class Frame {
+    final float[] predictions;
+    final int width;
+    final int height;
+
+    Frame(float[] predictions, int width, int height) {
+      this.predictions = predictions;
+      this.width = width;
+      this.height = height;
+    }
+  }
+}
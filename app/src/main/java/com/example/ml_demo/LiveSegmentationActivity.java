@@ -0,0 +1,508 @@
+package com.example.ml_demo;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Color;
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+import android.view.TextureView;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import org.pytorch.IValue;
+import org.pytorch.Module;
+import org.pytorch.Tensor;
+import org.pytorch.torchvision.TensorImageUtils;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
+
+/**
+ * 实时分割 - 相机的 YUV 帧由 {@link YuvTensorConverter} 直接写入模型输入缓冲区，
+ * {@link LatestFrameScheduler} 只处理最新的帧，推理当前帧时预处理下一帧；
+ * 预览由相机直接输出到 TextureView，掩码叠加层按显示刷新率绘制，与推理帧率无关
+ */
+public class LiveSegmentationActivity extends Activity {
+  private static final String TAG = "实时分割日志";
+  public static final String EXTRA_MODEL_NAME = "model_name";
+  public static final String EXTRA_INPUT_SIZE = "input_size";
+  private static final int CAMERA_PERMISSION_REQUEST = 200;
+  // 推理帧的短边下限，再大只会增加相机带宽，转换时也只是丢弃更多像素
+  private static final int MIN_FRAME_SHORT_SIDE = 480;
+  // 预览输出的长边上限
+  private static final int MAX_PREVIEW_LONG_SIDE = 1920;
+  // ImageReader 同时持有的帧：调度器待处理和预处理中各一个，acquireLatestImage 还需要两个
+  private static final int MAX_IMAGES = 4;
+  private static final long STATS_INTERVAL_MILLIS = 500;
+
+  private String modelName;
+  private String metricsName;
+  private int inputSize;
+  private Module module;
+  private boolean resumed = false;
+
+  private FrameLayout previewLayout;
+  private TextureView textureView;
+  private LiveMaskOverlayView overlayView;
+  private TextView statsText;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+  // 相机相关，只在主线程打开和关闭
+  private HandlerThread cameraThread;
+  private Handler cameraHandler;
+  private CameraDevice cameraDevice;
+  private CameraCaptureSession captureSession;
+  private ImageReader imageReader;
+  private Surface previewSurface;
+  private LatestFrameScheduler<Image> scheduler;
+  // 传感器画面需要顺时针旋转的角度，页面固定为竖屏
+  private int sensorRotation;
+
+  // 推理输入缓冲区，每个调度器槽位一个
+  private FloatBuffer[] inputBuffers;
+  private Tensor[] inputTensors;
+  private YuvTensorConverter converter;
+  private volatile long lastInferenceMillis;
+  private long lastInferredCount;
+
+  @Override
+  protected void onCreate(@Nullable Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    modelName = getIntent().getStringExtra(EXTRA_MODEL_NAME);
+    inputSize = getIntent().getIntExtra(EXTRA_INPUT_SIZE,
+        InputResolutionCalibrator.DEFAULT_SIZE);
+    if (modelName == null) {
+      finish();
+      return;
+    }
+    metricsName = modelName + " (camera)";
+    setContentView(createContentView());
+
+    converter = new YuvTensorConverter(inputSize, inputSize,
+        TensorImageUtils.TORCHVISION_NORM_MEAN_RGB, TensorImageUtils.TORCHVISION_NORM_STD_RGB);
+    inputBuffers = new FloatBuffer[LatestFrameScheduler.SLOT_COUNT];
+    inputTensors = new Tensor[LatestFrameScheduler.SLOT_COUNT];
+    for (int i = 0; i < inputBuffers.length; i++) {
+      inputBuffers[i] = Tensor.allocateFloatBuffer(3 * inputSize * inputSize);
+      inputTensors[i] = Tensor.fromBlob(inputBuffers[i], new long[]{1, 3, inputSize, inputSize});
+    }
+
+    // 与主页面共享注册表，模型通常已经驻留在内存中
+    statsText.setText("正在加载模型...");
+    ModelRegistry.getInstance(this).load(modelName, new ModelRegistry.LoadCallback() {
+      @Override
+      public void onLoaded(String loadedModelName, Module loaded) {
+        if (isFinishing()) {
+          return;
+        }
+        module = loaded;
+        statsText.setText("模型加载完成，正在打开相机...");
+        startCameraIfReady();
+      }
+
+      @Override
+      public void onFailed(String failedModelName, Exception e) {
+        if (isFinishing()) {
+          return;
+        }
+        statsText.setText("模型加载失败: " + e.getMessage());
+      }
+    });
+  }
+
+  private LinearLayout createContentView() {
+    LinearLayout root = new LinearLayout(this);
+    root.setOrientation(LinearLayout.VERTICAL);
+    root.setBackgroundColor(Color.BLACK);
+
+    previewLayout = new FrameLayout(this);
+    textureView = new TextureView(this);
+    overlayView = new LiveMaskOverlayView(this);
+    previewLayout.addView(textureView, new FrameLayout.LayoutParams(
+        ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+    previewLayout.addView(overlayView, new FrameLayout.LayoutParams(
+        ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+    root.addView(previewLayout, new LinearLayout.LayoutParams(
+        ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+
+    statsText = new TextView(this);
+    statsText.setTextColor(Color.WHITE);
+    statsText.setPadding(24, 24, 24, 24);
+    root.addView(statsText, new LinearLayout.LayoutParams(
+        ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+
+    textureView.setSurfaceTextureListener(new TextureView.SurfaceTextureListener() {
+      @Override
+      public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+        startCameraIfReady();
+      }
+
+      @Override
+      public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
+        // 预览按视图大小拉伸，叠加层同样拉伸，两者保持对齐
+      }
+
+      @Override
+      public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+        closeCamera();
+        return true;
+      }
+
+      @Override
+      public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+        // 不做任何操作
+      }
+    });
+    return root;
+  }
+
+  @Override
+  protected void onResume() {
+    super.onResume();
+    if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA)
+        != PackageManager.PERMISSION_GRANTED) {
+      ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.CAMERA},
+          CAMERA_PERMISSION_REQUEST);
+      return;
+    }
+    resumed = true;
+    startCameraIfReady();
+  }
+
+  @Override
+  protected void onPause() {
+    super.onPause();
+    resumed = false;
+    closeCamera();
+  }
+
+  @Override
+  public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
+      @NonNull int[] grantResults) {
+    super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+    if (requestCode != CAMERA_PERMISSION_REQUEST) {
+      return;
+    }
+    if (grantResults.length == 0 || grantResults[0] != PackageManager.PERMISSION_GRANTED) {
+      Toast.makeText(this, "需要相机权限才能实时分割", Toast.LENGTH_LONG).show();
+      finish();
+    }
+    // 授权后 onResume 会再次执行并打开相机
+  }
+
+  /**
+   * 模型、权限和预览表面都就绪后打开相机
+   */
+  private void startCameraIfReady() {
+    if (!resumed || module == null || cameraDevice != null || cameraThread != null
+        || !textureView.isAvailable()) {
+      return;
+    }
+    CameraManager manager = (CameraManager) getSystemService(Context.CAMERA_SERVICE);
+    try {
+      String cameraId = chooseBackCamera(manager);
+      if (cameraId == null) {
+        statsText.setText("没有找到后置相机");
+        return;
+      }
+      CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+      Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+      sensorRotation = orientation != null ? orientation : 0;
+      StreamConfigurationMap map =
+          characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+      Size frameSize = chooseFrameSize(map.getOutputSizes(ImageFormat.YUV_420_888),
+          Math.max(inputSize, MIN_FRAME_SHORT_SIDE));
+      Size previewSize = choosePreviewSize(map.getOutputSizes(SurfaceTexture.class), frameSize);
+      Log.d(TAG, "推理帧: " + frameSize + ", 预览: " + previewSize + ", 旋转: " + sensorRotation);
+      matchPreviewAspect(frameSize);
+
+      cameraThread = new HandlerThread("camera-frames");
+      cameraThread.start();
+      cameraHandler = new Handler(cameraThread.getLooper());
+      scheduler = createScheduler();
+      scheduler.start();
+
+      imageReader = ImageReader.newInstance(frameSize.getWidth(), frameSize.getHeight(),
+          ImageFormat.YUV_420_888, MAX_IMAGES);
+      final LatestFrameScheduler<Image> frameScheduler = scheduler;
+      imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+          Image image;
+          try {
+            // 跳过队列中更早的帧
+            image = reader.acquireLatestImage();
+          } catch (IllegalStateException e) {
+            // 调度器仍持有太多帧，这一帧留在队列中，下一次回调时被跳过
+            return;
+          }
+          if (image != null) {
+            frameScheduler.offer(image);
+          }
+        }
+      }, cameraHandler);
+
+      SurfaceTexture texture = textureView.getSurfaceTexture();
+      texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
+      previewSurface = new Surface(texture);
+      manager.openCamera(cameraId, new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(@NonNull CameraDevice camera) {
+          mainHandler.post(() -> {
+            if (cameraThread == null) {
+              // 打开期间页面已经暂停
+              camera.close();
+              return;
+            }
+            cameraDevice = camera;
+            createSession(camera);
+          });
+        }
+
+        @Override
+        public void onDisconnected(@NonNull CameraDevice camera) {
+          camera.close();
+          mainHandler.post(() -> closeCamera());
+        }
+
+        @Override
+        public void onError(@NonNull CameraDevice camera, int error) {
+          Log.e(TAG, "相机错误: " + error);
+          camera.close();
+          mainHandler.post(() -> {
+            closeCamera();
+            statsText.setText("相机打开失败: " + error);
+          });
+        }
+      }, cameraHandler);
+      mainHandler.postDelayed(statsUpdater, STATS_INTERVAL_MILLIS);
+    } catch (CameraAccessException | SecurityException e) {
+      Log.e(TAG, "打开相机失败", e);
+      closeCamera();
+      statsText.setText("打开相机失败: " + e.getMessage());
+    }
+  }
+
+  private void createSession(final CameraDevice camera) {
+    try {
+      camera.createCaptureSession(Arrays.asList(previewSurface, imageReader.getSurface()),
+          new CameraCaptureSession.StateCallback() {
+            @Override
+            public void onConfigured(@NonNull CameraCaptureSession session) {
+              mainHandler.post(() -> {
+                if (cameraDevice != camera) {
+                  // 配置期间相机已经关闭
+                  session.close();
+                  return;
+                }
+                try {
+                  CaptureRequest.Builder builder =
+                      camera.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+                  builder.addTarget(previewSurface);
+                  builder.addTarget(imageReader.getSurface());
+                  session.setRepeatingRequest(builder.build(), null, cameraHandler);
+                  captureSession = session;
+                } catch (CameraAccessException | IllegalStateException e) {
+                  Log.w(TAG, "开始预览失败", e);
+                  session.close();
+                }
+              });
+            }
+
+            @Override
+            public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+              Log.e(TAG, "相机会话配置失败");
+              mainHandler.post(() -> statsText.setText("相机会话配置失败"));
+            }
+          }, cameraHandler);
+    } catch (CameraAccessException e) {
+      Log.e(TAG, "创建相机会话失败", e);
+      statsText.setText("创建相机会话失败: " + e.getMessage());
+    }
+  }
+
+  /**
+   * 预处理在调度器的预处理线程，推理在推理线程，两者分别记在“模型名 (camera)”下
+   */
+  private LatestFrameScheduler<Image> createScheduler() {
+    final Module inferenceModule = module;
+    final PipelineMetrics metrics = PipelineMetrics.getInstance();
+    final AtomicInteger count = new AtomicInteger();
+    return new LatestFrameScheduler<>(new LatestFrameScheduler.Worker<Image>() {
+      @Override
+      public void preprocess(Image image, int slot) {
+        PipelineMetrics.Span span = metrics.start(metricsName, PipelineMetrics.Stage.PREPROCESS);
+        Image.Plane[] planes = image.getPlanes();
+        converter.convert(planes[0].getBuffer(), planes[1].getBuffer(), planes[2].getBuffer(),
+            image.getWidth(), image.getHeight(), planes[0].getRowStride(),
+            planes[1].getRowStride(), planes[1].getPixelStride(), sensorRotation,
+            inputBuffers[slot]);
+        span.stop();
+      }
+
+      @Override
+      public void infer(int slot) {
+        PipelineMetrics.Span span = metrics.start(metricsName, PipelineMetrics.Stage.INFERENCE);
+        Tensor output = inferenceModule.forward(IValue.from(inputTensors[slot])).toTuple()[0]
+            .toTensor();
+        lastInferenceMillis = span.stop() / 1_000_000;
+        // 输出是新分配的数组，直接交给叠加层，不做边缘后处理
+        overlayView.publish(output.getDataAsFloatArray(), inputSize, inputSize);
+      }
+
+      @Override
+      public void release(Image image) {
+        image.close();
+      }
+
+      @Override
+      public void onError(Exception e) {
+        Log.w(TAG, "处理相机帧失败", e);
+      }
+    }, r -> new Thread(r, "live-segmentation-" + count.incrementAndGet()));
+  }
+
+  /**
+   * 按顺序关闭：先停止出帧，再停止调度器归还持有的帧，最后关闭 ImageReader
+   */
+  private void closeCamera() {
+    mainHandler.removeCallbacks(statsUpdater);
+    if (captureSession != null) {
+      captureSession.close();
+      captureSession = null;
+    }
+    if (cameraDevice != null) {
+      cameraDevice.close();
+      cameraDevice = null;
+    }
+    if (scheduler != null) {
+      try {
+        scheduler.stop();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      scheduler = null;
+    }
+    if (imageReader != null) {
+      imageReader.close();
+      imageReader = null;
+    }
+    if (previewSurface != null) {
+      previewSurface.release();
+      previewSurface = null;
+    }
+    if (cameraThread != null) {
+      cameraThread.quitSafely();
+      cameraThread = null;
+      cameraHandler = null;
+    }
+    lastInferredCount = 0;
+    overlayView.clear();
+  }
+
+  private final Runnable statsUpdater = new Runnable() {
+    @Override
+    public void run() {
+      LatestFrameScheduler<Image> current = scheduler;
+      if (current == null) {
+        return;
+      }
+      long inferred = current.getInferredCount();
+      float fps = (inferred - lastInferredCount) * 1000f / STATS_INTERVAL_MILLIS;
+      lastInferredCount = inferred;
+      statsText.setText(String.format(Locale.getDefault(),
+          "输入 %dx%d\n推理: %.1f帧/秒, 单次%dms\n相机帧: %d, 丢弃: %d",
+          inputSize, inputSize, fps, lastInferenceMillis, current.getOfferedCount(),
+          current.getDroppedCount()));
+      mainHandler.postDelayed(this, STATS_INTERVAL_MILLIS);
+    }
+  };
+
+  /**
+   * 预览区域的宽高比与竖屏下的相机画面一致，拉伸后的预览和叠加层都不变形
+   */
+  private void matchPreviewAspect(Size frameSize) {
+    boolean transposed = sensorRotation == 90 || sensorRotation == 270;
+    final int uprightWidth = transposed ? frameSize.getHeight() : frameSize.getWidth();
+    final int uprightHeight = transposed ? frameSize.getWidth() : frameSize.getHeight();
+    previewLayout.post(() -> {
+      ViewGroup.LayoutParams params = previewLayout.getLayoutParams();
+      params.height = previewLayout.getWidth() * uprightHeight / uprightWidth;
+      previewLayout.setLayoutParams(params);
+    });
+  }
+
+  private static String chooseBackCamera(CameraManager manager) throws CameraAccessException {
+    for (String id : manager.getCameraIdList()) {
+      Integer facing = manager.getCameraCharacteristics(id)
+          .get(CameraCharacteristics.LENS_FACING);
+      if (facing != null && facing == CameraCharacteristics.LENS_FACING_BACK) {
+        return id;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 短边不小于 minShortSide 的最小尺寸，都不满足时取最大的
+   */
+  static Size chooseFrameSize(Size[] sizes, int minShortSide) {
+    Size best = null;
+    Size largest = null;
+    for (Size size : sizes) {
+      long area = (long) size.getWidth() * size.getHeight();
+      if (largest == null || area > (long) largest.getWidth() * largest.getHeight()) {
+        largest = size;
+      }
+      if (Math.min(size.getWidth(), size.getHeight()) >= minShortSide
+          && (best == null || area < (long) best.getWidth() * best.getHeight())) {
+        best = size;
+      }
+    }
+    return best != null ? best : largest;
+  }
+
+  /**
+   * 与推理帧宽高比相同、长边不超过上限的最大预览尺寸，没有时使用推理帧的尺寸
+   */
+  static Size choosePreviewSize(Size[] sizes, Size frameSize) {
+    Size best = frameSize;
+    for (Size size : sizes) {
+      boolean sameAspect = (long) size.getWidth() * frameSize.getHeight()
+          == (long) size.getHeight() * frameSize.getWidth();
+      if (sameAspect && Math.max(size.getWidth(), size.getHeight()) <= MAX_PREVIEW_LONG_SIDE
+          && size.getWidth() > best.getWidth()) {
+        best = size;
+      }
+    }
+    return best;
+  }
+}
@@ -1,25 +1,21 @@
 package com.example.ml_demo;
 
 import android.app.Activity;
-import android.content.Context;
+import android.content.ClipData;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Color;
-import android.graphics.Matrix;
-import android.media.ExifInterface;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
 import android.provider.MediaStore;
 import android.util.Log;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
@@ -28,20 +24,9 @@ import android.widget.TextView;
 import android.widget.Toast;
 import android.Manifest;
 
-import org.pytorch.IValue;
-import org.pytorch.LiteModuleLoader;
 import org.pytorch.Module;
-import org.pytorch.Tensor;
-import org.pytorch.torchvision.TensorImageUtils;
-
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.text.SimpleDateFormat;
+
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
@@ -52,80 +37,210 @@ import androidx.core.content.ContextCompat;
 
 public class MainActivity extends Activity {
   private static final int PICK_IMAGE_REQUEST = 1;
+  private static final int PICK_BATCH_REQUEST = 2;
+  private static final int PICK_VERIFY_REQUEST = 3;
   private static final int PERMISSION_REQUEST_CODE = 100;
 
-  // 模型文件名
-  private static final String U2NET_MODULE = "u2net_mobile.ptl";
-  private static final String U2NETP_MODULE = "u2netp_mobile.ptl";
-  private static final int RUN_FAIL = 0;
-  private static final int LOAD_MODULE_SUCCESS = 1;
-  private static final int LOAD_IMAGE_SUCCESS = 2;
-  private static final int MODULE_FORWARD_SUCCESS = 3;
-  private static final int SET_IMAGE_SUCCESS = 4;
-  private static final int SAVE_IMAGE_SUCCESS = 5;
-  public final int WIDTH_SIZE = 320;
-  public final int HEIGHT_SIZE = 320;
-
+  // 推理用小图解码后的短边尺寸，同时用于原图预览
+  private static final int INFERENCE_DECODE_SIZE = 640;
+  // 抠图保存格式，支持时使用无损WebP
+  private static final CutoutWriter.Format CUTOUT_FORMAT = CutoutWriter.Format.preferred();
+  // 分块推理的选项：最大块数，块越多细节越完整、推理越慢
+  private static final int[] TILE_OPTIONS = {0, 4, 9, 16};
+  // 分割结果缓存的磁盘预算
+  private static final long RESULT_CACHE_BUDGET = ResultCache.DEFAULT_BUDGET_BYTES;
+
+  private ModelRegistry modelRegistry;
+  private InputResolutionCalibrator resolutionCalibrator;
+  private SegmentationPipeline segmentationPipeline;
   private Module mModule;
-  private Handler mMainHandler;
   private Button selectImageButton;
+  private Button batchImageButton;
+  private Button liveButton;
+  private Button metricsButton;
+  private Button verifyButton;
   private Button segmentImageButton;
   private Button display3DButton;
   private ImageView originalImageView;
   private ImageView resultImageView;
+  private ImageView cutoutImageView;
   private TextView statusText;
   private LinearLayout resultLayout;
   private Spinner modelSpinner;
+  private CheckBox refineCheckBox;
+  private CheckBox letterboxCheckBox;
+  private Spinner tileSpinner;
   private TextView loadingText;
   private FrameLayout loadingLayout;
 
-  private boolean isProcessing = false;
-
-  private String currentModelName = U2NETP_MODULE;
-  private Bitmap currentOriginalBitmap;
-  private Bitmap currentResultBitmap;
-  private float[] currentPredictions;
-  private List<String> modelOptions;
+  private BatchSegmentationPipeline batchPipeline;
+  private QuantizationVerifier quantizationVerifier;
+  // 等待权限授予的选择器请求
+  private int pendingPickRequest = PICK_IMAGE_REQUEST;
+
+  // assets 中实际存在的模型，下拉框的选项与之一一对应
+  private List<ModelCatalog.Entry> availableModels;
+  private String currentModelName;
+  // 当前模型在本机上校准得到的输入边长
+  private int currentInputSize = InputResolutionCalibrator.DEFAULT_SIZE;
+  // 最近一次完成的分割结果，只在主线程读写
+  private SegmentationResult currentResult;
+  // currentResult 在 ResultStore 中的编号，本页面持有一份引用
+  private String currentResultId;
   private ArrayAdapter<String> modelAdapter;
-  private String TEMP_FILE_PATH;
 
   @Override
   protected void onCreate(@Nullable Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
     setContentView(R.layout.activity_main);
+    modelRegistry = ModelRegistry.getInstance(this);
+    availableModels = ModelCatalog.getAvailable(this);
+    resolutionCalibrator = InputResolutionCalibrator.getInstance(this);
+    segmentationPipeline = new SegmentationPipeline(getContentResolver(),
+        new ResultCache(getCacheDir(), RESULT_CACHE_BUDGET), CUTOUT_FORMAT,
+        INFERENCE_DECODE_SIZE);
     init();
-    loadModule();
+    // 配置变化重建时沿用上一个实例持有的结果
+    String retainedResultId = (String) getLastNonConfigurationInstance();
+    if (retainedResultId != null) {
+      restoreResult(retainedResultId);
+    }
+    if (currentModelName != null) {
+      loadModule();
+    } else {
+      statusText.setText("没有找到模型文件，请把模型放到assets目录");
+      selectImageButton.setEnabled(false);
+      batchImageButton.setEnabled(false);
+      liveButton.setEnabled(false);
+    }
   }
 
   private void init() {
     statusText = findViewById(R.id.statusText);
     selectImageButton = findViewById(R.id.selectImageButton);
+    batchImageButton = findViewById(R.id.batchImageButton);
+    liveButton = findViewById(R.id.liveButton);
+    metricsButton = findViewById(R.id.metricsButton);
+    verifyButton = findViewById(R.id.verifyButton);
     segmentImageButton = findViewById(R.id.segmentImageButton);
     display3DButton = findViewById(R.id.display3DButton);
     originalImageView = findViewById(R.id.originalImageView);
     resultImageView = findViewById(R.id.resultImageView);
+    cutoutImageView = findViewById(R.id.cutoutImageView);
     resultLayout = findViewById(R.id.resultLayout);
     modelSpinner = findViewById(R.id.modelSpinner);
+    refineCheckBox = findViewById(R.id.refineCheckBox);
+    letterboxCheckBox = findViewById(R.id.letterboxCheckBox);
+    tileSpinner = findViewById(R.id.tileSpinner);
     loadingText = findViewById(R.id.loadingText);
     loadingLayout = findViewById(R.id.loadingLayout);
 
     setupModelSpinner();
+    setupTileSpinner();
+
+    // 细化参数按模型选择，只影响之后提交的图片
+    refineCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+      @Override
+      public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+        segmentationPipeline.setRefinementEnabled(isChecked);
+      }
+    });
+
+    // 两种缩放方式的耗时分别统计，可以在统计页面对比
+    letterboxCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+      @Override
+      public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+        segmentationPipeline.setResizeMode(isChecked
+            ? LetterboxTransform.Mode.LETTERBOX : LetterboxTransform.Mode.STRETCH);
+      }
+    });
 
     selectImageButton.setOnClickListener(new View.OnClickListener() {
       @Override
       public void onClick(View v) {
-        if (checkAndRequestPermissions()) {
+        if (checkAndRequestPermissions(PICK_IMAGE_REQUEST)) {
           openImagePicker();
         }
       }
     });
 
+    batchImageButton.setOnClickListener(new View.OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        if (batchPipeline != null) {
+          // 正在批量处理时再次点击则取消，推理线程退出后才会收到汇总
+          batchImageButton.setEnabled(false);
+          showLoading("正在取消批量处理...");
+          batchPipeline.cancel();
+        } else if (checkAndRequestPermissions(PICK_BATCH_REQUEST)) {
+          openMultiImagePicker(PICK_BATCH_REQUEST);
+        }
+      }
+    });
+
+    // 实时分割使用当前模型和校准得到的输入分辨率，模型通过共享的注册表获取
+    liveButton.setOnClickListener(new View.OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        if (mModule == null || batchPipeline != null) {
+          return;
+        }
+        // 单张图片的推理结束后再打开，实时页面与流水线共享同一个模型
+        final String modelName = currentModelName;
+        final int inputSize = currentInputSize;
+        liveButton.setEnabled(false);
+        runWhenPipelineIdle(new Runnable() {
+          @Override
+          public void run() {
+            liveButton.setEnabled(mModule != null);
+            hideLoading();
+            Intent intent = new Intent(MainActivity.this, LiveSegmentationActivity.class);
+            intent.putExtra(LiveSegmentationActivity.EXTRA_MODEL_NAME, modelName);
+            intent.putExtra(LiveSegmentationActivity.EXTRA_INPUT_SIZE, inputSize);
+            startActivity(intent);
+          }
+        });
+      }
+    });
+
+    metricsButton.setOnClickListener(new View.OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        startActivity(new Intent(MainActivity.this, MetricsActivity.class));
+      }
+    });
+
+    // 量化模型和对应的 fp32 模型都存在时才显示
+    if (!ModelCatalog.getVerifiable(availableModels).isEmpty()) {
+      verifyButton.setVisibility(View.VISIBLE);
+    }
+    verifyButton.setOnClickListener(new View.OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        if (quantizationVerifier != null) {
+          // 正在校验时再次点击则取消，当前图片的推理结束后才开放按钮
+          verifyButton.setEnabled(false);
+          showLoading("正在取消量化校验...");
+          quantizationVerifier.cancel(new Runnable() {
+            @Override
+            public void run() {
+              if (!isDestroyed()) {
+                finishVerification("量化校验已取消");
+              }
+            }
+          });
+        } else if (batchPipeline == null && checkAndRequestPermissions(PICK_VERIFY_REQUEST)) {
+          openMultiImagePicker(PICK_VERIFY_REQUEST);
+        }
+      }
+    });
+
     segmentImageButton.setOnClickListener(new View.OnClickListener() {
       @Override
       public void onClick(View v) {
-        if (currentOriginalBitmap != null) {
+        if (currentResult != null) {
           Intent intent = new Intent(MainActivity.this, DisplaySegmentActivity.class);
-          intent.putExtra("cropped_image_path", TEMP_FILE_PATH);
+          intent.putExtra("cropped_image_path", currentResult.getCutoutPath());
           startActivity(intent);
         } else {
           Toast.makeText(MainActivity.this, "请先选择图片", Toast.LENGTH_SHORT).show();
@@ -136,78 +251,39 @@ public class MainActivity extends Activity {
     display3DButton.setOnClickListener(new View.OnClickListener() {
       @Override
       public void onClick(View v) {
-        if (currentResultBitmap != null && currentOriginalBitmap != null) {
-          ImageDataManager.getInstance().setData(currentOriginalBitmap, TEMP_FILE_PATH);
+        if (currentResult != null) {
+          // 只传递编号，3D页面直接使用内存中的原图和抠图
           Intent intent = new Intent(MainActivity.this, Display3dActivity.class);
+          intent.putExtra(Display3dActivity.EXTRA_RESULT_ID, currentResultId);
           startActivity(intent);
         } else {
           Toast.makeText(MainActivity.this, "请先选择图片", Toast.LENGTH_SHORT).show();
         }
       }
     });
-
-    mMainHandler = new Handler(getMainLooper()) {
-      @Override
-      public void handleMessage(@NonNull Message msg) {
-        super.handleMessage(msg);
-        switch (msg.what) {
-          case LOAD_MODULE_SUCCESS:
-            hideLoading();
-            break;
-          case LOAD_IMAGE_SUCCESS:
-            showLoading("正在模型推理...");
-            originalImageView.setImageBitmap((Bitmap) msg.obj);
-            break;
-          case MODULE_FORWARD_SUCCESS:
-            showLoading("正在转换图片...");
-            statusText.setText("显著性检测完成" + msg.obj);
-            break;
-          case SET_IMAGE_SUCCESS:
-            showLoading("正在保存结果...");
-            resultImageView.setImageBitmap((Bitmap) msg.obj);
-            resultLayout.setVisibility(View.VISIBLE);
-            segmentImageButton.setVisibility(View.VISIBLE);
-            display3DButton.setVisibility(View.VISIBLE);
-            break;
-          case SAVE_IMAGE_SUCCESS:
-            hideLoading();
-            break;
-          case RUN_FAIL:
-            hideLoading();
-            Toast.makeText(MainActivity.this, "运行失败: " + msg.obj.toString(), Toast.LENGTH_LONG).show();
-            statusText.setText("运行失败: " + msg.obj.toString());
-            resultLayout.setVisibility(View.GONE);
-            segmentImageButton.setVisibility(View.GONE);
-            display3DButton.setVisibility(View.GONE);
-            break;
-          default:
-            break;
-        }
-      }
-    };
   }
 
   private void setupModelSpinner() {
-    modelOptions = new ArrayList<>();
-    modelOptions.add("U2NET-P (轻量版 4.7MB)");
-    modelOptions.add("U2NET (完整版 173.6MB)");
+    List<String> modelOptions = new ArrayList<>();
+    for (ModelCatalog.Entry entry : availableModels) {
+      modelOptions.add(entry.getLabel());
+    }
+    // 默认使用目录中第一个存在的模型
+    currentModelName = availableModels.isEmpty() ? null : availableModels.get(0).fileName;
 
     modelAdapter = new ArrayAdapter<>(this,
         android.R.layout.simple_spinner_item, modelOptions);
     modelAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
 
     modelSpinner.setAdapter(modelAdapter);
-    modelSpinner.setSelection(1);
     modelSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
       @Override
       public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-        String selectedModel = position == 0 ? U2NETP_MODULE : U2NET_MODULE;
+        String selectedModel = availableModels.get(position).fileName;
         if (!selectedModel.equals(currentModelName)) {
           currentModelName = selectedModel;
-          showLoading("正在加载模型...");
-          loadModule();
-          mMainHandler.sendMessage(Message.obtain(mMainHandler, LOAD_MODULE_SUCCESS));
           clearResults();
+          loadModule();
         }
       }
 
@@ -218,428 +294,487 @@ public class MainActivity extends Activity {
     });
   }
 
+  private void setupTileSpinner() {
+    List<String> tileOptions = new ArrayList<>();
+    for (int maxTiles : TILE_OPTIONS) {
+      tileOptions.add(maxTiles > 1 ? "最多" + maxTiles + "块（约" + (maxTiles + 1) + "倍推理时间）"
+          : "关闭（只做全局推理）");
+    }
+    ArrayAdapter<String> tileAdapter = new ArrayAdapter<>(this,
+        android.R.layout.simple_spinner_item, tileOptions);
+    tileAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+    tileSpinner.setAdapter(tileAdapter);
+    tileSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+      @Override
+      public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+        // 只影响之后提交的图片
+        segmentationPipeline.setMaxTiles(TILE_OPTIONS[position]);
+      }
+
+      @Override
+      public void onNothingSelected(AdapterView<?> parent) {
+        // 不做任何操作
+      }
+    });
+  }
+
   private void clearResults() {
+    segmentationPipeline.cancel();
+    hideLoading();
     resultLayout.setVisibility(View.GONE);
     segmentImageButton.setVisibility(View.GONE);
     display3DButton.setVisibility(View.GONE);
-    currentOriginalBitmap = null;
-    currentPredictions = null;
     originalImageView.setImageBitmap(null);
     resultImageView.setImageBitmap(null);
+    cutoutImageView.setImageBitmap(null);
+    // 先从界面移除，释放后Bitmap会被复用
+    setCurrentResult(null);
   }
 
-  private void loadModule() {
-    try {
-      String modelDisplayName = currentModelName.equals(U2NETP_MODULE) ? "U2NET-P" : "U2NET";
-      statusText.setText("正在加载" + modelDisplayName + "模型...");
-      Toast.makeText(this, "正在加载" + modelDisplayName + "模型...", Toast.LENGTH_SHORT).show();
-
-      String modelPath = assetFilePath(this, currentModelName);
-      mModule = LiteModuleLoader.load(modelPath);
-
-      statusText.setText(modelDisplayName + "模型加载完成，点击按钮选择图片");
-      selectImageButton.setEnabled(true);
-    } catch (Exception e) {
-      statusText.setText("模型加载失败: " + e.getMessage());
-      selectImageButton.setEnabled(false);
-      Toast.makeText(this, "模型加载失败，请检查模型文件", Toast.LENGTH_SHORT).show();
+  private void setCurrentResult(SegmentationResult result) {
+    ResultStore store = ResultStore.getInstance();
+    store.release(currentResultId);
+    currentResult = result;
+    currentResultId = result != null ? store.put(result) : null;
+  }
+
+  /**
+   * 接管上一个实例在 ResultStore 中的引用并重新显示结果
+   */
+  private void restoreResult(String resultId) {
+    ResultStore store = ResultStore.getInstance();
+    SegmentationResult result = store.acquire(resultId);
+    if (result == null) {
+      return;
     }
+    // 上一个实例的引用转交给本实例，acquire 多出的一份立即归还
+    store.release(resultId);
+    currentResult = result;
+    currentResultId = resultId;
+    Bitmap preview = result.getPreviewBitmap();
+    int orientation = result.getOrientation();
+    originalImageView.setImageDrawable(new OrientedDrawable(preview, orientation));
+    resultImageView.setImageDrawable(new MaskDrawable(result.getMaskBitmap(),
+        ExifOrientation.orientedWidth(orientation, preview.getWidth(), preview.getHeight()),
+        ExifOrientation.orientedHeight(orientation, preview.getWidth(), preview.getHeight())));
+    cutoutImageView.setImageBitmap(result.getCutoutBitmap());
+    resultLayout.setVisibility(View.VISIBLE);
+    segmentImageButton.setVisibility(View.VISIBLE);
+    display3DButton.setVisibility(View.VISIBLE);
   }
 
-  @Override
-  protected void onActivityResult(int requestCode, int resultCode, Intent data) {
-    super.onActivityResult(requestCode, resultCode, data);
+  private void loadModule() {
+    final String modelName = currentModelName;
+    ModelCatalog.Entry entry = ModelCatalog.find(modelName);
+    final String modelDisplayName = entry.displayName + " " + entry.precision.label;
+
+    // 已经驻留在内存中的模型直接切换
+    Module warmModule = modelRegistry.getIfWarm(modelName);
+    if (warmModule != null) {
+      onModuleReady(modelName, modelDisplayName, warmModule);
+      return;
+    }
 
-    if (!isProcessing && requestCode == PICK_IMAGE_REQUEST && resultCode == RESULT_OK && data != null) {
-      isProcessing = true;
-      showLoading("正在加载图片...");
-      Uri imageUri = data.getData();
-      if (imageUri != null) {
-        new Thread(new Runnable() {
-          @Override
-          public void run() {
-            try {
-              Bitmap rotatedBitmap = rotateImageBasedOnExif(imageUri);
-              mMainHandler.sendMessage(Message.obtain(mMainHandler, LOAD_IMAGE_SUCCESS,
-                  rotatedBitmap));
-              String info = processImage(rotatedBitmap);
-              mMainHandler.sendMessage(Message.obtain(mMainHandler, MODULE_FORWARD_SUCCESS, info));
-              currentResultBitmap = createResultBitmap(currentPredictions,
-                  currentOriginalBitmap.getWidth(), currentOriginalBitmap.getHeight());
-              mMainHandler.sendMessage(Message.obtain(mMainHandler, SET_IMAGE_SUCCESS, currentResultBitmap));
-              Bitmap croppedBitmap = createCroppedBitmap(currentOriginalBitmap, currentPredictions);
-              saveBitmapToTempFile(croppedBitmap);
-              mMainHandler.sendMessage(Message.obtain(mMainHandler, SAVE_IMAGE_SUCCESS));
-            } catch (Exception e) {
-              Log.i("图片加载测试", "图片加载失败！");
-              mMainHandler.sendMessage(Message.obtain(mMainHandler, RUN_FAIL, e));
-            } finally {
-              isProcessing = false;
-            }
-          }
-        }).start();
-      } else {
-        Toast.makeText(this, "图片获取失败，请重新选择", Toast.LENGTH_SHORT).show();
+    mModule = null;
+    selectImageButton.setEnabled(false);
+    batchImageButton.setEnabled(false);
+    liveButton.setEnabled(false);
+    showLoading("正在加载模型...");
+    statusText.setText("正在加载" + modelDisplayName + "模型...");
+    Toast.makeText(this, "正在加载" + modelDisplayName + "模型...", Toast.LENGTH_SHORT).show();
+
+    modelRegistry.load(modelName, new ModelRegistry.LoadCallback() {
+      @Override
+      public void onLoaded(String loadedModelName, Module module) {
+        // 加载期间用户可能已经切换到其他模型
+        if (isDestroyed() || !loadedModelName.equals(currentModelName)) {
+          return;
+        }
+        onModuleReady(loadedModelName, modelDisplayName, module);
       }
-    }
-  }
 
-  private Bitmap rotateImageBasedOnExif(Uri imageUri) {
-    try {
-      InputStream inputStream = getContentResolver().openInputStream(imageUri);
-      Bitmap selectedBitmap = BitmapFactory.decodeStream(inputStream);
-      inputStream.close();
-      try {
-        inputStream = getContentResolver().openInputStream(imageUri);
-        if (inputStream != null) {
-          ExifInterface exifInterface = new ExifInterface(inputStream);
-          int orientation = exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION,
-              ExifInterface.ORIENTATION_UNDEFINED);
-          inputStream.close();
-          return switch (orientation) {
-            case ExifInterface.ORIENTATION_ROTATE_90 -> rotateBitmap(selectedBitmap, 90);
-            case ExifInterface.ORIENTATION_ROTATE_180 -> rotateBitmap(selectedBitmap, 180);
-            case ExifInterface.ORIENTATION_ROTATE_270 -> rotateBitmap(selectedBitmap, 270);
-            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL ->
-                flipBitmap(selectedBitmap, true, false);
-            case ExifInterface.ORIENTATION_FLIP_VERTICAL -> flipBitmap(selectedBitmap, false, true);
-            case ExifInterface.ORIENTATION_TRANSPOSE ->
-                flipBitmap(rotateBitmap(selectedBitmap, 90), true, false);
-            case ExifInterface.ORIENTATION_TRANSVERSE ->
-                flipBitmap(rotateBitmap(selectedBitmap, 270), true, false);
-            default -> selectedBitmap;
-          };
+      @Override
+      public void onFailed(String failedModelName, Exception e) {
+        if (isDestroyed() || !failedModelName.equals(currentModelName)) {
+          return;
         }
-      } catch (Exception e) {
-        return selectedBitmap;
+        hideLoading();
+        statusText.setText("模型加载失败: " + e.getMessage());
+        selectImageButton.setEnabled(false);
+        batchImageButton.setEnabled(false);
+        liveButton.setEnabled(false);
+        Toast.makeText(MainActivity.this, "模型加载失败，请检查模型文件", Toast.LENGTH_SHORT).show();
       }
-    } catch (IOException e) {
-      e.printStackTrace();
-      return null;
-    }
-    return null;
+    });
   }
 
-  private Bitmap rotateBitmap(Bitmap bitmap, float degrees) {
-    Matrix matrix = new Matrix();
-    matrix.postRotate(degrees);
-    return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+  /**
+   * 模型可用后确定输入分辨率：本机已经校准过时直接使用保存的结果，
+   * 否则先校准再开放按钮，校准期间模型不能用于推理
+   */
+  private void onModuleReady(final String modelName, final String modelDisplayName,
+      final Module module) {
+    InputResolutionCalibrator.Result stored = resolutionCalibrator.getStored(modelName);
+    if (stored != null) {
+      mModule = module;
+      showModuleReady(modelDisplayName, stored);
+      return;
+    }
+
+    mModule = null;
+    selectImageButton.setEnabled(false);
+    batchImageButton.setEnabled(false);
+    liveButton.setEnabled(false);
+    showLoading("正在校准输入分辨率...");
+    statusText.setText("正在校准" + modelDisplayName + "模型的输入分辨率...");
+    resolutionCalibrator.calibrateAsync(module, modelName,
+        InputResolutionCalibrator.DEFAULT_TARGET_MILLIS, new InputResolutionCalibrator.Callback() {
+          @Override
+          public void onCalibrated(String calibratedModelName,
+              InputResolutionCalibrator.Result result) {
+            // 校准期间用户可能已经切换到其他模型，切回来时会直接使用保存的结果
+            // 旋转屏幕后旧页面已销毁，新的页面会收到同一次校准的结果
+            if (isDestroyed() || !calibratedModelName.equals(currentModelName)) {
+              return;
+            }
+            mModule = module;
+            showModuleReady(modelDisplayName, result);
+          }
+        });
   }
 
-  private Bitmap flipBitmap(Bitmap bitmap, boolean horizontal, boolean vertical) {
-    Matrix matrix = new Matrix();
-    matrix.preScale(horizontal ? -1 : 1, vertical ? -1 : 1);
-    return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+  private void showModuleReady(String modelDisplayName,
+      InputResolutionCalibrator.Result resolution) {
+    currentInputSize = resolution.size;
+    if (quantizationVerifier != null) {
+      // 量化校验结束时再开放按钮
+      return;
+    }
+    statusText.setText(modelDisplayName + "模型加载完成，点击按钮选择图片\n输入分辨率: "
+        + resolution.format());
+    selectImageButton.setEnabled(true);
+    batchImageButton.setEnabled(true);
+    liveButton.setEnabled(true);
+    hideLoading();
   }
 
-  /**
-   * 模型预测
-   *
-   * @param bitmap
-   */
-  private String processImage(Bitmap bitmap) {
-    try {
-      long startTime = System.currentTimeMillis();
-
-      // 预处理
-      Tensor inputTensor = transformImage2Tensor(bitmap);
-      long preprocessTime = System.currentTimeMillis() - startTime;
-
-      // 模型推理
-      Tensor output = mModule.forward(IValue.from(inputTensor)).toTuple()[0].toTensor();
-      long inferenceTime = System.currentTimeMillis() - startTime - preprocessTime;
-
-      // 后处理
-      float[] preds = output.getDataAsFloatArray();
-      normalizePredictions(preds);
-      applyEdgeSmoothing(preds);
-      
-      long postprocessTime =
-          System.currentTimeMillis() - startTime - preprocessTime - inferenceTime;
-
-      // 保存当前的原图和预测结果
-      currentOriginalBitmap = bitmap;
-      currentPredictions = preds.clone();
-
-      return String.format("\n预处理时间: %dms\n推理时间: %dms\n后处理时间: %dms\n", preprocessTime,
-          inferenceTime, postprocessTime);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+    if (batchPipeline != null) {
+      batchPipeline.cancel();
+    }
+    if (quantizationVerifier != null) {
+      quantizationVerifier.cancel();
+    }
+    segmentationPipeline.shutdown();
+    // 校准器与模型注册表随进程存在，正在进行的校准由重建后的页面继续等待
+    // 配置变化时结果的引用交给新的实例，否则释放
+    if (!isChangingConfigurations()) {
+      setCurrentResult(null);
     }
   }
 
-  private Tensor transformImage2Tensor(Bitmap bitmap) {
-    // 修改图片尺寸为320 * 320(模型原本的输入大小就是320 * 320)
-    Bitmap resized = Bitmap.createScaledBitmap(bitmap, WIDTH_SIZE, HEIGHT_SIZE, true);
+  @Override
+  public Object onRetainNonConfigurationInstance() {
+    return currentResultId;
+  }
 
-    // 将图片转换为 Tensor
-    return TensorImageUtils.bitmapToFloat32Tensor(
-        resized,
-        TensorImageUtils.TORCHVISION_NORM_MEAN_RGB,
-        TensorImageUtils.TORCHVISION_NORM_STD_RGB
-    );
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    BitmapPool.getInstance().onTrimMemory(level);
+    modelRegistry.onTrimMemory(level);
   }
 
-  private void normalizePredictions(float[] preds) {
-    // 找到最小值和最大值
-    float min = Float.MAX_VALUE;
-    float max = -Float.MAX_VALUE;
+  @Override
+  protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+    super.onActivityResult(requestCode, resultCode, data);
 
-    for (float v : preds) {
-      if (v < min) min = v;
-      if (v > max) max = v;
+    if (batchPipeline != null || resultCode != RESULT_OK || data == null) {
+      return;
     }
 
-    // 归一化到 [0, 1] 范围
-    for (int i = 0; i < preds.length; i++) {
-      preds[i] = (preds[i] - min) / (max - min);
+    if (requestCode == PICK_BATCH_REQUEST) {
+      startBatch(data);
+    } else if (requestCode == PICK_VERIFY_REQUEST) {
+      startVerification(data);
+    } else if (requestCode == PICK_IMAGE_REQUEST) {
+      Uri imageUri = data.getData();
+      if (imageUri != null && mModule != null) {
+        startSegmentation(imageUri);
+      } else {
+        Toast.makeText(this, "图片获取失败，请重新选择", Toast.LENGTH_SHORT).show();
+      }
     }
   }
 
   /**
-   * 边缘平滑处理 - 只对边缘区域进行平滑，保持主体区域的清晰度
+   * 提交单张图片，正在处理的上一张图片会被取消
    */
-  private void applyEdgeSmoothing(float[] preds) {
-    // 创建边缘检测结果数组
-    float[] edges = detectEdges(preds);
-    
-    // 创建平滑后的预测结果
-    float[] smoothedPreds = applySmoothingFilter(preds);
-    
-    // 只在边缘区域应用平滑效果
-    for (int i = 0; i < preds.length; i++) {
-      // 根据边缘强度混合原始预测和平滑预测
-      float edgeStrength = edges[i];
-      // 边缘强度越高，使用越多的平滑结果
-      preds[i] = preds[i] * (1 - edgeStrength) + smoothedPreds[i] * edgeStrength;
-    }
+  private void startSegmentation(Uri imageUri) {
+    showLoading("正在加载图片...");
+    segmentationPipeline.submit(imageUri, mModule, currentModelName, currentInputSize,
+        new SegmentationPipeline.Listener() {
+          @Override
+          public void onImageDecoded(Bitmap preview, int orientation) {
+            showLoading("正在模型推理...");
+            // 图片保持解码时的方向，由绘制时的画布矩阵旋转
+            originalImageView.setImageDrawable(new OrientedDrawable(preview, orientation));
+          }
+
+          @Override
+          public void onPredictionReady(String timingInfo) {
+            showLoading("正在转换图片...");
+            statusText.setText("显著性检测完成" + timingInfo);
+          }
+
+          @Override
+          public void onMaskReady(Bitmap maskBitmap, int width, int height) {
+            showLoading("正在保存结果...");
+            // 低分辨率掩码按原图比例显示，由绘制时的画布缩放放大
+            resultImageView.setImageDrawable(new MaskDrawable(maskBitmap, width, height));
+            resultLayout.setVisibility(View.VISIBLE);
+          }
+
+          @Override
+          public void onCutoutReady(Bitmap cutout) {
+            // 合成完成后立即显示，文件在后台继续保存
+            cutoutImageView.setImageBitmap(cutout);
+          }
+
+          @Override
+          public void onCompleted(SegmentationResult result) {
+            setCurrentResult(result);
+            hideLoading();
+            segmentImageButton.setVisibility(View.VISIBLE);
+            display3DButton.setVisibility(View.VISIBLE);
+          }
+
+          @Override
+          public void onFailed(Exception e) {
+            Log.i("图片加载测试", "图片加载失败！");
+            hideLoading();
+            Toast.makeText(MainActivity.this, "运行失败: " + e, Toast.LENGTH_LONG).show();
+            statusText.setText("运行失败: " + e);
+            resultLayout.setVisibility(View.GONE);
+            segmentImageButton.setVisibility(View.GONE);
+            display3DButton.setVisibility(View.GONE);
+          }
+        });
   }
 
   /**
-   * 边缘检测 - 使用Sobel算子检测边缘
+   * 多选图片的结果，按选择顺序排列
    */
-  private float[] detectEdges(float[] preds) {
-    float[] edges = new float[preds.length];
-    
-    // Sobel算子
-    int[] sobelX = {
-        -1, 0, 1,
-        -2, 0, 2,
-        -1, 0, 1
-    };
-    int[] sobelY = {
-        -1, -2, -1,
-        0, 0, 0,
-        1, 2, 1
-    };
-    
-    for (int y = 1; y < HEIGHT_SIZE - 1; y++) {
-      for (int x = 1; x < WIDTH_SIZE - 1; x++) {
-        int idx = y * WIDTH_SIZE + x;
-        
-        float gx = 0, gy = 0;
-        
-        for (int ky = -1; ky <= 1; ky++) {
-          for (int kx = -1; kx <= 1; kx++) {
-            int pixelIdx = (y + ky) * WIDTH_SIZE + (x + kx);
-            int kernelIdx = (ky + 1) * 3 + (kx + 1);
-            
-            gx += preds[pixelIdx] * sobelX[kernelIdx];
-            gy += preds[pixelIdx] * sobelY[kernelIdx];
-          }
-        }
-        
-        // 计算梯度幅值
-        float magnitude = (float) Math.sqrt(gx * gx + gy * gy);
-        
-        // 归一化边缘强度到[0, 1]范围，并应用阈值
-        edges[idx] = Math.min(1.0f, magnitude * 2.0f);
-        
-        // 只对较强的边缘进行平滑处理
-        if (edges[idx] < 0.3f) {
-          edges[idx] = 0;
-        } else {
-          // 平滑边缘强度过渡
-          edges[idx] = (edges[idx] - 0.3f) / 0.7f;
-        }
+  private static List<Uri> getPickedUris(Intent data) {
+    List<Uri> uris = new ArrayList<>();
+    ClipData clipData = data.getClipData();
+    if (clipData != null) {
+      for (int i = 0; i < clipData.getItemCount(); i++) {
+        uris.add(clipData.getItemAt(i).getUri());
       }
+    } else if (data.getData() != null) {
+      uris.add(data.getData());
     }
-    
-    return edges;
+    return uris;
   }
 
   /**
-   * 应用高斯平滑滤波器
+   * 在选择的图片上比较每个量化模型与 fp32 模型的预测结果和推理耗时
+   * 校验期间禁用其他推理入口，模型不会被两个线程同时调用
    */
-  private float[] applySmoothingFilter(float[] preds) {
-    float[] smoothed = new float[preds.length];
-    
-    // 3x3高斯核 (sigma ≈ 0.8)
-    float[] gaussianKernel = {
-        0.0625f, 0.125f, 0.0625f,
-        0.125f,  0.25f,  0.125f,
-        0.0625f, 0.125f, 0.0625f
-    };
-    
-    for (int y = 1; y < HEIGHT_SIZE - 1; y++) {
-      for (int x = 1; x < WIDTH_SIZE - 1; x++) {
-        int idx = y * WIDTH_SIZE + x;
-        float sum = 0;
-        
-        for (int ky = -1; ky <= 1; ky++) {
-          for (int kx = -1; kx <= 1; kx++) {
-            int pixelIdx = (y + ky) * WIDTH_SIZE + (x + kx);
-            int kernelIdx = (ky + 1) * 3 + (kx + 1);
-            sum += preds[pixelIdx] * gaussianKernel[kernelIdx];
-          }
-        }
-        
-        smoothed[idx] = sum;
-      }
+  private void startVerification(Intent data) {
+    final List<Uri> uris = getPickedUris(data);
+    // 当前模型还在加载或校准输入分辨率时不开始
+    if (uris.isEmpty() || mModule == null || quantizationVerifier != null) {
+      Toast.makeText(this, "图片获取失败，请重新选择", Toast.LENGTH_SHORT).show();
+      return;
     }
-    
-    // 处理边界像素（直接复制原值）
-    for (int y = 0; y < HEIGHT_SIZE; y++) {
-      for (int x = 0; x < WIDTH_SIZE; x++) {
-        if (y == 0 || y == HEIGHT_SIZE - 1 || x == 0 || x == WIDTH_SIZE - 1) {
-          smoothed[y * WIDTH_SIZE + x] = preds[y * WIDTH_SIZE + x];
+
+    clearResults();
+    selectImageButton.setEnabled(false);
+    batchImageButton.setEnabled(false);
+    liveButton.setEnabled(false);
+    modelSpinner.setEnabled(false);
+    verifyButton.setText("取消量化校验");
+    showLoading("正在准备量化校验...");
+    final QuantizationVerifier verifier = new QuantizationVerifier(getContentResolver(),
+        modelRegistry, INFERENCE_DECODE_SIZE);
+    quantizationVerifier = verifier;
+    // 单张图片的推理结束后再开始，校验的模型可能就是当前模型
+    runWhenPipelineIdle(new Runnable() {
+      @Override
+      public void run() {
+        // 等待期间已取消
+        if (quantizationVerifier == verifier) {
+          runVerification(verifier, uris);
         }
       }
-    }
-    
-    return smoothed;
+    });
   }
 
-  private Bitmap createResultBitmap(float[] preds, int originalWidth, int originalHeight) {
-    // 创建320x320的掩码图片
-    Bitmap mask = Bitmap.createBitmap(WIDTH_SIZE, HEIGHT_SIZE, Bitmap.Config.ARGB_8888);
+  private void runVerification(QuantizationVerifier verifier, List<Uri> uris) {
+    verifier.verifyAsync(ModelCatalog.getVerifiable(availableModels), uris,
+        new QuantizationVerifier.Callback() {
+          @Override
+          public void onProgress(String message) {
+            showLoading(message);
+          }
 
-    for (int y = 0; y < HEIGHT_SIZE; y++) {
-      for (int x = 0; x < WIDTH_SIZE; x++) {
-        int idx = y * WIDTH_SIZE + x;
-        int gray = (int) (preds[idx] * 255);
-        int color = Color.rgb(gray, gray, gray);
-        mask.setPixel(x, y, color);
-      }
-    }
+          @Override
+          public void onCompleted(List<QuantizationVerifier.Report> reports) {
+            StringBuilder text = new StringBuilder("量化校验完成");
+            for (QuantizationVerifier.Report report : reports) {
+              text.append("\n\n").append(report.format());
+            }
+            finishVerification(text.toString());
+          }
 
-    // 缩放回原图大小
-    return Bitmap.createScaledBitmap(mask, originalWidth, originalHeight, true);
+          @Override
+          public void onFailed(Exception e) {
+            finishVerification("量化校验失败: " + e.getMessage());
+          }
+        });
   }
 
-  private Bitmap createCroppedBitmap(Bitmap originalBitmap, float[] predictions) {
-    int width = originalBitmap.getWidth();
-    int height = originalBitmap.getHeight();
-
-    // 创建带透明通道的结果图片，使用高质量配置
-    Bitmap croppedBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-
-    // 直接使用预测数据，避免额外的Bitmap创建和缩放
-    // 计算缩放比例
-    float scaleX = (float) width / WIDTH_SIZE;
-    float scaleY = (float) height / HEIGHT_SIZE;
-
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        // 获取原图像素
-        int originalPixel = originalBitmap.getPixel(x, y);
-
-        // 计算在预测数组中的对应位置（使用双线性插值获得更好的质量）
-        float predX = x / scaleX;
-        float predY = y / scaleY;
-        
-        // 边界检查
-        int x1 = Math.max(0, Math.min(WIDTH_SIZE - 1, (int) predX));
-        int y1 = Math.max(0, Math.min(HEIGHT_SIZE - 1, (int) predY));
-        int x2 = Math.max(0, Math.min(WIDTH_SIZE - 1, x1 + 1));
-        int y2 = Math.max(0, Math.min(HEIGHT_SIZE - 1, y1 + 1));
-        
-        // 双线性插值获取更精确的显著性值
-        float fx = predX - x1;
-        float fy = predY - y1;
-        
-        float pred1 = predictions[y1 * WIDTH_SIZE + x1];
-        float pred2 = predictions[y1 * WIDTH_SIZE + x2];
-        float pred3 = predictions[y2 * WIDTH_SIZE + x1];
-        float pred4 = predictions[y2 * WIDTH_SIZE + x2];
-        
-        float interpolatedPred = pred1 * (1 - fx) * (1 - fy) + 
-                                pred2 * fx * (1 - fy) + 
-                                pred3 * (1 - fx) * fy + 
-                                pred4 * fx * fy;
-        
-        // 将显著性值转换为alpha通道
-        int alpha = Math.max(0, Math.min(255, (int) (interpolatedPred * 255)));
-
-        // 设置新像素（保持原色彩，调整透明度）
-        int newPixel = Color.argb(alpha,
-            Color.red(originalPixel),
-            Color.green(originalPixel),
-            Color.blue(originalPixel));
+  /**
+   * 校验的后台线程结束后调用（完成、失败或取消），之后模型可以用于其他推理
+   */
+  private void finishVerification(String message) {
+    if (quantizationVerifier == null) {
+      return;
+    }
+    quantizationVerifier.cancel();
+    quantizationVerifier = null;
+    hideLoading();
+    verifyButton.setText("量化校验");
+    verifyButton.setEnabled(true);
+    modelSpinner.setEnabled(true);
+    selectImageButton.setEnabled(mModule != null);
+    batchImageButton.setEnabled(mModule != null);
+    liveButton.setEnabled(mModule != null);
+    statusText.setText(message);
+  }
 
-        croppedBitmap.setPixel(x, y, newPixel);
-      }
+  /**
+   * 批量处理多张图片，模型在整批处理期间共享
+   */
+  private void startBatch(Intent data) {
+    final List<Uri> uris = getPickedUris(data);
+    if (uris.isEmpty() || mModule == null) {
+      Toast.makeText(this, "图片获取失败，请重新选择", Toast.LENGTH_SHORT).show();
+      return;
     }
 
-    return croppedBitmap;
+    // 单张图片的推理结束后再开始，同一个模型不能在两个线程同时推理
+    // 整批处理期间不能选择图片、打开实时页面或切换模型，批量按钮作为取消按钮使用
+    selectImageButton.setEnabled(false);
+    batchImageButton.setEnabled(false);
+    liveButton.setEnabled(false);
+    verifyButton.setEnabled(false);
+    modelSpinner.setEnabled(false);
+    showLoading("正在停止当前任务...");
+    runWhenPipelineIdle(new Runnable() {
+      @Override
+      public void run() {
+        batchImageButton.setEnabled(true);
+        runBatch(uris);
+      }
+    });
   }
 
-  private Bitmap createMaskBitmap(float[] predictions) {
-    Bitmap mask = Bitmap.createBitmap(WIDTH_SIZE, HEIGHT_SIZE, Bitmap.Config.ARGB_8888);
+  private void runBatch(List<Uri> uris) {
+    final int total = uris.size();
+    showLoading("批量处理中 0/" + total + "，再次点击批量处理可取消");
+    batchImageButton.setText("取消批量处理");
+    batchPipeline = new BatchSegmentationPipeline(getContentResolver(), mModule,
+        currentModelName, currentInputSize, currentInputSize, INFERENCE_DECODE_SIZE,
+        getCacheDir(), CUTOUT_FORMAT, refineCheckBox.isChecked()
+            ? GuidedMaskRefiner.Config.forModel(currentModelName) : null,
+        letterboxCheckBox.isChecked()
+            ? LetterboxTransform.Mode.LETTERBOX : LetterboxTransform.Mode.STRETCH,
+        new BatchSegmentationPipeline.Listener() {
+          @Override
+          public void onItemCompleted(final BatchSegmentationPipeline.ItemResult result) {
+            runOnUiThread(new Runnable() {
+              @Override
+              public void run() {
+                showBatchProgress(result, total);
+              }
+            });
+          }
+
+          @Override
+          public void onBatchCompleted(final BatchSegmentationPipeline.Summary summary) {
+            runOnUiThread(new Runnable() {
+              @Override
+              public void run() {
+                if (!isDestroyed()) {
+                  showBatchSummary(summary);
+                }
+              }
+            });
+          }
+        });
+    batchPipeline.start(uris);
+  }
 
-    for (int y = 0; y < HEIGHT_SIZE; y++) {
-      for (int x = 0; x < WIDTH_SIZE; x++) {
-        int idx = y * WIDTH_SIZE + x;
-        int gray = (int) (predictions[idx] * 255);
-        int color = Color.rgb(gray, gray, gray);
-        mask.setPixel(x, y, color);
+  /**
+   * 取消单张图片的处理，等流水线不再使用模型后在主线程执行 action
+   * cancel() 只设置标记，正在执行的推理会继续到结束，之后模型才能交给其他线程使用
+   */
+  private void runWhenPipelineIdle(final Runnable action) {
+    segmentationPipeline.cancelAndAwaitIdle().thenRun(new Runnable() {
+      @Override
+      public void run() {
+        runOnUiThread(new Runnable() {
+          @Override
+          public void run() {
+            if (!isDestroyed()) {
+              action.run();
+            }
+          }
+        });
       }
-    }
-
-    return mask;
+    });
   }
 
-  private void saveBitmapToTempFile(Bitmap bitmap) {
-    try {
-      SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault());
-      String timestamp = sdf.format(new Date());
-      File tempFile = new File(getCacheDir(), timestamp + ".png");
-      FileOutputStream out = new FileOutputStream(tempFile);
-      // 使用PNG格式和最高质量保存，确保透明度和细节不丢失
-      bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
-      out.flush();
-      out.close();
-      TEMP_FILE_PATH = tempFile.getAbsolutePath();
-    } catch (IOException e) {
-      e.printStackTrace();
+  private void showBatchProgress(BatchSegmentationPipeline.ItemResult item, int total) {
+    showLoading("批量处理中 " + (item.index + 1) + "/" + total + "，再次点击批量处理可取消");
+    if (item.isSuccess()) {
+      statusText.setText(String.format(Locale.US,
+          "第%d张完成: 总耗时%dms\n解码: %dms\n预处理: %dms\n推理: %dms\n后处理: %dms\n编码: %dms",
+          item.index + 1, item.totalTime, item.decodeTime, item.preprocessTime,
+          item.inferenceTime, item.postprocessTime, item.encodeTime));
+    } else {
+      statusText.setText("第" + (item.index + 1) + "张处理失败: " + item.error.getMessage());
     }
   }
 
-  public static String assetFilePath(Context context, String assetName) {
-    File file = new File(context.getFilesDir(), assetName);
-    if (file.exists() && file.length() > 0) {
-      return file.getAbsolutePath();
-    }
-    try (InputStream is = context.getAssets().open(assetName)) {
-      try (OutputStream os = new FileOutputStream(file)) {
-        byte[] buffer = new byte[4 * 1024];
-        int read;
-        while ((read = is.read(buffer)) != -1) {
-          os.write(buffer, 0, read);
-        }
-        os.flush();
-      }
-      return file.getAbsolutePath();
-    } catch (IOException e) {
-      e.printStackTrace();
-      return null;
-    }
+  /**
+   * 所有阶段线程退出后才回调，此时模型已经空闲，可以开放其他操作
+   */
+  private void showBatchSummary(BatchSegmentationPipeline.Summary summary) {
+    batchPipeline = null;
+    hideLoading();
+    batchImageButton.setText("批量处理");
+    batchImageButton.setEnabled(mModule != null);
+    selectImageButton.setEnabled(mModule != null);
+    liveButton.setEnabled(mModule != null);
+    verifyButton.setEnabled(true);
+    modelSpinner.setEnabled(true);
+    statusText.setText(String.format(Locale.US,
+        "批量处理%s: 成功%d张，失败%d张\n总耗时: %dms\n吞吐量: %.2f张/秒",
+        summary.cancelled ? "已取消" : "完成", summary.succeeded, summary.failed,
+        summary.elapsedTime, summary.getThroughput()));
   }
 
   /**
-   * 检查和请求权限
+   * 检查和请求权限，需要请求时记住选择器的请求码，授予后打开对应的选择器
    */
-  private boolean checkAndRequestPermissions() {
+  private boolean checkAndRequestPermissions(int pickRequestCode) {
+    pendingPickRequest = pickRequestCode;
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
       // Android 13+ 使用 READ_MEDIA_IMAGES
       if (ContextCompat.checkSelfPermission(this, Manifest.permission.READ_MEDIA_IMAGES) 
@@ -671,6 +806,16 @@ public class MainActivity extends Activity {
     startActivityForResult(intent, PICK_IMAGE_REQUEST);
   }
 
+  /**
+   * 打开多选图片选择器，用于批量处理和量化校验
+   */
+  private void openMultiImagePicker(int requestCode) {
+    Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+    intent.setType("image/*");
+    intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+    startActivityForResult(Intent.createChooser(intent, "选择多张图片"), requestCode);
+  }
+
   @Override
   public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, 
       @NonNull int[] grantResults) {
@@ -678,8 +823,12 @@ public class MainActivity extends Activity {
     
     if (requestCode == PERMISSION_REQUEST_CODE) {
       if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-        // 权限被授予，打开图片选择器
-        openImagePicker();
+        // 权限被授予，打开请求权限时对应的图片选择器
+        if (pendingPickRequest == PICK_IMAGE_REQUEST) {
+          openImagePicker();
+        } else {
+          openMultiImagePicker(pendingPickRequest);
+        }
       } else {
         // 权限被拒绝
         Toast.makeText(this, "需要存储权限才能选择图片", Toast.LENGTH_LONG).show();
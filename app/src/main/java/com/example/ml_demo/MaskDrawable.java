@@ -0,0 +1,57 @@
+package com.example.ml_demo;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+
+/**
+ * 以原图尺寸显示低分辨率掩码 - 固有尺寸报告为原图大小，绘制时由画布矩阵双线性缩放
+ * 避免为显示分配一张全分辨率的 ARGB_8888 掩码副本
+ */
+public class MaskDrawable extends Drawable {
+  private final Bitmap mask;
+  private final int intrinsicWidth;
+  private final int intrinsicHeight;
+  private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+  public MaskDrawable(Bitmap mask, int displayWidth, int displayHeight) {
+    this.mask = mask;
+    this.intrinsicWidth = displayWidth;
+    this.intrinsicHeight = displayHeight;
+  }
+
+  @Override
+  public void draw(Canvas canvas) {
+    canvas.drawBitmap(mask, null, getBounds(), paint);
+  }
+
+  @Override
+  public int getIntrinsicWidth() {
+    return intrinsicWidth;
+  }
+
+  @Override
+  public int getIntrinsicHeight() {
+    return intrinsicHeight;
+  }
+
+  @Override
+  public void setAlpha(int alpha) {
+    paint.setAlpha(alpha);
+    invalidateSelf();
+  }
+
+  @Override
+  public void setColorFilter(ColorFilter colorFilter) {
+    paint.setColorFilter(colorFilter);
+    invalidateSelf();
+  }
+
+  @Override
+  public int getOpacity() {
+    return paint.getAlpha() == 255 ? PixelFormat.OPAQUE : PixelFormat.TRANSLUCENT;
+  }
+}
@@ -0,0 +1,258 @@
+package com.example.ml_demo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 显著性掩码文件 - 把0~1的预测结果量化为8位或16位整数保存，可选deflate压缩
+ * 读取时通过 FileChannel.map 映射文件，未压缩的数据直接从映射内存反量化，不需要重新运行模型
+ *
+ * 文件格式（大端）：
+ * magic "SMSK" | version u8 | precision u8 (1/2字节) | compression u8 | reserved u8 |
+ * width i32 | height i32 | modelName长度 u16 | modelName UTF-8 | payload长度 i32 | payload
+ */
+public final class MaskFile {
+  private static final int MAGIC = 0x534D534B;
+  private static final int VERSION = 1;
+  private static final int COMPRESSION_NONE = 0;
+  private static final int COMPRESSION_DEFLATE = 1;
+
+  public enum Precision {
+    UINT8(1, 0xff),
+    UINT16(2, 0xffff);
+
+    final int bytes;
+    final int maxValue;
+
+    Precision(int bytes, int maxValue) {
+      this.bytes = bytes;
+      this.maxValue = maxValue;
+    }
+
+    static Precision ofBytes(int bytes) throws IOException {
+      for (Precision precision : values()) {
+        if (precision.bytes == bytes) {
+          return precision;
+        }
+      }
+      throw new IOException("不支持的掩码精度: " + bytes);
+    }
+  }
+
+  private final int width;
+  private final int height;
+  private final String modelName;
+  private final Precision precision;
+  // 量化后的数据，未压缩时就是映射的文件内容
+  private final ByteBuffer payload;
+
+  private MaskFile(int width, int height, String modelName, Precision precision,
+      ByteBuffer payload) {
+    this.width = width;
+    this.height = height;
+    this.modelName = modelName;
+    this.precision = precision;
+    this.payload = payload;
+  }
+
+  /**
+   * 量化并写入文件，先写临时文件再重命名
+   *
+   * @param compress 是否使用deflate压缩，掩码大面积为0或1时压缩率很高
+   */
+  public static void write(File file, float[] predictions, int width, int height,
+      String modelName, Precision precision, boolean compress) throws IOException {
+    int count = width * height;
+    byte[] quantized = new byte[count * precision.bytes];
+    quantize(predictions, count, precision, quantized);
+
+    byte[] data = quantized;
+    int dataLength = quantized.length;
+    if (compress) {
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      try {
+        deflater.setInput(quantized);
+        deflater.finish();
+        data = new byte[quantized.length + 64];
+        dataLength = 0;
+        while (!deflater.finished()) {
+          if (dataLength == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+          }
+          dataLength += deflater.deflate(data, dataLength, data.length - dataLength);
+        }
+      } finally {
+        deflater.end();
+      }
+    }
+
+    byte[] name = modelName.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer header = ByteBuffer.allocate(4 + 4 + 4 + 4 + 2 + name.length + 4);
+    header.putInt(MAGIC);
+    header.put((byte) VERSION);
+    header.put((byte) precision.bytes);
+    header.put((byte) (compress ? COMPRESSION_DEFLATE : COMPRESSION_NONE));
+    header.put((byte) 0);
+    header.putInt(width);
+    header.putInt(height);
+    header.putShort((short) name.length);
+    header.put(name);
+    header.putInt(dataLength);
+    header.flip();
+
+    File temp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(temp)) {
+      FileChannel channel = out.getChannel();
+      ByteBuffer body = ByteBuffer.wrap(data, 0, dataLength);
+      while (header.hasRemaining() || body.hasRemaining()) {
+        channel.write(new ByteBuffer[]{header, body});
+      }
+    } catch (IOException e) {
+      temp.delete();
+      throw e;
+    }
+    if (!temp.renameTo(file)) {
+      temp.delete();
+      throw new IOException("无法写入文件: " + file);
+    }
+  }
+
+  /**
+   * 映射并解析文件头，压缩的数据在这里解压
+   */
+  public static MaskFile read(File file) throws IOException {
+    MappedByteBuffer mapped;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    try {
+      if (mapped.getInt() != MAGIC) {
+        throw new IOException("不是掩码文件: " + file.getName());
+      }
+      int version = mapped.get() & 0xff;
+      if (version != VERSION) {
+        throw new IOException("不支持的掩码文件版本: " + version);
+      }
+      Precision precision = Precision.ofBytes(mapped.get() & 0xff);
+      int compression = mapped.get() & 0xff;
+      mapped.get();
+      int width = mapped.getInt();
+      int height = mapped.getInt();
+      byte[] name = new byte[mapped.getShort() & 0xffff];
+      mapped.get(name);
+      int dataLength = mapped.getInt();
+      int expected = width * height * precision.bytes;
+      if (width <= 0 || height <= 0 || dataLength > mapped.remaining()) {
+        throw new IOException("掩码文件已损坏: " + file.getName());
+      }
+
+      ByteBuffer payload;
+      if (compression == COMPRESSION_NONE) {
+        if (dataLength != expected) {
+          throw new IOException("掩码文件已损坏: " + file.getName());
+        }
+        payload = mapped.slice();
+        payload.limit(dataLength);
+      } else if (compression == COMPRESSION_DEFLATE) {
+        byte[] compressed = new byte[dataLength];
+        mapped.get(compressed);
+        payload = ByteBuffer.wrap(inflate(compressed, expected));
+      } else {
+        throw new IOException("不支持的压缩方式: " + compression);
+      }
+      return new MaskFile(width, height, new String(name, StandardCharsets.UTF_8), precision,
+          payload);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("掩码文件已损坏: " + file.getName(), e);
+    }
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public String getModelName() {
+    return modelName;
+  }
+
+  public Precision getPrecision() {
+    return precision;
+  }
+
+  /**
+   * 反量化为0~1的预测结果
+   */
+  public float[] toPredictions() {
+    float[] predictions = new float[width * height];
+    toPredictions(predictions);
+    return predictions;
+  }
+
+  public void toPredictions(float[] out) {
+    int count = width * height;
+    float scale = 1f / precision.maxValue;
+    if (precision == Precision.UINT8) {
+      for (int i = 0; i < count; i++) {
+        out[i] = (payload.get(i) & 0xff) * scale;
+      }
+    } else {
+      for (int i = 0; i < count; i++) {
+        out[i] = (payload.getShort(i * 2) & 0xffff) * scale;
+      }
+    }
+  }
+
+  static void quantize(float[] predictions, int count, Precision precision, byte[] out) {
+    int maxValue = precision.maxValue;
+    for (int i = 0; i < count; i++) {
+      float p = predictions[i];
+      int q = p <= 0f ? 0 : p >= 1f ? maxValue : Math.round(p * maxValue);
+      if (precision == Precision.UINT8) {
+        out[i] = (byte) q;
+      } else {
+        out[i * 2] = (byte) (q >>> 8);
+        out[i * 2 + 1] = (byte) q;
+      }
+    }
+  }
+
+  private static byte[] inflate(byte[] compressed, int expected) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      byte[] out = new byte[expected];
+      int length = 0;
+      while (length < expected && !inflater.finished()) {
+        int n = inflater.inflate(out, length, expected - length);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        length += n;
+      }
+      if (length != expected) {
+        throw new IOException("掩码数据长度不匹配");
+      }
+      return out;
+    } catch (DataFormatException e) {
+      throw new IOException("掩码数据解压失败", e);
+    } finally {
+      inflater.end();
+    }
+  }
+}
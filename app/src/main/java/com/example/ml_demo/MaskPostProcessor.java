@@ -0,0 +1,221 @@
+package com.example.ml_demo;
+
+/**
+ * 掩码后处理 - 归一化、Sobel边缘检测、高斯平滑和按边缘强度混合
+ * process() 是融合后的单遍滑动窗口实现，只使用三行复用的缓冲区，每帧不分配内存
+ * 静态方法保留原来的多遍实现，作为结果校验的参考
+ */
+public class MaskPostProcessor {
+  // 滑动窗口的三行归一化结果
+  private float[] rowAbove = new float[0];
+  private float[] rowCurrent = new float[0];
+  private float[] rowBelow = new float[0];
+
+  /**
+   * 原地处理预测结果，preds 按 width * height 行优先存放
+   * 非线程安全，每个处理线程使用自己的实例
+   */
+  public void process(float[] preds, int width, int height) {
+    if (preds.length < width * height) {
+      throw new IllegalArgumentException("预测结果尺寸不匹配: " + preds.length);
+    }
+    ensureCapacity(width);
+
+    // 归一化需要全局的最小值和最大值，只读扫描一遍
+    float min = Float.MAX_VALUE;
+    float max = -Float.MAX_VALUE;
+    int size = width * height;
+    for (int i = 0; i < size; i++) {
+      float v = preds[i];
+      if (v < min) min = v;
+      if (v > max) max = v;
+    }
+    float range = max - min;
+
+    normalizeRow(preds, 0, width, min, range, rowCurrent);
+    if (height > 1) {
+      normalizeRow(preds, width, width, min, range, rowBelow);
+    }
+
+    for (int y = 0; y < height; y++) {
+      int rowStart = y * width;
+      if (y == 0 || y == height - 1 || width < 3) {
+        // 边界行没有完整的3x3邻域，只保留归一化结果
+        System.arraycopy(rowCurrent, 0, preds, rowStart, width);
+      } else {
+        blendRow(preds, rowStart, width);
+      }
+
+      // 滑动窗口下移一行，下一行在被覆盖之前读入
+      float[] recycled = rowAbove;
+      rowAbove = rowCurrent;
+      rowCurrent = rowBelow;
+      rowBelow = recycled;
+      if (y + 2 < height) {
+        normalizeRow(preds, (y + 2) * width, width, min, range, rowBelow);
+      }
+    }
+  }
+
+  private void blendRow(float[] preds, int rowStart, int width) {
+    float[] above = rowAbove;
+    float[] current = rowCurrent;
+    float[] below = rowBelow;
+
+    preds[rowStart] = current[0];
+    for (int x = 1; x < width - 1; x++) {
+      float a00 = above[x - 1], a01 = above[x], a02 = above[x + 1];
+      float a10 = current[x - 1], a11 = current[x], a12 = current[x + 1];
+      float a20 = below[x - 1], a21 = below[x], a22 = below[x + 1];
+
+      // Sobel算子，累加顺序与参考实现一致，结果逐位相同
+      float gx = -a00 + a02 + -2 * a10 + 2 * a12 + -a20 + a22;
+      float gy = -a00 + -2 * a01 + -a02 + a20 + 2 * a21 + a22;
+      float edge = edgeStrength((float) Math.sqrt(gx * gx + gy * gy));
+
+      // 3x3高斯核 (sigma ≈ 0.8)
+      float smoothed = a00 * 0.0625f + a01 * 0.125f + a02 * 0.0625f
+          + a10 * 0.125f + a11 * 0.25f + a12 * 0.125f
+          + a20 * 0.0625f + a21 * 0.125f + a22 * 0.0625f;
+
+      preds[rowStart + x] = a11 * (1 - edge) + smoothed * edge;
+    }
+    preds[rowStart + width - 1] = current[width - 1];
+  }
+
+  private static void normalizeRow(float[] preds, int start, int width, float min, float range,
+      float[] out) {
+    for (int x = 0; x < width; x++) {
+      out[x] = (preds[start + x] - min) / range;
+    }
+  }
+
+  /**
+   * 归一化边缘强度到[0, 1]范围，只对较强的边缘进行平滑处理
+   */
+  private static float edgeStrength(float magnitude) {
+    float edge = Math.min(1.0f, magnitude * 2.0f);
+    return edge < 0.3f ? 0 : (edge - 0.3f) / 0.7f;
+  }
+
+  private void ensureCapacity(int width) {
+    if (rowCurrent.length < width) {
+      rowAbove = new float[width];
+      rowCurrent = new float[width];
+      rowBelow = new float[width];
+    }
+  }
+
+  /**
+   * 参考实现：归一化到 [0, 1] 范围
+   */
+  public static void normalizePredictions(float[] preds) {
+    // 找到最小值和最大值
+    float min = Float.MAX_VALUE;
+    float max = -Float.MAX_VALUE;
+
+    for (float v : preds) {
+      if (v < min) min = v;
+      if (v > max) max = v;
+    }
+
+    for (int i = 0; i < preds.length; i++) {
+      preds[i] = (preds[i] - min) / (max - min);
+    }
+  }
+
+  /**
+   * 参考实现：边缘平滑处理 - 只对边缘区域进行平滑，保持主体区域的清晰度
+   */
+  public static void applyEdgeSmoothing(float[] preds, int width, int height) {
+    float[] edges = detectEdges(preds, width, height);
+    float[] smoothedPreds = applySmoothingFilter(preds, width, height);
+
+    // 根据边缘强度混合原始预测和平滑预测，边缘强度越高，使用越多的平滑结果
+    for (int i = 0; i < width * height; i++) {
+      float edgeStrength = edges[i];
+      preds[i] = preds[i] * (1 - edgeStrength) + smoothedPreds[i] * edgeStrength;
+    }
+  }
+
+  /**
+   * 参考实现：边缘检测 - 使用Sobel算子检测边缘
+   */
+  public static float[] detectEdges(float[] preds, int width, int height) {
+    float[] edges = new float[width * height];
+
+    int[] sobelX = {
+        -1, 0, 1,
+        -2, 0, 2,
+        -1, 0, 1
+    };
+    int[] sobelY = {
+        -1, -2, -1,
+        0, 0, 0,
+        1, 2, 1
+    };
+
+    for (int y = 1; y < height - 1; y++) {
+      for (int x = 1; x < width - 1; x++) {
+        int idx = y * width + x;
+
+        float gx = 0, gy = 0;
+
+        for (int ky = -1; ky <= 1; ky++) {
+          for (int kx = -1; kx <= 1; kx++) {
+            int pixelIdx = (y + ky) * width + (x + kx);
+            int kernelIdx = (ky + 1) * 3 + (kx + 1);
+
+            gx += preds[pixelIdx] * sobelX[kernelIdx];
+            gy += preds[pixelIdx] * sobelY[kernelIdx];
+          }
+        }
+
+        // 计算梯度幅值
+        edges[idx] = edgeStrength((float) Math.sqrt(gx * gx + gy * gy));
+      }
+    }
+
+    return edges;
+  }
+
+  /**
+   * 参考实现：应用3x3高斯平滑滤波器，边界像素直接复制原值
+   */
+  public static float[] applySmoothingFilter(float[] preds, int width, int height) {
+    float[] smoothed = new float[width * height];
+
+    float[] gaussianKernel = {
+        0.0625f, 0.125f, 0.0625f,
+        0.125f,  0.25f,  0.125f,
+        0.0625f, 0.125f, 0.0625f
+    };
+
+    for (int y = 1; y < height - 1; y++) {
+      for (int x = 1; x < width - 1; x++) {
+        int idx = y * width + x;
+        float sum = 0;
+
+        for (int ky = -1; ky <= 1; ky++) {
+          for (int kx = -1; kx <= 1; kx++) {
+            int pixelIdx = (y + ky) * width + (x + kx);
+            int kernelIdx = (ky + 1) * 3 + (kx + 1);
+            sum += preds[pixelIdx] * gaussianKernel[kernelIdx];
+          }
+        }
+
+        smoothed[idx] = sum;
+      }
+    }
+
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        if (y == 0 || y == height - 1 || x == 0 || x == width - 1) {
+          smoothed[y * width + x] = preds[y * width + x];
+        }
+      }
+    }
+
+    return smoothed;
+  }
+}
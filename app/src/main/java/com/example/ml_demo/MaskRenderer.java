@@ -0,0 +1,39 @@
+package com.example.ml_demo;
+
+import android.graphics.Bitmap;
+
+/**
+ * 掩码渲染 - 把预测结果打包成灰度像素数组，一次性写入模型输入尺寸的 Bitmap
+ * 不再放大到原图尺寸，显示时由 {@link MaskDrawable} 通过画布缩放；Bitmap从 {@link BitmapPool} 借用
+ */
+public final class MaskRenderer {
+
+  private MaskRenderer() {
+  }
+
+  /**
+   * @param predictions 归一化到0~1的预测结果，行优先排列
+   */
+  public static Bitmap render(float[] predictions, int width, int height) {
+    int[] pixels = new int[width * height];
+    toGrayPixels(predictions, pixels, width * height);
+    Bitmap bitmap = BitmapPool.getInstance().get(width, height, Bitmap.Config.ARGB_8888);
+    bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+    return bitmap;
+  }
+
+  /**
+   * 与 Color.rgb(gray, gray, gray) 结果相同，超出0~1范围的值截断
+   */
+  static void toGrayPixels(float[] predictions, int[] out, int count) {
+    for (int i = 0; i < count; i++) {
+      int gray = (int) (predictions[i] * 255);
+      if (gray < 0) {
+        gray = 0;
+      } else if (gray > 255) {
+        gray = 255;
+      }
+      out[i] = 0xff000000 | (gray << 16) | (gray << 8) | gray;
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.example.ml_demo;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
+
+import androidx.annotation.Nullable;
+
+/**
+ * 性能统计页面 - 显示每个模型各阶段的耗时分位数和内存变化，可以导出JSON用于不同设备之间对比
+ */
+public class MetricsActivity extends Activity {
+  private static final String TAG = "性能统计日志";
+
+  private TextView metricsText;
+
+  @Override
+  protected void onCreate(@Nullable Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    setContentView(R.layout.activity_metrics);
+
+    metricsText = findViewById(R.id.metricsText);
+    Button refreshButton = findViewById(R.id.refreshButton);
+    Button exportButton = findViewById(R.id.exportButton);
+    Button resetButton = findViewById(R.id.resetButton);
+
+    refreshButton.setOnClickListener(new View.OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        refresh();
+      }
+    });
+
+    exportButton.setOnClickListener(new View.OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        exportJson();
+      }
+    });
+
+    resetButton.setOnClickListener(new View.OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        PipelineMetrics.getInstance().reset();
+        BitmapPool.getInstance().resetStats();
+        refresh();
+      }
+    });
+  }
+
+  @Override
+  protected void onResume() {
+    super.onResume();
+    refresh();
+  }
+
+  private void refresh() {
+    metricsText.setText(PipelineMetrics.getInstance().formatReport() + "\n"
+        + BitmapPool.getInstance().formatStats());
+  }
+
+  /**
+   * 导出到应用的外部文件目录，不需要存储权限，可以通过 adb pull 取出
+   */
+  private void exportJson() {
+    File dir = getExternalFilesDir(null);
+    if (dir == null) {
+      dir = getFilesDir();
+    }
+    try {
+      File file = PipelineMetrics.getInstance().dumpJson(dir);
+      Toast.makeText(this, "已导出: " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+    } catch (IOException e) {
+      Log.e(TAG, "导出统计数据失败", e);
+      Toast.makeText(this, "导出失败: " + e.getMessage(), Toast.LENGTH_LONG).show();
+    }
+  }
+}
@@ -0,0 +1,206 @@
+package com.example.ml_demo;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * 模型文件提取器 - 将APK中未压缩的模型文件通过 FileChannel.transferTo 直接拷贝到私有目录
+ * 拷贝时按块计算源数据的CRC32，写完后读一遍临时文件比较，校验通过再原子重命名，
+ * 避免半截文件被当作有效模型使用
+ */
+public class ModelAssetExtractor {
+  private static final String TAG = "模型提取日志";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final String MARKER_SUFFIX = ".crc";
+  private static final int CHECKSUM_BUFFER_SIZE = 1024 * 1024;
+  private static final long TRANSFER_CHUNK_SIZE = CHECKSUM_BUFFER_SIZE;
+
+  private ModelAssetExtractor() {
+  }
+
+  /**
+   * 提取模型文件，已经提取且校验标记有效时直接返回
+   *
+   * @return 模型文件的绝对路径
+   */
+  public static String extract(Context context, String assetName) throws IOException {
+    File target = new File(context.getFilesDir(), assetName);
+    File marker = new File(context.getFilesDir(), assetName + MARKER_SUFFIX);
+    long appUpdateTime = getAppUpdateTime(context);
+
+    if (target.exists() && isMarkerValid(marker, target.length(), appUpdateTime)) {
+      return target.getAbsolutePath();
+    }
+
+    long startTime = SystemClock.elapsedRealtime();
+    File temp = new File(context.getFilesDir(), assetName + TEMP_SUFFIX);
+    marker.delete();
+    long expectedCrc;
+    long expectedLength;
+    try (AssetFileDescriptor afd = context.getAssets().openFd(assetName)) {
+      expectedLength = afd.getLength();
+      expectedCrc = transferUncompressed(afd, temp);
+    } catch (FileNotFoundException e) {
+      // 资源在APK中被压缩时无法获取文件描述符，退回到流式拷贝
+      Log.w(TAG, assetName + " 未以非压缩方式打包，使用流式拷贝");
+      long[] lengthAndCrc = copyCompressed(context, assetName, temp);
+      expectedLength = lengthAndCrc[0];
+      expectedCrc = lengthAndCrc[1];
+    }
+
+    // 校验写入结果
+    if (temp.length() != expectedLength) {
+      temp.delete();
+      throw new IOException("模型文件大小校验失败: " + temp.length() + " != " + expectedLength);
+    }
+    long actualCrc = checksum(temp);
+    if (actualCrc != expectedCrc) {
+      temp.delete();
+      throw new IOException("模型文件校验和不匹配: " + assetName);
+    }
+    if (!temp.renameTo(target)) {
+      temp.delete();
+      throw new IOException("模型文件重命名失败: " + target);
+    }
+    writeMarker(marker, expectedLength, appUpdateTime);
+
+    Log.d(TAG, assetName + " 提取耗时: " + (SystemClock.elapsedRealtime() - startTime) + "ms, 大小: "
+        + expectedLength + " 字节");
+    return target.getAbsolutePath();
+  }
+
+  /**
+   * 按块通过 transferTo 在内核中完成拷贝，每块拷贝后立即计算这一块源数据的校验和
+   * 刚拷贝过的数据还在页缓存中，不需要再从存储中整体读一遍APK
+   */
+  private static long transferUncompressed(AssetFileDescriptor afd, File temp) throws IOException {
+    long offset = afd.getStartOffset();
+    long length = afd.getLength();
+    CRC32 crc = new CRC32();
+    ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BUFFER_SIZE);
+    try (FileInputStream in = afd.createInputStream();
+         FileOutputStream out = new FileOutputStream(temp)) {
+      FileChannel source = in.getChannel();
+      FileChannel destination = out.getChannel();
+      long transferred = 0;
+      while (transferred < length) {
+        long chunk = Math.min(TRANSFER_CHUNK_SIZE, length - transferred);
+        long count = source.transferTo(offset + transferred, chunk, destination);
+        if (count <= 0) {
+          throw new IOException("模型文件拷贝中断: " + transferred + "/" + length);
+        }
+        updateChecksum(crc, buffer, source, offset + transferred, count);
+        transferred += count;
+      }
+      destination.force(true);
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * 压缩资源只能按流读取，边拷贝边计算校验和
+   */
+  private static long[] copyCompressed(Context context, String assetName, File temp)
+      throws IOException {
+    CRC32 crc = new CRC32();
+    long length = 0;
+    try (InputStream is = context.getAssets().open(assetName);
+         ReadableByteChannel source = Channels.newChannel(is);
+         FileOutputStream out = new FileOutputStream(temp)) {
+      FileChannel destination = out.getChannel();
+      ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BUFFER_SIZE);
+      int read;
+      while ((read = source.read(buffer)) != -1) {
+        crc.update(buffer.array(), 0, read);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          destination.write(buffer);
+        }
+        buffer.clear();
+        length += read;
+      }
+      destination.force(true);
+    }
+    return new long[]{length, crc.getValue()};
+  }
+
+  private static long checksum(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    try (FileInputStream in = new FileInputStream(file)) {
+      FileChannel channel = in.getChannel();
+      updateChecksum(crc, ByteBuffer.allocate(CHECKSUM_BUFFER_SIZE), channel, 0, channel.size());
+    }
+    return crc.getValue();
+  }
+
+  private static void updateChecksum(CRC32 crc, ByteBuffer buffer, FileChannel channel,
+      long offset, long length) throws IOException {
+    long position = offset;
+    long end = offset + length;
+    while (position < end) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position));
+      int read = channel.read(buffer, position);
+      if (read <= 0) {
+        throw new IOException("读取模型文件失败: " + position);
+      }
+      crc.update(buffer.array(), 0, read);
+      position += read;
+    }
+  }
+
+  /**
+   * 标记文件内容为 "长度,APK更新时间"，只在校验和比较通过并重命名成功后写入
+   * 启动时不再重新计算整个模型文件的校验和，旧格式的标记会触发一次重新提取
+   */
+  private static boolean isMarkerValid(File marker, long length, long appUpdateTime) {
+    if (!marker.exists()) {
+      return false;
+    }
+    try (FileInputStream in = new FileInputStream(marker)) {
+      byte[] bytes = new byte[(int) marker.length()];
+      int read = in.read(bytes);
+      String[] fields = new String(bytes, 0, Math.max(read, 0), StandardCharsets.UTF_8).split(",");
+      return fields.length == 2
+          && Long.parseLong(fields[0]) == length
+          && Long.parseLong(fields[1]) == appUpdateTime;
+    } catch (IOException | NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private static void writeMarker(File marker, long length, long appUpdateTime)
+      throws IOException {
+    try (FileOutputStream out = new FileOutputStream(marker)) {
+      out.write((length + "," + appUpdateTime).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * APK更新后重新提取，避免沿用旧版本的模型文件
+   */
+  private static long getAppUpdateTime(Context context) {
+    try {
+      return context.getPackageManager()
+          .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+    } catch (PackageManager.NameNotFoundException e) {
+      return 0;
+    }
+  }
+}
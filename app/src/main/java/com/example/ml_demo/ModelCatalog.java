@@ -0,0 +1,143 @@
+package com.example.ml_demo;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 模型目录 - 列出应用认识的所有模型文件及其输入尺寸、精度和预期推理耗时
+ * 量化版本由 fp32 模型离线导出（见 {@link Precision#INT8}），与 fp32 版本一样通过 LiteModuleLoader 加载
+ * 只有 assets 中实际存在的文件才会出现在界面上
+ */
+public final class ModelCatalog {
+  private static final String TAG = "模型目录日志";
+
+  public enum Precision {
+    FP32("fp32"),
+    // 权重为int8的量化模型，激活在推理时按需量化
+    INT8("int8");
+
+    final String label;
+
+    Precision(String label) {
+      this.label = label;
+    }
+  }
+
+  /**
+   * 一个模型文件
+   */
+  public static final class Entry {
+    // assets 中的文件名，也是 ModelRegistry、缓存和统计使用的模型名
+    public final String fileName;
+    public final String displayName;
+    // 训练时的输入边长，量化校验使用这个尺寸
+    public final int inputSize;
+    public final Precision precision;
+    // 中端设备上单次推理的参考耗时，只用于界面提示
+    public final long expectedLatencyMillis;
+    public final float sizeMegabytes;
+    // 量化模型对应的 fp32 模型文件名，fp32 模型为null
+    public final String referenceFileName;
+
+    Entry(String fileName, String displayName, int inputSize, Precision precision,
+        long expectedLatencyMillis, float sizeMegabytes, String referenceFileName) {
+      this.fileName = fileName;
+      this.displayName = displayName;
+      this.inputSize = inputSize;
+      this.precision = precision;
+      this.expectedLatencyMillis = expectedLatencyMillis;
+      this.sizeMegabytes = sizeMegabytes;
+      this.referenceFileName = referenceFileName;
+    }
+
+    public boolean isQuantized() {
+      return precision != Precision.FP32;
+    }
+
+    /**
+     * 下拉框中显示的文本，例如 "U2NET-P int8 (1.6MB, 约90ms)"
+     */
+    public String getLabel() {
+      return String.format(Locale.US, "%s %s (%.1fMB, 约%dms)", displayName, precision.label,
+          sizeMegabytes, expectedLatencyMillis);
+    }
+  }
+
+  // 按推荐顺序排列，第一个可用的模型作为默认模型
+  private static final List<Entry> ENTRIES = Collections.unmodifiableList(Arrays.asList(
+      new Entry("u2netp_mobile.ptl", "U2NET-P", 320, Precision.FP32, 150, 4.7f, null),
+      new Entry("u2netp_mobile_int8.ptl", "U2NET-P", 320, Precision.INT8, 90, 1.6f,
+          "u2netp_mobile.ptl"),
+      new Entry("u2net_mobile.ptl", "U2NET", 320, Precision.FP32, 900, 173.6f, null),
+      new Entry("u2net_mobile_int8.ptl", "U2NET", 320, Precision.INT8, 450, 44.5f,
+          "u2net_mobile.ptl")));
+
+  private ModelCatalog() {
+  }
+
+  public static List<Entry> getAll() {
+    return ENTRIES;
+  }
+
+  /**
+   * 按文件名查找，不在目录中时返回null
+   */
+  public static Entry find(String fileName) {
+    for (Entry entry : ENTRIES) {
+      if (entry.fileName.equals(fileName)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * assets 中实际存在的模型，顺序与目录一致
+   */
+  public static List<Entry> getAvailable(Context context) {
+    Set<String> assets = new HashSet<>();
+    try {
+      String[] names = context.getAssets().list("");
+      if (names != null) {
+        assets.addAll(Arrays.asList(names));
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "读取assets目录失败", e);
+    }
+    List<Entry> available = new ArrayList<>();
+    for (Entry entry : ENTRIES) {
+      if (assets.contains(entry.fileName)) {
+        available.add(entry);
+      } else {
+        Log.d(TAG, "模型文件不存在，跳过: " + entry.fileName);
+      }
+    }
+    return available;
+  }
+
+  /**
+   * 可以做量化校验的模型：量化模型和它的 fp32 模型都存在
+   */
+  public static List<Entry> getVerifiable(List<Entry> available) {
+    Set<String> names = new HashSet<>();
+    for (Entry entry : available) {
+      names.add(entry.fileName);
+    }
+    List<Entry> verifiable = new ArrayList<>();
+    for (Entry entry : available) {
+      if (entry.isQuantized() && names.contains(entry.referenceFileName)) {
+        verifiable.add(entry);
+      }
+    }
+    return verifiable;
+  }
+}
@@ -0,0 +1,240 @@
+package com.example.ml_demo;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.pytorch.LiteModuleLoader;
+import org.pytorch.Module;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 模型注册表 - 在后台线程加载模型，并按最近使用顺序在内存预算内保留已加载的模型
+ * 切换到已加载过的模型时直接返回，不需要再次读取模型文件
+ */
+public class ModelRegistry {
+  private static final String TAG = "模型加载日志";
+  // 默认内存预算，足够同时保留 U2NET 和 U2NET-P
+  public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+
+  /**
+   * 模型加载回调，始终在主线程执行
+   */
+  public interface LoadCallback {
+    void onLoaded(String modelName, Module module);
+
+    void onFailed(String modelName, Exception e);
+  }
+
+  private static ModelRegistry instance;
+
+  private final Context appContext;
+  private final long memoryBudget;
+  private final ExecutorService loader;
+  private final Handler mainHandler;
+
+  // accessOrder = true，迭代顺序即为从最久未使用到最近使用
+  private final LinkedHashMap<String, Entry> residentModels = new LinkedHashMap<>(4, 0.75f, true);
+  private final Map<String, FutureTask<Module>> pendingLoads = new HashMap<>();
+  private long residentBytes = 0;
+
+  public ModelRegistry(Context context) {
+    this(context, DEFAULT_MEMORY_BUDGET);
+  }
+
+  /**
+   * 进程内共享的注册表，实时分割页面与主页面使用同一份驻留模型；release() 之后再获取时重新创建
+   */
+  public static synchronized ModelRegistry getInstance(Context context) {
+    if (instance == null) {
+      instance = new ModelRegistry(context);
+    }
+    return instance;
+  }
+
+  public ModelRegistry(Context context, long memoryBudget) {
+    this.appContext = context.getApplicationContext();
+    this.memoryBudget = memoryBudget;
+    // 单线程加载，避免两个大模型同时读入内存
+    this.loader = Executors.newSingleThreadExecutor();
+    this.mainHandler = new Handler(Looper.getMainLooper());
+  }
+
+  /**
+   * 获取已经驻留在内存中的模型，没有则返回null
+   */
+  public synchronized Module getIfWarm(String modelName) {
+    Entry entry = residentModels.get(modelName);
+    return entry != null ? entry.module : null;
+  }
+
+  /**
+   * 异步加载模型，同一模型的并发请求只会加载一次
+   *
+   * @param callback 可以为null，只使用返回的Future
+   */
+  public Future<Module> load(final String modelName, final LoadCallback callback) {
+    FutureTask<Module> task;
+    synchronized (this) {
+      Entry entry = residentModels.get(modelName);
+      if (entry != null) {
+        task = new FutureTask<>(new ResidentModel(entry.module));
+        task.run();
+      } else {
+        task = pendingLoads.get(modelName);
+        if (task == null) {
+          task = new FutureTask<>(new Callable<Module>() {
+            @Override
+            public Module call() throws Exception {
+              return loadModule(modelName);
+            }
+          });
+          pendingLoads.put(modelName, task);
+          loader.execute(task);
+        }
+      }
+    }
+
+    if (callback != null) {
+      final FutureTask<Module> result = task;
+      if (result.isDone()) {
+        deliver(modelName, result, callback);
+      } else {
+        loader.execute(new Runnable() {
+          @Override
+          public void run() {
+            // 单线程执行器保证此时加载任务已经结束
+            deliver(modelName, result, callback);
+          }
+        });
+      }
+    }
+    return task;
+  }
+
+  /**
+   * 响应系统内存回调：进程进入后台列表后丢弃所有驻留模型，回到前台时按需重新加载
+   * 注册表随进程存在，页面销毁（包括旋转屏幕）时不释放
+   */
+  public synchronized void onTrimMemory(int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND && !residentModels.isEmpty()) {
+      // 与淘汰相同，不主动destroy()，仍在使用的模型由持有者的引用保留
+      residentModels.clear();
+      residentBytes = 0;
+      Log.d(TAG, "内存不足，丢弃所有驻留模型");
+    }
+  }
+
+  /**
+   * 释放所有驻留模型并关闭加载线程
+   */
+  public synchronized void release() {
+    synchronized (ModelRegistry.class) {
+      if (instance == this) {
+        instance = null;
+      }
+    }
+    loader.shutdownNow();
+    residentModels.clear();
+    pendingLoads.clear();
+    residentBytes = 0;
+  }
+
+  private Module loadModule(String modelName) throws IOException {
+    try {
+      long startTime = System.currentTimeMillis();
+      String modelPath = ModelAssetExtractor.extract(appContext, modelName);
+      Module module = LiteModuleLoader.load(modelPath);
+      long size = new File(modelPath).length();
+      Log.d(TAG, modelName + " 加载耗时: " + (System.currentTimeMillis() - startTime) + "ms");
+
+      synchronized (this) {
+        residentModels.put(modelName, new Entry(module, size));
+        residentBytes += size;
+        trimToBudget(modelName);
+      }
+      return module;
+    } finally {
+      synchronized (this) {
+        pendingLoads.remove(modelName);
+      }
+    }
+  }
+
+  /**
+   * 按最近最少使用顺序淘汰模型，刚加载的模型即使超出预算也会保留
+   */
+  private void trimToBudget(String keepModelName) {
+    Iterator<Map.Entry<String, Entry>> iterator = residentModels.entrySet().iterator();
+    while (residentBytes > memoryBudget && iterator.hasNext()) {
+      Map.Entry<String, Entry> eldest = iterator.next();
+      if (eldest.getKey().equals(keepModelName)) {
+        continue;
+      }
+      // 不主动调用destroy()，推理线程可能仍在使用该模型，交给GC回收native资源
+      residentBytes -= eldest.getValue().sizeBytes;
+      iterator.remove();
+      Log.d(TAG, "淘汰模型: " + eldest.getKey());
+    }
+  }
+
+  private void deliver(final String modelName, Future<Module> result,
+      final LoadCallback callback) {
+    Module module = null;
+    Exception error = null;
+    try {
+      module = result.get();
+    } catch (Exception e) {
+      error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    }
+
+    final Module loaded = module;
+    final Exception failure = error;
+    mainHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        if (loaded != null) {
+          callback.onLoaded(modelName, loaded);
+        } else {
+          callback.onFailed(modelName, failure);
+        }
+      }
+    });
+  }
+
+  private static class Entry {
+    final Module module;
+    final long sizeBytes;
+
+    Entry(Module module, long sizeBytes) {
+      this.module = module;
+      this.sizeBytes = sizeBytes;
+    }
+  }
+
+  private static class ResidentModel implements Callable<Module> {
+    private final Module module;
+
+    ResidentModel(Module module) {
+      this.module = module;
+    }
+
+    @Override
+    public Module call() {
+      return module;
+    }
+  }
+}
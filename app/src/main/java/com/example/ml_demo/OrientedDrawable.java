@@ -0,0 +1,78 @@
+package com.example.ml_demo;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * 按EXIF方向显示未旋转的图片 - 固有尺寸报告为旋转后的大小，绘制时由画布矩阵完成旋转和缩放
+ * 避免为显示分配一张旋转后的副本
+ */
+public class OrientedDrawable extends Drawable {
+  private final Bitmap bitmap;
+  private final int orientation;
+  private final int intrinsicWidth;
+  private final int intrinsicHeight;
+  private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+  private Matrix matrix;
+
+  public OrientedDrawable(Bitmap bitmap, int orientation) {
+    this.bitmap = bitmap;
+    this.orientation = orientation;
+    this.intrinsicWidth = ExifOrientation.orientedWidth(orientation, bitmap.getWidth(),
+        bitmap.getHeight());
+    this.intrinsicHeight = ExifOrientation.orientedHeight(orientation, bitmap.getWidth(),
+        bitmap.getHeight());
+  }
+
+  @Override
+  protected void onBoundsChange(Rect bounds) {
+    matrix = null;
+  }
+
+  @Override
+  public void draw(Canvas canvas) {
+    Rect bounds = getBounds();
+    if (bounds.isEmpty()) {
+      return;
+    }
+    if (matrix == null) {
+      matrix = SampledImage.orientedTransform(orientation, bitmap.getWidth(), bitmap.getHeight(),
+          bounds.width(), bounds.height());
+      matrix.postTranslate(bounds.left, bounds.top);
+    }
+    canvas.drawBitmap(bitmap, matrix, paint);
+  }
+
+  @Override
+  public int getIntrinsicWidth() {
+    return intrinsicWidth;
+  }
+
+  @Override
+  public int getIntrinsicHeight() {
+    return intrinsicHeight;
+  }
+
+  @Override
+  public void setAlpha(int alpha) {
+    paint.setAlpha(alpha);
+    invalidateSelf();
+  }
+
+  @Override
+  public void setColorFilter(ColorFilter colorFilter) {
+    paint.setColorFilter(colorFilter);
+    invalidateSelf();
+  }
+
+  @Override
+  public int getOpacity() {
+    return paint.getAlpha() == 255 ? PixelFormat.OPAQUE : PixelFormat.TRANSLUCENT;
+  }
+}
@@ -0,0 +1,250 @@
+package com.example.ml_demo;
+
+import android.os.Debug;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 流水线性能统计 - 按模型和阶段记录耗时分布（p50/p90/p99、次数、最大值）和内存变化
+ * 记录过程无锁，可以在任意线程调用；统计结果可以在统计页面查看或导出为JSON
+ */
+public final class PipelineMetrics {
+  private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+  /**
+   * DECODE 和 FULL_DECODE 只是解码，EXIF方向在 PREPROCESS 缩放和 COMPOSITE 读取像素时一并处理
+   * 开启细化时抠图阶段记录为 REFINE，不计入 COMPOSITE；TILES 是全局推理之后分块推理和融合的时间
+   * CACHE_LOOKUP 包含读取原图、计算缓存键和命中时读取掩码文件，CACHE_LOAD 是命中后解码原图和抠图的时间
+   */
+  public enum Stage {
+    CACHE_LOOKUP, DECODE, PREPROCESS, INFERENCE, TILES, POSTPROCESS, FULL_DECODE, MASK,
+    COMPOSITE, REFINE, SAVE, TOTAL, CACHE_LOAD
+  }
+
+  private static volatile PipelineMetrics instance;
+
+  private final ConcurrentHashMap<String, ModelMetrics> models = new ConcurrentHashMap<>();
+  private volatile long resetTime = System.currentTimeMillis();
+
+  private PipelineMetrics() {
+  }
+
+  public static PipelineMetrics getInstance() {
+    if (instance == null) {
+      synchronized (PipelineMetrics.class) {
+        if (instance == null) {
+          instance = new PipelineMetrics();
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * 开始计时，同时记下当前的内存占用，结束时调用 {@link Span#stop()}
+   */
+  public Span start(String modelName, Stage stage) {
+    return new Span(modelName, stage);
+  }
+
+  /**
+   * 记录一次不统计内存的耗时，例如在其他阶段内部测得的时间
+   */
+  public void record(String modelName, Stage stage, long nanos) {
+    metricsFor(modelName).latency[stage.ordinal()].record(nanos);
+  }
+
+  void record(String modelName, Stage stage, long nanos, long heapDelta) {
+    ModelMetrics metrics = metricsFor(modelName);
+    int index = stage.ordinal();
+    metrics.latency[index].record(nanos);
+    metrics.heapSamples.incrementAndGet(index);
+    metrics.heapDeltaSum.addAndGet(index, heapDelta);
+    long current;
+    while (heapDelta > (current = metrics.heapDeltaMax.get(index))
+        && !metrics.heapDeltaMax.compareAndSet(index, current, heapDelta)) {
+      // 其他线程同时更新了最大值，重试
+    }
+  }
+
+  public void reset() {
+    models.clear();
+    resetTime = System.currentTimeMillis();
+  }
+
+  /**
+   * 已有统计数据的模型，按名称排序
+   */
+  public List<String> getModelNames() {
+    List<String> names = new ArrayList<>(models.keySet());
+    Collections.sort(names);
+    return names;
+  }
+
+  /**
+   * 统计页面显示的文本，时间单位为毫秒，内存单位为KB
+   */
+  public String formatReport() {
+    StringBuilder report = new StringBuilder();
+    for (String modelName : getModelNames()) {
+      ModelMetrics metrics = models.get(modelName);
+      report.append(modelName).append('\n');
+      report.append(String.format(Locale.US, "%-12s %6s %8s %8s %8s %8s %9s\n",
+          "阶段", "次数", "p50", "p90", "p99", "最大", "内存均值"));
+      for (Stage stage : Stage.values()) {
+        LatencyHistogram.Snapshot snapshot = metrics.latency[stage.ordinal()].snapshot();
+        if (snapshot.getCount() == 0) {
+          continue;
+        }
+        long heapSamples = metrics.heapSamples.get(stage.ordinal());
+        report.append(String.format(Locale.US, "%-12s %6d %8.1f %8.1f %8.1f %8.1f %9s\n",
+            stage.name(), snapshot.getCount(), toMillis(snapshot.getPercentile(0.5)),
+            toMillis(snapshot.getPercentile(0.9)), toMillis(snapshot.getPercentile(0.99)),
+            toMillis(snapshot.getMax()), heapSamples > 0
+                ? String.valueOf(metrics.heapDeltaSum.get(stage.ordinal()) / heapSamples / 1024)
+                : "-"));
+      }
+      report.append('\n');
+    }
+    return report.length() > 0 ? report.toString() : "暂无统计数据，处理图片后再查看";
+  }
+
+  public JSONObject toJson() throws JSONException {
+    JSONObject root = new JSONObject();
+    root.put("since", resetTime);
+    root.put("timestamp", System.currentTimeMillis());
+    JSONArray modelArray = new JSONArray();
+    for (String modelName : getModelNames()) {
+      ModelMetrics metrics = models.get(modelName);
+      JSONObject model = new JSONObject();
+      model.put("model", modelName);
+      JSONObject stages = new JSONObject();
+      for (Stage stage : Stage.values()) {
+        int index = stage.ordinal();
+        LatencyHistogram.Snapshot snapshot = metrics.latency[index].snapshot();
+        if (snapshot.getCount() == 0) {
+          continue;
+        }
+        JSONObject stageJson = new JSONObject();
+        stageJson.put("count", snapshot.getCount());
+        stageJson.put("meanNs", snapshot.getMean());
+        stageJson.put("maxNs", snapshot.getMax());
+        for (double percentile : PERCENTILES) {
+          stageJson.put("p" + Math.round(percentile * 100) + "Ns",
+              snapshot.getPercentile(percentile));
+        }
+        long heapSamples = metrics.heapSamples.get(index);
+        if (heapSamples > 0) {
+          stageJson.put("heapSamples", heapSamples);
+          stageJson.put("heapDeltaMeanBytes", metrics.heapDeltaSum.get(index) / heapSamples);
+          stageJson.put("heapDeltaMaxBytes", metrics.heapDeltaMax.get(index));
+        }
+        stages.put(stage.name(), stageJson);
+      }
+      model.put("stages", stages);
+      modelArray.put(model);
+    }
+    root.put("models", modelArray);
+    root.put("bitmapPool", BitmapPool.getInstance().toJson());
+    return root;
+  }
+
+  /**
+   * 导出为JSON文件，返回写入的文件
+   */
+  public File dumpJson(File dir) throws IOException {
+    String json;
+    try {
+      json = toJson().toString(2);
+    } catch (JSONException e) {
+      throw new IOException("统计数据序列化失败", e);
+    }
+    String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault())
+        .format(new Date());
+    File file = new File(dir, "metrics_" + timestamp + ".json");
+    try (OutputStream out = new FileOutputStream(file)) {
+      out.write(json.getBytes(StandardCharsets.UTF_8));
+    }
+    return file;
+  }
+
+  private ModelMetrics metricsFor(String modelName) {
+    ModelMetrics metrics = models.get(modelName);
+    if (metrics == null) {
+      ModelMetrics created = new ModelMetrics();
+      metrics = models.putIfAbsent(modelName, created);
+      if (metrics == null) {
+        metrics = created;
+      }
+    }
+    return metrics;
+  }
+
+  /**
+   * Java堆和Native堆（Bitmap像素所在）当前已使用的字节数
+   * 多个阶段并行时会互相影响，只作为趋势参考
+   */
+  static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+
+  /**
+   * 一次计时
+   */
+  public final class Span {
+    private final String modelName;
+    private final Stage stage;
+    private final long startNanos;
+    private final long startMemory;
+
+    private Span(String modelName, Stage stage) {
+      this.modelName = modelName;
+      this.stage = stage;
+      this.startMemory = usedMemory();
+      this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * 结束计时并记录，返回耗时（纳秒）
+     */
+    public long stop() {
+      long elapsed = System.nanoTime() - startNanos;
+      record(modelName, stage, elapsed, usedMemory() - startMemory);
+      return elapsed;
+    }
+  }
+
+  private static class ModelMetrics {
+    final LatencyHistogram[] latency = new LatencyHistogram[Stage.values().length];
+    final AtomicLongArray heapSamples = new AtomicLongArray(Stage.values().length);
+    final AtomicLongArray heapDeltaSum = new AtomicLongArray(Stage.values().length);
+    final AtomicLongArray heapDeltaMax = new AtomicLongArray(Stage.values().length);
+
+    ModelMetrics() {
+      for (int i = 0; i < latency.length; i++) {
+        latency[i] = new LatencyHistogram();
+      }
+    }
+  }
+}
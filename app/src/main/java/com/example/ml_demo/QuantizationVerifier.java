@@ -0,0 +1,262 @@
+package com.example.ml_demo;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.pytorch.IValue;
+import org.pytorch.Module;
+import org.pytorch.Tensor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 量化校验 - 在同一组图片上分别运行量化模型和对应的 fp32 模型，
+ * 比较未后处理的预测结果（前景IoU、平均绝对误差）和推理耗时
+ * 两个模型使用同一个输入张量，输入尺寸取目录中声明的训练尺寸
+ */
+public class QuantizationVerifier {
+  private static final String TAG = "量化校验日志";
+  // 计算IoU时的前景阈值
+  static final float FOREGROUND_THRESHOLD = 0.5f;
+
+  /**
+   * 回调都在主线程执行
+   */
+  public interface Callback {
+    void onProgress(String message);
+
+    void onCompleted(List<Report> reports);
+
+    void onFailed(Exception e);
+  }
+
+  /**
+   * 一个量化模型的校验结果
+   */
+  public static final class Report {
+    public final ModelCatalog.Entry entry;
+    public final int imageCount;
+    public final double meanIou;
+    public final double minIou;
+    public final double meanAbsoluteError;
+    // 每张图片推理耗时的中位数
+    public final long referenceMillis;
+    public final long quantizedMillis;
+
+    Report(ModelCatalog.Entry entry, int imageCount, double meanIou, double minIou,
+        double meanAbsoluteError, long referenceMillis, long quantizedMillis) {
+      this.entry = entry;
+      this.imageCount = imageCount;
+      this.meanIou = meanIou;
+      this.minIou = minIou;
+      this.meanAbsoluteError = meanAbsoluteError;
+      this.referenceMillis = referenceMillis;
+      this.quantizedMillis = quantizedMillis;
+    }
+
+    public double getSpeedUp() {
+      return quantizedMillis > 0 ? (double) referenceMillis / quantizedMillis : 0;
+    }
+
+    public String format() {
+      return String.format(Locale.US,
+          "%s: %d张\nIoU 平均%.3f 最低%.3f, MAE %.4f\n推理 fp32 %dms / %s %dms, 加速%.2fx",
+          entry.displayName, imageCount, meanIou, minIou, meanAbsoluteError, referenceMillis,
+          entry.precision.label, quantizedMillis, getSpeedUp());
+    }
+  }
+
+  private final ContentResolver contentResolver;
+  private final ModelRegistry modelRegistry;
+  private final int decodeSize;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private volatile boolean cancelled = false;
+
+  public QuantizationVerifier(ContentResolver contentResolver, ModelRegistry modelRegistry,
+      int decodeSize) {
+    this.contentResolver = contentResolver;
+    this.modelRegistry = modelRegistry;
+    this.decodeSize = decodeSize;
+  }
+
+  /**
+   * 在后台线程依次校验每个量化模型，图片按传入顺序处理
+   *
+   * @param entries 量化模型，见 {@link ModelCatalog#getVerifiable}
+   */
+  public void verifyAsync(final List<ModelCatalog.Entry> entries, final List<Uri> images,
+      final Callback callback) {
+    executor.execute(() -> {
+      try {
+        List<Report> reports = new ArrayList<>();
+        for (ModelCatalog.Entry entry : entries) {
+          if (cancelled) {
+            return;
+          }
+          reports.add(verify(entry, images, callback));
+        }
+        mainHandler.post(() -> callback.onCompleted(reports));
+      } catch (Exception e) {
+        if (cancelled) {
+          return;
+        }
+        Log.e(TAG, "量化校验失败", e);
+        mainHandler.post(() -> callback.onFailed(e));
+      }
+    });
+  }
+
+  /**
+   * 取消后当前图片处理完即停止，不再回调；正在执行的推理无法中断，返回时模型可能仍在使用
+   */
+  public void cancel() {
+    cancelled = true;
+    executor.shutdownNow();
+  }
+
+  /**
+   * 取消校验，后台线程退出、模型不再被使用后在主线程执行 onStopped
+   */
+  public void cancel(final Runnable onStopped) {
+    cancel();
+    new Thread(() -> {
+      try {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        return;
+      }
+      mainHandler.post(onStopped);
+    }, "quantization-cancel").start();
+  }
+
+  private Report verify(ModelCatalog.Entry entry, List<Uri> images, Callback callback)
+      throws Exception {
+    final String name = entry.displayName + " " + entry.precision.label;
+    mainHandler.post(() -> callback.onProgress("正在加载" + name + "和fp32模型..."));
+    Module reference = load(entry.referenceFileName);
+    Module quantized = load(entry.fileName);
+    TensorPreprocessor preprocessor = new TensorPreprocessor(entry.inputSize, entry.inputSize);
+
+    int count = images.size();
+    double[] ious = new double[count];
+    double[] errors = new double[count];
+    long[] referenceMillis = new long[count];
+    long[] quantizedMillis = new long[count];
+    for (int i = 0; i < count; i++) {
+      if (cancelled) {
+        throw new InterruptedException("量化校验已取消");
+      }
+      final int index = i;
+      mainHandler.post(() -> callback.onProgress(
+          "正在校验" + name + " " + (index + 1) + "/" + count));
+      SampledImage image = SampledImage.decode(contentResolver, images.get(i), decodeSize);
+      Tensor input;
+      try {
+        input = preprocessor.process(image.getInferenceBitmap(), image.getOrientation());
+      } finally {
+        // 张量已经写入输入缓冲区，小图不会显示，放回复用池
+        BitmapPool.getInstance().put(image.getInferenceBitmap());
+      }
+      if (i == 0) {
+        // 第一次推理包含初始化开销，不计时
+        forward(reference, input);
+        forward(quantized, input);
+      }
+      long start = System.nanoTime();
+      float[] expected = forward(reference, input);
+      referenceMillis[i] = (System.nanoTime() - start) / 1_000_000;
+      start = System.nanoTime();
+      float[] actual = forward(quantized, input);
+      quantizedMillis[i] = (System.nanoTime() - start) / 1_000_000;
+
+      ious[i] = iou(expected, actual, FOREGROUND_THRESHOLD);
+      errors[i] = meanAbsoluteError(expected, actual);
+      Log.d(TAG, String.format(Locale.US, "%s #%d IoU=%.4f MAE=%.5f fp32=%dms quant=%dms",
+          name, i, ious[i], errors[i], referenceMillis[i], quantizedMillis[i]));
+    }
+
+    double minIou = 1;
+    for (double value : ious) {
+      minIou = Math.min(minIou, value);
+    }
+    return new Report(entry, count, mean(ious), count > 0 ? minIou : 0, mean(errors),
+        median(referenceMillis), median(quantizedMillis));
+  }
+
+  private Module load(String fileName) throws Exception {
+    try {
+      return modelRegistry.load(fileName, null).get();
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    }
+  }
+
+  private static float[] forward(Module module, Tensor input) {
+    Tensor output = module.forward(IValue.from(input)).toTuple()[0].toTensor();
+    return output.getDataAsFloatArray();
+  }
+
+  /**
+   * 两个预测结果按阈值二值化后的交并比，两者都没有前景时为1
+   */
+  static double iou(float[] expected, float[] actual, float threshold) {
+    checkLength(expected, actual);
+    long intersection = 0;
+    long union = 0;
+    for (int i = 0; i < expected.length; i++) {
+      boolean a = expected[i] >= threshold;
+      boolean b = actual[i] >= threshold;
+      if (a && b) {
+        intersection++;
+      }
+      if (a || b) {
+        union++;
+      }
+    }
+    return union == 0 ? 1 : (double) intersection / union;
+  }
+
+  static double meanAbsoluteError(float[] expected, float[] actual) {
+    checkLength(expected, actual);
+    double sum = 0;
+    for (int i = 0; i < expected.length; i++) {
+      sum += Math.abs(expected[i] - actual[i]);
+    }
+    return expected.length == 0 ? 0 : sum / expected.length;
+  }
+
+  private static void checkLength(float[] expected, float[] actual) {
+    if (expected.length != actual.length) {
+      throw new IllegalArgumentException("预测结果尺寸不一致: " + expected.length + " / "
+          + actual.length);
+    }
+  }
+
+  private static double mean(double[] values) {
+    double sum = 0;
+    for (double value : values) {
+      sum += value;
+    }
+    return values.length == 0 ? 0 : sum / values.length;
+  }
+
+  private static long median(long[] values) {
+    if (values.length == 0) {
+      return 0;
+    }
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+}
@@ -0,0 +1,278 @@
+package com.example.ml_demo;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分割结果缓存 - 以原图字节和模型名的SHA-256作为键保存抠图和预测结果
+ * 同一张图片用同一个模型再次处理时直接读取缓存，跳过解码和推理
+ * 抠图文件保存在缓存目录下，文件名即为键；预测结果以 {@link MaskFile} 格式保存在 masks 子目录
+ * 总大小超过预算时按最近使用顺序删除，使用顺序通过文件修改时间在重启后恢复
+ */
+public class ResultCache {
+  private static final String TAG = "结果缓存日志";
+  // 默认缓存预算
+  public static final long DEFAULT_BUDGET_BYTES = 100L * 1024 * 1024;
+  private static final String MASK_DIR = "masks";
+  private static final String MASK_EXTENSION = ".mask";
+  // 16位量化的误差远小于合成时的8位透明度，大小是原始float数据的一半
+  private static final MaskFile.Precision MASK_PRECISION = MaskFile.Precision.UINT16;
+  // 不压缩，命中缓存时直接从映射内存反量化，不需要先解压到堆内存；旧版本压缩的文件仍可读取
+  private static final boolean MASK_COMPRESSED = false;
+  private static final int KEY_LENGTH = 64;
+
+  /**
+   * 一条缓存记录
+   */
+  public static final class Entry {
+    private final String key;
+    private final File cutoutFile;
+    private final File maskFile;
+    private final long sizeBytes;
+
+    Entry(String key, File cutoutFile, File maskFile) {
+      this.key = key;
+      this.cutoutFile = cutoutFile;
+      this.maskFile = maskFile;
+      this.sizeBytes = cutoutFile.length() + maskFile.length();
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public File getCutoutFile() {
+      return cutoutFile;
+    }
+
+    public File getMaskFile() {
+      return maskFile;
+    }
+  }
+
+  private final File directory;
+  private final File maskDirectory;
+  private final long budgetBytes;
+  // accessOrder = true，迭代顺序即为从最久未使用到最近使用
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long sizeBytes = 0;
+  private boolean loaded = false;
+
+  public ResultCache(File directory) {
+    this(directory, DEFAULT_BUDGET_BYTES);
+  }
+
+  public ResultCache(File directory, long budgetBytes) {
+    this.directory = directory;
+    this.maskDirectory = new File(directory, MASK_DIR);
+    this.budgetBytes = budgetBytes;
+  }
+
+  /**
+   * 抠图文件所在目录
+   */
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * 计算缓存键，原图内容或模型不同都会得到不同的键
+   */
+  public static String computeKey(byte[] encoded, String modelName) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update(modelName.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+    digest.update(encoded);
+    byte[] hash = digest.digest();
+    StringBuilder key = new StringBuilder(KEY_LENGTH);
+    for (byte b : hash) {
+      key.append(Character.forDigit((b >> 4) & 0xf, 16));
+      key.append(Character.forDigit(b & 0xf, 16));
+    }
+    return key.toString();
+  }
+
+  /**
+   * 查找缓存，命中时更新使用顺序；文件已被删除时返回null
+   * 第一次调用时会扫描目录，不要在主线程调用
+   */
+  public synchronized Entry get(String key) {
+    ensureLoaded();
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (!entry.cutoutFile.exists() || !entry.maskFile.exists()) {
+      remove(entry);
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    entry.cutoutFile.setLastModified(now);
+    entry.maskFile.setLastModified(now);
+    return entry;
+  }
+
+  /**
+   * 登记已经写好的抠图文件并保存预测结果，超出预算时删除最久未使用的记录
+   */
+  public void put(String key, File cutoutFile, float[] predictions, int width, int height,
+      String modelName) throws IOException {
+    File maskFile = new File(maskDirectory, key + MASK_EXTENSION);
+    if (!maskDirectory.exists() && !maskDirectory.mkdirs()) {
+      throw new IOException("无法创建目录: " + maskDirectory);
+    }
+    MaskFile.write(maskFile, predictions, width, height, modelName, MASK_PRECISION,
+        MASK_COMPRESSED);
+
+    synchronized (this) {
+      ensureLoaded();
+      Entry previous = entries.remove(key);
+      if (previous != null) {
+        sizeBytes -= previous.sizeBytes;
+      }
+      Entry entry = new Entry(key, cutoutFile, maskFile);
+      entries.put(key, entry);
+      sizeBytes += entry.sizeBytes;
+      trimToSize(budgetBytes);
+    }
+  }
+
+  /**
+   * 读取缓存的掩码文件，尺寸以文件中记录的为准；文件损坏时删除这条记录并抛出异常
+   */
+  public MaskFile readMask(Entry entry) throws IOException {
+    try {
+      return MaskFile.read(entry.maskFile);
+    } catch (IOException e) {
+      removeIfCurrent(entry);
+      throw e;
+    }
+  }
+
+  private synchronized void removeIfCurrent(Entry entry) {
+    if (entries.get(entry.key) == entry) {
+      remove(entry);
+    }
+  }
+
+  /**
+   * 删除最久未使用的记录，直到总大小不超过 maxBytes
+   */
+  public synchronized void trimToSize(long maxBytes) {
+    ensureLoaded();
+    Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while (sizeBytes > maxBytes && iterator.hasNext()) {
+      Entry eldest = iterator.next().getValue();
+      iterator.remove();
+      sizeBytes -= eldest.sizeBytes;
+      deleteFiles(eldest);
+      Log.d(TAG, "淘汰缓存: " + eldest.key);
+    }
+  }
+
+  public synchronized long getSizeBytes() {
+    ensureLoaded();
+    return sizeBytes;
+  }
+
+  private void remove(Entry entry) {
+    entries.remove(entry.key);
+    sizeBytes -= entry.sizeBytes;
+    deleteFiles(entry);
+  }
+
+  private static void deleteFiles(Entry entry) {
+    entry.cutoutFile.delete();
+    entry.maskFile.delete();
+  }
+
+  /**
+   * 扫描目录恢复索引，缺少抠图或预测结果的残留文件直接删除
+   */
+  private void ensureLoaded() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    File[] maskFiles = maskDirectory.listFiles();
+    if (maskFiles == null) {
+      return;
+    }
+    Map<String, File> cutouts = new LinkedHashMap<>();
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        String key = keyOf(file.getName());
+        if (key != null && file.isFile()) {
+          cutouts.put(key, file);
+        }
+      }
+    }
+
+    List<Entry> found = new ArrayList<>();
+    for (File maskFile : maskFiles) {
+      String name = maskFile.getName();
+      if (!name.endsWith(MASK_EXTENSION)) {
+        continue;
+      }
+      String key = name.substring(0, name.length() - MASK_EXTENSION.length());
+      File cutoutFile = cutouts.remove(key);
+      if (cutoutFile == null) {
+        maskFile.delete();
+      } else {
+        found.add(new Entry(key, cutoutFile, maskFile));
+      }
+    }
+    // 进程在写完抠图之后、写入预测结果之前退出时留下的文件
+    for (File orphan : cutouts.values()) {
+      orphan.delete();
+    }
+
+    found.sort((a, b) -> Long.compare(a.maskFile.lastModified(), b.maskFile.lastModified()));
+    for (Entry entry : found) {
+      entries.put(entry.key, entry);
+      sizeBytes += entry.sizeBytes;
+    }
+    Log.d(TAG, "缓存记录 " + entries.size() + " 条, " + sizeBytes / 1024 + "KB");
+  }
+
+  /**
+   * 抠图文件对应的预测结果文件，不是缓存的抠图时返回null
+   * 供不持有缓存实例的清理任务一起删除，缓存实例在下次访问这条记录时发现文件已删除
+   */
+  public static File maskFileFor(File directory, String cutoutName) {
+    String key = keyOf(cutoutName);
+    return key == null ? null : new File(new File(directory, MASK_DIR), key + MASK_EXTENSION);
+  }
+
+  /**
+   * 文件名去掉扩展名后是64位十六进制时返回键，否则不是缓存文件
+   */
+  private static String keyOf(String fileName) {
+    int dot = fileName.indexOf('.');
+    if (dot != KEY_LENGTH || fileName.endsWith(".tmp")) {
+      return null;
+    }
+    for (int i = 0; i < KEY_LENGTH; i++) {
+      if (Character.digit(fileName.charAt(i), 16) < 0) {
+        return null;
+      }
+    }
+    return fileName.substring(0, KEY_LENGTH);
+  }
+}
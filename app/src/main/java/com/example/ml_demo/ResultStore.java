@@ -0,0 +1,79 @@
+package com.example.ml_demo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 分割结果存储 - 用编号在页面之间传递结果，代替在Intent中传递大图或重新解码保存的文件
+ * 每个使用者通过 {@link #acquire(String)} 持有一份引用，不再使用时 {@link #release(String)}
+ * 引用计数为0后删除记录，原图、掩码和抠图放回 {@link BitmapPool} 供下一次处理复用，不会让大图一直常驻内存
+ * 释放前使用者必须先把这些Bitmap从界面上移除
+ */
+public final class ResultStore {
+  private static final ResultStore instance = new ResultStore();
+
+  private final Map<String, Entry> entries = new HashMap<>();
+  private long nextId = 1;
+
+  private ResultStore() {
+  }
+
+  public static ResultStore getInstance() {
+    return instance;
+  }
+
+  /**
+   * 保存结果并返回编号，调用者持有一份引用
+   */
+  public synchronized String put(SegmentationResult result) {
+    String id = "result-" + nextId++;
+    Entry entry = new Entry(result);
+    entry.refCount = 1;
+    entries.put(id, entry);
+    return id;
+  }
+
+  /**
+   * 按编号取出结果并增加引用计数，已被释放或编号无效时返回null
+   */
+  public synchronized SegmentationResult acquire(String id) {
+    Entry entry = id == null ? null : entries.get(id);
+    if (entry == null) {
+      return null;
+    }
+    entry.refCount++;
+    return entry.result;
+  }
+
+  /**
+   * 释放一份引用，计数为0后结果中的Bitmap放回复用池
+   */
+  public void release(String id) {
+    SegmentationResult result;
+    synchronized (this) {
+      Entry entry = id == null ? null : entries.get(id);
+      if (entry == null) {
+        return;
+      }
+      entry.refCount--;
+      if (entry.refCount > 0) {
+        return;
+      }
+      entries.remove(id);
+      result = entry.result;
+    }
+    BitmapPool pool = BitmapPool.getInstance();
+    pool.put(result.peekOriginalBitmap());
+    pool.put(result.getMaskBitmap());
+    pool.put(result.getCutoutBitmap());
+  }
+
+  private static class Entry {
+    final SegmentationResult result;
+    int refCount;
+
+    Entry(SegmentationResult result) {
+      this.result = result;
+    }
+  }
+}
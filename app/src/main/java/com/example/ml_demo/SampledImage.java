@@ -0,0 +1,235 @@
+package com.example.ml_demo;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+import android.net.Uri;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 采样解码图片 - 只读取一次Uri，先解析尺寸和EXIF，再按推理需要的尺寸用 inSampleSize 解码小图
+ * 全分辨率图片只在合成结果时才懒加载，避免为推理分配整张大图的内存
+ * 两张图片都保持编码时的方向，EXIF方向作为变换在缩放到模型输入和合成抠图时应用，不生成旋转后的副本
+ */
+public class SampledImage {
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private final byte[] encoded;
+  private final int width;
+  private final int height;
+  private final int orientation;
+  private final Bitmap inferenceBitmap;
+  private Bitmap fullResolutionBitmap;
+  private long fullDecodeNanos;
+
+  private SampledImage(byte[] encoded, int width, int height, int orientation,
+      Bitmap inferenceBitmap) {
+    this.encoded = encoded;
+    this.width = width;
+    this.height = height;
+    this.orientation = orientation;
+    this.inferenceBitmap = inferenceBitmap;
+  }
+
+  /**
+   * 解码图片，推理用小图的短边缩放到 minInferenceSize（原图更小时保持原尺寸）
+   */
+  public static SampledImage decode(ContentResolver resolver, Uri uri, int minInferenceSize)
+      throws IOException {
+    return decode(readFully(resolver, uri), minInferenceSize);
+  }
+
+  /**
+   * 从已经读入内存的编码数据解码
+   */
+  public static SampledImage decode(byte[] encoded, int minInferenceSize) throws IOException {
+    // 1. 只解析尺寸，不分配像素内存
+    BitmapFactory.Options bounds = new BitmapFactory.Options();
+    bounds.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(encoded, 0, encoded.length, bounds);
+    if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+      throw new IOException("无法解析图片");
+    }
+
+    // 2. 从同一份数据读取EXIF方向
+    int orientation = readOrientation(encoded);
+
+    // 3. 按2的幂次采样，再通过密度缩放精确到目标短边，解码时一次完成
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = calculateInSampleSize(bounds.outWidth, bounds.outHeight,
+        minInferenceSize);
+    int sampledShortSide = Math.min(bounds.outWidth, bounds.outHeight) / options.inSampleSize;
+    if (sampledShortSide > minInferenceSize) {
+      options.inScaled = true;
+      options.inDensity = sampledShortSide;
+      options.inTargetDensity = minInferenceSize;
+    }
+    // 预计的解码尺寸，多留一个像素应对解码器的取整
+    int sampledWidth = ceilDiv(bounds.outWidth, options.inSampleSize);
+    int sampledHeight = ceilDiv(bounds.outHeight, options.inSampleSize);
+    if (options.inScaled) {
+      float scale = (float) minInferenceSize / sampledShortSide;
+      sampledWidth = (int) Math.ceil(sampledWidth * scale) + 1;
+      sampledHeight = (int) Math.ceil(sampledHeight * scale) + 1;
+    }
+    Bitmap sampled = BitmapPool.getInstance().decode(encoded, options, sampledWidth,
+        sampledHeight);
+    if (sampled == null) {
+      throw new IOException("图片解码失败");
+    }
+    // 密度缩放会把目标密度写入Bitmap，清除后避免显示时再次按密度缩放
+    sampled.setDensity(Bitmap.DENSITY_NONE);
+    return new SampledImage(encoded, bounds.outWidth, bounds.outHeight, orientation, sampled);
+  }
+
+  /**
+   * 在保证短边不小于 minSize 的前提下取最大的2的幂次采样率
+   */
+  static int calculateInSampleSize(int width, int height, int minSize) {
+    int inSampleSize = 1;
+    int shortSide = Math.min(width, height);
+    while (shortSide / (inSampleSize * 2) >= minSize) {
+      inSampleSize *= 2;
+    }
+    return inSampleSize;
+  }
+
+  private static int ceilDiv(int value, int divisor) {
+    return (value + divisor - 1) / divisor;
+  }
+
+  /**
+   * 推理用的小图，未旋转，方向见 {@link #getOrientation()}
+   */
+  public Bitmap getInferenceBitmap() {
+    return inferenceBitmap;
+  }
+
+  /**
+   * 全分辨率图片，第一次调用时才解码，未旋转
+   */
+  public synchronized Bitmap getFullResolutionBitmap() throws IOException {
+    if (fullResolutionBitmap == null) {
+      long start = System.nanoTime();
+      Bitmap decoded = BitmapPool.getInstance().decode(encoded, new BitmapFactory.Options(),
+          width, height);
+      if (decoded == null) {
+        throw new IOException("全分辨率图片解码失败");
+      }
+      fullResolutionBitmap = decoded;
+      fullDecodeNanos = System.nanoTime() - start;
+    }
+    return fullResolutionBitmap;
+  }
+
+  /**
+   * 已经解码的全分辨率图片，尚未解码时返回null，不会触发解码
+   */
+  public synchronized Bitmap peekFullResolutionBitmap() {
+    return fullResolutionBitmap;
+  }
+
+  /**
+   * 全分辨率图片的解码耗时（纳秒），尚未加载时为0
+   */
+  public synchronized long getFullDecodeNanos() {
+    return fullDecodeNanos;
+  }
+
+  /**
+   * 原始编码尺寸（未旋转）
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * EXIF方向，取值见 {@link ExifOrientation}
+   */
+  public int getOrientation() {
+    return orientation;
+  }
+
+  /**
+   * 按EXIF方向旋转后的宽度，不需要解码全分辨率图片
+   */
+  public int getOrientedWidth() {
+    return ExifOrientation.orientedWidth(orientation, width, height);
+  }
+
+  public int getOrientedHeight() {
+    return ExifOrientation.orientedHeight(orientation, width, height);
+  }
+
+  /**
+   * 一次性读取Uri的全部内容
+   */
+  static byte[] readFully(ContentResolver resolver, Uri uri) throws IOException {
+    try (InputStream inputStream = resolver.openInputStream(uri)) {
+      if (inputStream == null) {
+        throw new IOException("无法打开图片: " + uri);
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+      byte[] buffer = new byte[READ_BUFFER_SIZE];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  /**
+   * 读取EXIF方向，没有或无法解析时返回 {@link ExifOrientation#NORMAL}
+   */
+  static int readOrientation(byte[] encoded) {
+    try {
+      ExifInterface exifInterface = new ExifInterface(new ByteArrayInputStream(encoded));
+      return exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION,
+          ExifInterface.ORIENTATION_NORMAL);
+    } catch (IOException e) {
+      return ExifOrientation.NORMAL;
+    }
+  }
+
+  /**
+   * 把未旋转的图片按EXIF方向缩放到 dstWidth x dstHeight 的变换，用于一次完成旋转和缩放的绘制
+   */
+  static Matrix orientedTransform(int orientation, int srcWidth, int srcHeight, int dstWidth,
+      int dstHeight) {
+    Matrix matrix = new Matrix();
+    switch (orientation) {
+      case ExifOrientation.ROTATE_90 -> matrix.postRotate(90);
+      case ExifOrientation.ROTATE_180 -> matrix.postRotate(180);
+      case ExifOrientation.ROTATE_270 -> matrix.postRotate(270);
+      case ExifOrientation.FLIP_HORIZONTAL -> matrix.postScale(-1, 1);
+      case ExifOrientation.FLIP_VERTICAL -> matrix.postScale(1, -1);
+      case ExifOrientation.TRANSPOSE -> {
+        matrix.postRotate(90);
+        matrix.postScale(-1, 1);
+      }
+      case ExifOrientation.TRANSVERSE -> {
+        matrix.postRotate(270);
+        matrix.postScale(-1, 1);
+      }
+      default -> {
+      }
+    }
+    RectF bounds = new RectF(0, 0, srcWidth, srcHeight);
+    matrix.mapRect(bounds);
+    matrix.postTranslate(-bounds.left, -bounds.top);
+    matrix.postScale((float) dstWidth / bounds.width(), (float) dstHeight / bounds.height());
+    return matrix;
+  }
+}
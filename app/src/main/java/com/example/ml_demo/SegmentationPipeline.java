@@ -0,0 +1,604 @@
+package com.example.ml_demo;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.pytorch.IValue;
+import org.pytorch.Module;
+import org.pytorch.Tensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单张图片的分割流水线 - 解码、推理、掩码、合成、保存分阶段在有界线程池中执行
+ * 提交新图片或切换模型时取消当前任务，过期任务的结果不会再回调到界面
+ */
+public class SegmentationPipeline {
+  private static final String TAG = "分割流水线日志";
+  // 掩码和合成两个阶段可以并行
+  private static final int WORKER_COUNT = 2;
+  private static final int QUEUE_CAPACITY = 8;
+  // 细化后的抠图与普通抠图分别缓存
+  private static final String REFINED_KEY_SUFFIX = "#guided";
+  private static final String TILED_KEY_SUFFIX = "#tiles";
+  private static final String LETTERBOX_KEY_SUFFIX = "#letterbox";
+
+  public enum Stage {
+    DECODE, INFERENCE, MASK, COMPOSITE, SAVE
+  }
+
+  /**
+   * 各阶段的回调，都在主线程执行，并且只针对最新一次提交
+   */
+  public interface Listener {
+    /**
+     * @param preview     未旋转的图片，显示时按 orientation 变换，见 {@link OrientedDrawable}
+     * @param orientation EXIF方向，取值见 {@link ExifOrientation}
+     */
+    void onImageDecoded(Bitmap preview, int orientation);
+
+    void onPredictionReady(String timingInfo);
+
+    /**
+     * @param maskBitmap 模型输入尺寸的灰度掩码
+     * @param width      原图（已旋转）的宽度，用于按原图比例显示
+     */
+    void onMaskReady(Bitmap maskBitmap, int width, int height);
+
+    /**
+     * 合成完成即回调，此时文件可能还在后台写入
+     */
+    void onCutoutReady(Bitmap cutout);
+
+    void onCompleted(SegmentationResult result);
+
+    void onFailed(Exception e);
+  }
+
+  private final ContentResolver contentResolver;
+  private final ResultCache resultCache;
+  private final CutoutWriter cutoutWriter;
+  private final HistoryIndex historyIndex;
+  private final int decodeSize;
+  private final ThreadPoolExecutor executor;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final AlphaCompositor alphaCompositor;
+  private final GuidedMaskRefiner maskRefiner;
+  private final MaskPostProcessor maskPostProcessor = new MaskPostProcessor();
+  // 同一时间只允许一个任务调用模型和后处理缓冲区
+  private final Object inferenceLock = new Object();
+  // 按当前输入尺寸创建，尺寸变化时在 inferenceLock 内重建
+  private TensorPreprocessor tensorPreprocessor;
+  private TiledInference tiledInference;
+  private volatile boolean shutdown = false;
+
+  private volatile Run currentRun;
+  private volatile boolean refinementEnabled = false;
+  private volatile int maxTiles = 0;
+  private volatile LetterboxTransform.Mode resizeMode = LetterboxTransform.Mode.STRETCH;
+
+  /**
+   * @param resultCache 抠图文件写入缓存所在的目录
+   */
+  public SegmentationPipeline(ContentResolver contentResolver, ResultCache resultCache,
+      CutoutWriter.Format cutoutFormat, int decodeSize) {
+    this.contentResolver = contentResolver;
+    this.resultCache = resultCache;
+    this.cutoutWriter = new CutoutWriter(resultCache.getDirectory(), cutoutFormat);
+    this.historyIndex = HistoryIndex.getInstance(resultCache.getDirectory());
+    this.decodeSize = decodeSize;
+    // 掩码尺寸随输入尺寸变化，合成和细化时按实际尺寸换算
+    this.alphaCompositor = new AlphaCompositor(InputResolutionCalibrator.DEFAULT_SIZE,
+        InputResolutionCalibrator.DEFAULT_SIZE);
+    this.maskRefiner = new GuidedMaskRefiner(InputResolutionCalibrator.DEFAULT_SIZE,
+        InputResolutionCalibrator.DEFAULT_SIZE);
+    this.executor = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT, 30, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            return new Thread(r, "segmentation-" + count.incrementAndGet());
+          }
+        });
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * 是否用原图引导细化全分辨率的透明度，只影响之后提交的图片，参数见 {@link GuidedMaskRefiner.Config#forModel}
+   */
+  public void setRefinementEnabled(boolean enabled) {
+    refinementEnabled = enabled;
+  }
+
+  /**
+   * 分块推理的最大块数，块越多细节越完整、推理越慢；小于2时只做全局推理
+   * 只影响之后提交的图片，块的边长等于模型输入尺寸
+   */
+  public void setMaxTiles(int maxTiles) {
+    this.maxTiles = maxTiles;
+  }
+
+  /**
+   * 缩放到模型输入的方式，只影响之后提交的图片
+   * 等比例模式的耗时统计记在“模型名 (letterbox)”下，便于和拉伸模式对比
+   */
+  public void setResizeMode(LetterboxTransform.Mode mode) {
+    resizeMode = mode;
+  }
+
+  /**
+   * 提交一张图片，之前未完成的任务会被取消
+   * 同一张图片用同一个模型、同一输入尺寸处理过时直接读取缓存结果，跳过解码和推理
+   *
+   * @param inputSize 正方形模型输入的边长，见 {@link InputResolutionCalibrator}
+   */
+  public void submit(final Uri uri, final Module module, final String modelName,
+      final int inputSize, final Listener listener) {
+    cancel();
+    final Run run = new Run();
+    currentRun = run;
+
+    final PipelineMetrics metrics = PipelineMetrics.getInstance();
+    final long submitTime = System.nanoTime();
+    final Settings settings = new Settings(modelName, inputSize, refinementEnabled
+        ? GuidedMaskRefiner.Config.forModel(modelName) : null, maxTiles, resizeMode);
+
+    CompletableFuture<Source> source;
+    try {
+      source = CompletableFuture.supplyAsync(
+          () -> call(run, Stage.DECODE, () -> {
+            PipelineMetrics.Span span =
+                metrics.start(settings.metricsName, PipelineMetrics.Stage.CACHE_LOOKUP);
+            byte[] encoded = SampledImage.readFully(contentResolver, uri);
+            String cacheKey = ResultCache.computeKey(encoded, settings.cacheVariant);
+            ResultCache.Entry cached = resultCache.get(cacheKey);
+            MaskFile cachedMask = null;
+            if (cached != null) {
+              try {
+                // 分块推理的掩码是画布尺寸，尺寸以文件中记录的为准
+                cachedMask = resultCache.readMask(cached);
+              } catch (IOException e) {
+                // 缓存文件损坏时按未命中处理
+                Log.w(TAG, "读取缓存的预测结果失败", e);
+                cached = null;
+              }
+            }
+            span.stop();
+            return new Source(encoded, cacheKey, cached, cachedMask);
+          }), executor);
+    } catch (RejectedExecutionException e) {
+      deliver(run, () -> listener.onFailed(e));
+      return;
+    }
+
+    source.thenCompose(src -> src.cached != null
+        ? loadCached(run, src, settings, listener)
+        : segment(run, src, module, settings, listener, submitTime))
+        .whenComplete((result, error) -> {
+          if (error == null) {
+            deliver(run, () -> listener.onCompleted(result));
+            return;
+          }
+          Throwable cause = error instanceof CompletionException && error.getCause() != null
+              ? error.getCause() : error;
+          if (!(cause instanceof CancellationException)) {
+            Exception exception = cause instanceof Exception ? (Exception) cause
+                : new RuntimeException(cause);
+            deliver(run, () -> listener.onFailed(exception));
+          }
+        });
+  }
+
+  /**
+   * 缓存命中：按推理尺寸采样解码原图用于预览，使用缓存的预测结果和抠图
+   * 与未命中时相同，全分辨率原图在需要时才解码
+   */
+  private CompletableFuture<SegmentationResult> loadCached(final Run run, final Source source,
+      final Settings settings, final Listener listener) {
+    final PipelineMetrics metrics = PipelineMetrics.getInstance();
+    final String modelName = settings.modelName;
+    return CompletableFuture.supplyAsync(() -> call(run, Stage.DECODE, () -> {
+      PipelineMetrics.Span span = metrics.start(settings.metricsName,
+          PipelineMetrics.Stage.CACHE_LOAD);
+      SampledImage image = SampledImage.decode(source.encoded, decodeSize);
+      deliver(run, () -> listener.onImageDecoded(image.getInferenceBitmap(),
+          image.getOrientation()));
+
+      float[] predictions = source.cachedMask.toPredictions();
+      String info = "\n命中缓存，跳过解码和推理\n";
+      deliver(run, () -> listener.onPredictionReady(info));
+      Bitmap maskBitmap = MaskRenderer.render(predictions, source.cachedMask.getWidth(),
+          source.cachedMask.getHeight());
+      deliver(run, () -> listener.onMaskReady(maskBitmap, image.getOrientedWidth(),
+          image.getOrientedHeight()));
+
+      String cutoutPath = source.cached.getCutoutFile().getAbsolutePath();
+      Bitmap cutout = BitmapPool.getInstance().decodeFile(cutoutPath);
+      if (cutout == null) {
+        throw new IOException("缓存的抠图解码失败: " + cutoutPath);
+      }
+      deliver(run, () -> listener.onCutoutReady(cutout));
+      span.stop();
+      return new SegmentationResult(modelName, image, predictions, maskBitmap, cutout,
+          cutoutPath, info);
+    }), executor);
+  }
+
+  /**
+   * 缓存未命中：解码、推理、生成掩码和抠图，保存后登记到缓存
+   */
+  private CompletableFuture<SegmentationResult> segment(final Run run, final Source source,
+      final Module module, final Settings settings, final Listener listener,
+      final long submitTime) {
+    final PipelineMetrics metrics = PipelineMetrics.getInstance();
+    final String modelName = settings.modelName;
+    final String metricsName = settings.metricsName;
+    final GuidedMaskRefiner.Config refinement = settings.refinement;
+
+    CompletableFuture<SampledImage> decoded = CompletableFuture.supplyAsync(
+        () -> call(run, Stage.DECODE, () -> {
+          PipelineMetrics.Span span = metrics.start(metricsName, PipelineMetrics.Stage.DECODE);
+          SampledImage image = SampledImage.decode(source.encoded, decodeSize);
+          span.stop();
+          deliver(run, () -> listener.onImageDecoded(image.getInferenceBitmap(),
+              image.getOrientation()));
+          return image;
+        }), executor);
+
+    CompletableFuture<Prediction> predicted = decoded.thenApplyAsync(
+        image -> call(run, Stage.INFERENCE, () -> {
+          Prediction prediction = runInference(run, module, settings, image);
+          deliver(run, () -> listener.onPredictionReady(prediction.timingInfo));
+          return prediction;
+        }), executor);
+
+    // 掩码和抠图互不依赖，并行执行；掩码只需要原图尺寸，不等待全分辨率解码
+    CompletableFuture<Bitmap> mask = predicted.thenApplyAsync(
+        prediction -> call(run, Stage.MASK, () -> {
+          PipelineMetrics.Span span = metrics.start(metricsName, PipelineMetrics.Stage.MASK);
+          Bitmap maskBitmap = MaskRenderer.render(prediction.predictions, prediction.maskWidth,
+              prediction.maskHeight);
+          span.stop();
+          SampledImage image = prediction.image;
+          deliver(run, () -> listener.onMaskReady(maskBitmap, image.getOrientedWidth(),
+              image.getOrientedHeight()));
+          return maskBitmap;
+        }), executor);
+
+    // 全分辨率图片在计时开始前加载，单独统计
+    CompletableFuture<Bitmap> composited = predicted.thenApplyAsync(
+        prediction -> call(run, Stage.COMPOSITE, () -> {
+          Bitmap original = prediction.image.getFullResolutionBitmap();
+          PipelineMetrics.Span span = metrics.start(metricsName, refinement != null
+              ? PipelineMetrics.Stage.REFINE : PipelineMetrics.Stage.COMPOSITE);
+          Bitmap cutout = createCroppedBitmap(original, prediction.image.getOrientation(),
+              prediction, refinement);
+          span.stop();
+          deliver(run, () -> listener.onCutoutReady(cutout));
+          return cutout;
+        }), executor);
+    CompletableFuture<String> saved = composited.thenCompose(
+        cutout -> call(run, Stage.SAVE, () -> {
+          // 交给后台保存队列，SAVE 统计从入队到文件写完的时间
+          // 文件名就是缓存键，同一张图片重复提交时写入会被合并
+          long enqueueTime = System.nanoTime();
+          return cutoutWriter.write(cutout, source.cacheKey, null).thenApply(path -> {
+            metrics.record(metricsName, PipelineMetrics.Stage.SAVE,
+                System.nanoTime() - enqueueTime);
+            // 在保存线程上用内存里的抠图生成缩略图，历史页面不用再解码原文件
+            try {
+              historyIndex.add(new File(path), cutout);
+            } catch (IOException e) {
+              Log.w(TAG, "写入历史索引失败", e);
+            }
+            return path;
+          });
+        }));
+
+    return mask.thenCombine(saved, (maskBitmap, cutoutPath) -> call(run, Stage.SAVE, () -> {
+      Prediction prediction = predicted.join();
+      SampledImage image = prediction.image;
+      try {
+        resultCache.put(source.cacheKey, new File(cutoutPath), prediction.predictions,
+            prediction.maskWidth, prediction.maskHeight, modelName);
+      } catch (IOException e) {
+        // 缓存失败不影响本次结果
+        Log.w(TAG, "写入结果缓存失败", e);
+      }
+      metrics.record(metricsName, PipelineMetrics.Stage.FULL_DECODE, image.getFullDecodeNanos());
+      metrics.record(metricsName, PipelineMetrics.Stage.TOTAL, System.nanoTime() - submitTime);
+      return new SegmentationResult(modelName, image, prediction.predictions, maskBitmap,
+          composited.join(), cutoutPath, prediction.timingInfo);
+    }));
+  }
+
+  /**
+   * 取消当前任务，已经在执行的阶段结束后不再继续
+   */
+  public void cancel() {
+    Run run = currentRun;
+    if (run != null) {
+      run.cancelled = true;
+      currentRun = null;
+    }
+  }
+
+  /**
+   * 取消当前任务，返回的Future在正在执行的推理结束后完成，之后流水线不再使用模型
+   * cancel() 只设置标记，在其他线程使用同一个模型之前（批量处理、实时分割等）需要先等待；Future在后台线程完成
+   */
+  public CompletableFuture<Void> cancelAndAwaitIdle() {
+    cancel();
+    final CompletableFuture<Void> idle = new CompletableFuture<>();
+    new Thread(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (inferenceLock) {
+          // 只等待锁释放，之后进入锁的任务都已取消，不会再推理
+        }
+        idle.complete(null);
+      }
+    }, "segmentation-idle").start();
+    return idle;
+  }
+
+  /**
+   * 停止流水线，已经提交的文件会继续写完
+   */
+  public void shutdown() {
+    cancel();
+    executor.shutdownNow();
+    cutoutWriter.shutdown();
+    synchronized (inferenceLock) {
+      shutdown = true;
+      if (tiledInference != null) {
+        tiledInference.shutdown();
+      }
+    }
+  }
+
+  /**
+   * 执行一个阶段，任务已取消时直接跳过
+   */
+  private <T> T call(Run run, Stage stage, Callable<T> work) {
+    if (run.cancelled) {
+      throw new CancellationException(stage.name());
+    }
+    try {
+      return work.call();
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      Log.e(TAG, stage + " 阶段失败", e);
+      throw new CompletionException(e);
+    }
+  }
+
+  /**
+   * 回调到主线程，过期或已取消的任务不回调
+   */
+  private void deliver(final Run run, final Runnable action) {
+    mainHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        if (run == currentRun && !run.cancelled) {
+          action.run();
+        }
+      }
+    });
+  }
+
+  /**
+   * 模型预测，等比例预处理时去掉填充区域；允许分块时在全局推理之后再分块推理，后处理在最终的掩码尺寸上进行
+   */
+  private Prediction runInference(final Run run, Module module, Settings settings,
+      SampledImage image) throws IOException, InterruptedException {
+    String metricsName = settings.metricsName;
+    int maxTiles = settings.maxTiles;
+    PipelineMetrics metrics = PipelineMetrics.getInstance();
+    int inputSize = settings.inputSize;
+    synchronized (inferenceLock) {
+      // 等待锁期间任务可能已被取消，取消后模型可能已经交给其他线程使用
+      if (run.cancelled) {
+        throw new CancellationException(Stage.INFERENCE.name());
+      }
+      ensureInputSize(inputSize);
+      // 预处理，输入缓冲区在锁内复用
+      PipelineMetrics.Span span = metrics.start(metricsName, PipelineMetrics.Stage.PREPROCESS);
+      LetterboxTransform transform = LetterboxTransform.create(settings.resizeMode,
+          image.getOrientedWidth(), image.getOrientedHeight(), inputSize, inputSize);
+      Tensor inputTensor = tensorPreprocessor.process(image.getInferenceBitmap(),
+          image.getOrientation(), transform);
+      long preprocessTime = span.stop();
+
+      // 模型推理
+      span = metrics.start(metricsName, PipelineMetrics.Stage.INFERENCE);
+      Tensor output = module.forward(IValue.from(inputTensor)).toTuple()[0].toTensor();
+      long inferenceTime = span.stop();
+
+      // 只保留图片所在的区域，掩码与原图比例一致
+      float[] preds = transform.crop(output.getDataAsFloatArray());
+      int maskWidth = transform.getContentWidth();
+      int maskHeight = transform.getContentHeight();
+
+      // 分块推理，图片太小时跳过
+      String tileInfo = "";
+      if (maxTiles > 1) {
+        span = metrics.start(metricsName, PipelineMetrics.Stage.TILES);
+        TiledInference.Output tiled = tiledInference.run(module, image, preds, maskWidth,
+            maskHeight, maxTiles, () -> run.cancelled);
+        long tilesTime = span.stop();
+        if (tiled != null) {
+          preds = tiled.predictions;
+          maskWidth = tiled.width;
+          maskHeight = tiled.height;
+          tileInfo = String.format(Locale.US, "分块推理: %d块 %dx%d, %dms\n", tiled.tileCount,
+              maskWidth, maskHeight, TimeUnit.NANOSECONDS.toMillis(tilesTime));
+        }
+      }
+
+      // 后处理
+      span = metrics.start(metricsName, PipelineMetrics.Stage.POSTPROCESS);
+      maskPostProcessor.process(preds, maskWidth, maskHeight);
+      long postprocessTime = span.stop();
+
+      String info = String.format(Locale.US,
+          "\n预处理时间: %dms\n推理时间: %dms\n%s后处理时间: %dms\n",
+          TimeUnit.NANOSECONDS.toMillis(preprocessTime),
+          TimeUnit.NANOSECONDS.toMillis(inferenceTime), tileInfo,
+          TimeUnit.NANOSECONDS.toMillis(postprocessTime));
+      return new Prediction(image, preds, maskWidth, maskHeight, info);
+    }
+  }
+
+  /**
+   * 输入尺寸与上一次不同时重建输入缓冲区和分块推理，调用者持有 inferenceLock
+   */
+  private void ensureInputSize(int inputSize) {
+    if (shutdown) {
+      throw new CancellationException("shutdown");
+    }
+    if (tensorPreprocessor != null && tensorPreprocessor.getWidth() == inputSize) {
+      return;
+    }
+    if (tiledInference != null) {
+      tiledInference.shutdown();
+    }
+    tensorPreprocessor = new TensorPreprocessor(inputSize, inputSize);
+    tiledInference = new TiledInference(inputSize);
+  }
+
+  /**
+   * 按EXIF方向合成抠图，原图不旋转，读取每个行带时换算坐标，抠图是旋转后的尺寸
+   *
+   * @param refinement 为null时直接双线性放大掩码，否则用导向滤波细化
+   */
+  private Bitmap createCroppedBitmap(final Bitmap originalBitmap, final int orientation,
+      Prediction prediction, GuidedMaskRefiner.Config refinement) {
+    final int rawWidth = originalBitmap.getWidth();
+    final int rawHeight = originalBitmap.getHeight();
+    final int width = ExifOrientation.orientedWidth(orientation, rawWidth, rawHeight);
+    int height = ExifOrientation.orientedHeight(orientation, rawWidth, rawHeight);
+
+    // 创建带透明通道的结果图片，使用高质量配置
+    final Bitmap croppedBitmap = BitmapPool.getInstance().get(width, height,
+        Bitmap.Config.ARGB_8888);
+
+    // 按行批量读写像素，多核并行计算双线性插值或细化后的透明度
+    AlphaCompositor.RowSource source = new AlphaCompositor.RowSource() {
+      @Override
+      public void readRows(int[] pixels, int y, int rows) {
+        ExifOrientation.readRows((p, rawX, rawY, w, h) -> originalBitmap.getPixels(p, 0, w,
+            rawX, rawY, w, h), orientation, rawWidth, rawHeight, pixels, y, rows);
+      }
+    };
+    AlphaCompositor.RowSink sink = new AlphaCompositor.RowSink() {
+      @Override
+      public void writeRows(int[] pixels, int y, int rows) {
+        croppedBitmap.setPixels(pixels, 0, width, 0, y, width, rows);
+      }
+    };
+    if (refinement != null) {
+      maskRefiner.refine(source, sink, width, height, prediction.predictions,
+          prediction.maskWidth, prediction.maskHeight, refinement);
+    } else {
+      alphaCompositor.withMaskSize(prediction.maskWidth, prediction.maskHeight)
+          .composite(source, sink, width, height, prediction.predictions);
+    }
+
+    return croppedBitmap;
+  }
+
+  /**
+   * 一次提交对应的运行状态
+   */
+  private static class Run {
+    volatile boolean cancelled = false;
+  }
+
+  /**
+   * 提交时的处理设置，之后修改设置不影响已经提交的图片
+   */
+  private static class Settings {
+    final String modelName;
+    final int inputSize;
+    // 为null时不细化
+    final GuidedMaskRefiner.Config refinement;
+    final int maxTiles;
+    final LetterboxTransform.Mode resizeMode;
+    // 不同的设置得到不同的结果，分别缓存
+    final String cacheVariant;
+    final String metricsName;
+
+    Settings(String modelName, int inputSize, GuidedMaskRefiner.Config refinement, int maxTiles,
+        LetterboxTransform.Mode resizeMode) {
+      this.modelName = modelName;
+      this.inputSize = inputSize;
+      this.refinement = refinement;
+      this.maxTiles = maxTiles;
+      this.resizeMode = resizeMode;
+      boolean letterbox = resizeMode == LetterboxTransform.Mode.LETTERBOX;
+      this.cacheVariant = modelName + "@" + inputSize
+          + (refinement != null ? REFINED_KEY_SUFFIX : "")
+          + (maxTiles > 1 ? TILED_KEY_SUFFIX + maxTiles : "")
+          + (letterbox ? LETTERBOX_KEY_SUFFIX : "");
+      this.metricsName = letterbox ? modelName + " (letterbox)" : modelName;
+    }
+  }
+
+  /**
+   * 读取的原图数据和缓存查找结果
+   */
+  private static class Source {
+    final byte[] encoded;
+    final String cacheKey;
+    final ResultCache.Entry cached;
+    // 命中时读取的掩码文件
+    final MaskFile cachedMask;
+
+    Source(byte[] encoded, String cacheKey, ResultCache.Entry cached, MaskFile cachedMask) {
+      this.encoded = encoded;
+      this.cacheKey = cacheKey;
+      this.cached = cached;
+      this.cachedMask = cachedMask;
+    }
+  }
+
+  /**
+   * 推理阶段的输出，只在流水线内部传递
+   */
+  private static class Prediction {
+    final SampledImage image;
+    final float[] predictions;
+    // 预测结果的尺寸，只做全局推理时等于模型输入中图片所在区域的尺寸
+    final int maskWidth;
+    final int maskHeight;
+    final String timingInfo;
+
+    Prediction(SampledImage image, float[] predictions, int maskWidth, int maskHeight,
+        String timingInfo) {
+      this.image = image;
+      this.predictions = predictions;
+      this.maskWidth = maskWidth;
+      this.maskHeight = maskHeight;
+      this.timingInfo = timingInfo;
+    }
+  }
+}
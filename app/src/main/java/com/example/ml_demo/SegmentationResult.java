@@ -0,0 +1,94 @@
+package com.example.ml_demo;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+
+/**
+ * 单次分割的结果 - 创建后不再修改，在线程之间传递时不需要额外同步
+ */
+public final class SegmentationResult {
+  private final String modelName;
+  // 全分辨率原图在第一次使用时才解码，命中缓存的结果可能从不需要
+  private final SampledImage image;
+  private final float[] predictions;
+  private final Bitmap maskBitmap;
+  private final Bitmap cutoutBitmap;
+  private final String cutoutPath;
+  private final String timingInfo;
+
+  public SegmentationResult(String modelName, SampledImage image, float[] predictions,
+      Bitmap maskBitmap, Bitmap cutoutBitmap, String cutoutPath, String timingInfo) {
+    this.modelName = modelName;
+    this.image = image;
+    this.predictions = predictions.clone();
+    this.maskBitmap = maskBitmap;
+    this.cutoutBitmap = cutoutBitmap;
+    this.cutoutPath = cutoutPath;
+    this.timingInfo = timingInfo;
+  }
+
+  public String getModelName() {
+    return modelName;
+  }
+
+  /**
+   * 全分辨率原图（未旋转），显示时按 {@link #getOrientation()} 变换；尚未解码时在调用线程解码
+   */
+  public Bitmap getOriginalBitmap() throws IOException {
+    return image.getFullResolutionBitmap();
+  }
+
+  /**
+   * 按推理尺寸采样的原图（未旋转），与处理时显示的预览相同
+   */
+  public Bitmap getPreviewBitmap() {
+    return image.getInferenceBitmap();
+  }
+
+  /**
+   * 已经解码的全分辨率原图，尚未解码时为null
+   */
+  Bitmap peekOriginalBitmap() {
+    return image.peekFullResolutionBitmap();
+  }
+
+  /**
+   * 原图的EXIF方向，掩码和抠图已经是旋转后的方向
+   */
+  public int getOrientation() {
+    return image.getOrientation();
+  }
+
+  /**
+   * 后处理后的预测结果副本
+   */
+  public float[] getPredictions() {
+    return predictions.clone();
+  }
+
+  /**
+   * 模型输入尺寸的灰度掩码，按原图尺寸显示时使用 {@link MaskDrawable}
+   */
+  public Bitmap getMaskBitmap() {
+    return maskBitmap;
+  }
+
+  /**
+   * 内存中的抠图，和保存的文件内容相同，在页面之间传递时不需要重新解码
+   */
+  public Bitmap getCutoutBitmap() {
+    return cutoutBitmap;
+  }
+
+  /**
+   * 保存的抠图文件路径
+   */
+  public String getCutoutPath() {
+    return cutoutPath;
+  }
+
+  public String getTimingInfo() {
+    return timingInfo;
+  }
+}
@@ -0,0 +1,60 @@
+package com.example.ml_demo;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 张量归一化 - 把ARGB像素按 (value / 255 - mean) / std 转换为CHW排列的float数据
+ * 计算方式与 TensorImageUtils.bitmapToFloat32Tensor 一致，纯Java实现，可以在JVM上直接测试
+ */
+public final class TensorNormalizer {
+
+  private TensorNormalizer() {
+  }
+
+  /**
+   * @param pixels     ARGB像素，行优先排列
+   * @param pixelCount 像素数量，即 width * height
+   * @param out        输出数组，从 offset 开始依次存放R、G、B三个平面
+   */
+  public static void normalize(int[] pixels, int pixelCount, float[] mean, float[] std,
+      float[] out, int offset) {
+    int offsetR = offset;
+    int offsetG = offset + pixelCount;
+    int offsetB = offset + 2 * pixelCount;
+    float meanR = mean[0], meanG = mean[1], meanB = mean[2];
+    float stdR = std[0], stdG = std[1], stdB = std[2];
+    for (int i = 0; i < pixelCount; i++) {
+      int c = pixels[i];
+      float r = ((c >> 16) & 0xff) / 255.0f;
+      float g = ((c >> 8) & 0xff) / 255.0f;
+      float b = (c & 0xff) / 255.0f;
+      out[offsetR + i] = (r - meanR) / stdR;
+      out[offsetG + i] = (g - meanG) / stdG;
+      out[offsetB + i] = (b - meanB) / stdB;
+    }
+  }
+
+  /**
+   * 直接写入 FloatBuffer，用于按行填充可复用的输入缓冲区
+   *
+   * @param offset    本批像素在每个颜色平面中的起始位置
+   * @param planeSize 每个颜色平面的大小，即 width * height
+   */
+  public static void normalize(int[] pixels, int pixelCount, float[] mean, float[] std,
+      FloatBuffer out, int offset, int planeSize) {
+    int offsetR = offset;
+    int offsetG = offset + planeSize;
+    int offsetB = offset + 2 * planeSize;
+    float meanR = mean[0], meanG = mean[1], meanB = mean[2];
+    float stdR = std[0], stdG = std[1], stdB = std[2];
+    for (int i = 0; i < pixelCount; i++) {
+      int c = pixels[i];
+      float r = ((c >> 16) & 0xff) / 255.0f;
+      float g = ((c >> 8) & 0xff) / 255.0f;
+      float b = (c & 0xff) / 255.0f;
+      out.put(offsetR + i, (r - meanR) / stdR);
+      out.put(offsetG + i, (g - meanG) / stdG);
+      out.put(offsetB + i, (b - meanB) / stdB);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package com.example.ml_demo;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+
+import org.pytorch.Tensor;
+import org.pytorch.torchvision.TensorImageUtils;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 模型输入预处理 - 持有一个直接内存 FloatBuffer 和一张缩放用的 Bitmap，每次调用原地填充
+ * 返回的 Tensor 始终包装同一块缓冲区，在模型推理结束前不能再次调用 process()
+ * 非线程安全，并行的流水线需要各自持有实例
+ */
+public class TensorPreprocessor {
+  private final int width;
+  private final int height;
+  private final float[] mean;
+  private final float[] std;
+  private final FloatBuffer inputBuffer;
+  private final Tensor inputTensor;
+  private final Bitmap resizeBitmap;
+  private final Canvas resizeCanvas;
+  private final Rect resizeRect;
+  private final Paint resizePaint;
+  private final int[] rowPixels;
+  // 等比例缩放时的填充颜色，取均值使填充区域归一化后为0
+  private final int padColor;
+
+  public TensorPreprocessor(int width, int height) {
+    this(width, height, TensorImageUtils.TORCHVISION_NORM_MEAN_RGB,
+        TensorImageUtils.TORCHVISION_NORM_STD_RGB);
+  }
+
+  public TensorPreprocessor(int width, int height, float[] mean, float[] std) {
+    this.width = width;
+    this.height = height;
+    this.mean = mean;
+    this.std = std;
+    this.inputBuffer = Tensor.allocateFloatBuffer(3 * width * height);
+    this.inputTensor = Tensor.fromBlob(inputBuffer, new long[]{1, 3, height, width});
+    this.resizeBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    this.resizeCanvas = new Canvas(resizeBitmap);
+    this.resizeRect = new Rect(0, 0, width, height);
+    // SRC模式直接覆盖上一次的内容，带透明通道的图片不会和旧数据混合
+    this.resizePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    this.resizePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    this.rowPixels = new int[width];
+    this.padColor = 0xff000000 | (toChannel(mean[0]) << 16) | (toChannel(mean[1]) << 8)
+        | toChannel(mean[2]);
+  }
+
+  /**
+   * 将图片缩放到模型输入尺寸，并按行归一化写入输入缓冲区
+   */
+  public Tensor process(Bitmap bitmap) {
+    return process(bitmap, ExifOrientation.NORMAL);
+  }
+
+  /**
+   * 未旋转的图片按EXIF方向缩放到模型输入尺寸，旋转和缩放在同一次绘制中完成
+   */
+  public Tensor process(Bitmap bitmap, int orientation) {
+    if (orientation == ExifOrientation.NORMAL) {
+      resizeCanvas.drawBitmap(bitmap, null, resizeRect, resizePaint);
+      return normalize();
+    }
+    return process(bitmap, SampledImage.orientedTransform(orientation, bitmap.getWidth(),
+        bitmap.getHeight(), width, height));
+  }
+
+  /**
+   * 按 transform 记录的位置把未旋转的图片绘制到模型输入上，等比例模式下其余部分用均值颜色填充
+   */
+  public Tensor process(Bitmap bitmap, int orientation, LetterboxTransform transform) {
+    if (!transform.isPadded()) {
+      return process(bitmap, orientation);
+    }
+    resizeBitmap.eraseColor(padColor);
+    Matrix matrix = SampledImage.orientedTransform(orientation, bitmap.getWidth(),
+        bitmap.getHeight(), transform.getContentWidth(), transform.getContentHeight());
+    matrix.postTranslate(transform.getContentX(), transform.getContentY());
+    return process(bitmap, matrix);
+  }
+
+  /**
+   * 按给定的变换把图片绘制到模型输入上，变换需要覆盖整个输入区域，例如分块推理时取画布中的一块
+   */
+  public Tensor process(Bitmap bitmap, Matrix matrix) {
+    resizeCanvas.drawBitmap(bitmap, matrix, resizePaint);
+    return normalize();
+  }
+
+  private Tensor normalize() {
+    int planeSize = width * height;
+    for (int y = 0; y < height; y++) {
+      resizeBitmap.getPixels(rowPixels, 0, width, 0, y, width, 1);
+      TensorNormalizer.normalize(rowPixels, width, mean, std, inputBuffer, y * width, planeSize);
+    }
+    return inputTensor;
+  }
+
+  private static int toChannel(float value) {
+    return Math.max(0, Math.min(255, Math.round(value * 255)));
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+}
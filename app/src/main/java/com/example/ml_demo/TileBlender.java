@@ -0,0 +1,232 @@
+package com.example.ml_demo;
+
+/**
+ * 分块推理的布局和融合 - 把按原图比例缩放后的画布划分为互相重叠的正方形块，
+ * 每块的预测结果按羽化权重累加，最后用全局低分辨率预测作为门控，得到画布尺寸的显著性图
+ * 纯Java实现，只操作 float[]，不依赖Android，可以在JVM上直接验证；非线程安全
+ */
+public final class TileBlender {
+  // 画布短边搜索的步长
+  private static final int CANVAS_STEP = 16;
+  // 全局预测的膨胀半径（全局预测的像素），门控范围比全局的前景稍大，让块补回边缘的细节
+  private static final int GATE_RADIUS = 2;
+  // 膨胀后的全局预测在这个区间内从完全抑制过渡到完全保留块的结果
+  private static final float GATE_LOW = 0.05f;
+  private static final float GATE_HIGH = 0.3f;
+
+  private final int canvasWidth;
+  private final int canvasHeight;
+  private final int tileSize;
+  private final int feather;
+  private final int[] columnX;
+  private final int[] rowY;
+  private final float[] sum;
+  private final float[] weight;
+
+  private TileBlender(int canvasWidth, int canvasHeight, int tileSize, int feather,
+      int columns, int rows) {
+    this.canvasWidth = canvasWidth;
+    this.canvasHeight = canvasHeight;
+    this.tileSize = tileSize;
+    this.feather = feather;
+    this.columnX = origins(canvasWidth, tileSize, columns);
+    this.rowY = origins(canvasHeight, tileSize, rows);
+    this.sum = new float[canvasWidth * canvasHeight];
+    this.weight = new float[canvasWidth * canvasHeight];
+  }
+
+  /**
+   * 在块数不超过 maxTiles 的前提下选择最大的画布，画布不超过原图尺寸
+   * 相邻块至少重叠 overlap 像素；原图太小或只能放下一块时返回null，此时分块没有意义
+   *
+   * @param imageWidth  原图（已旋转）宽度
+   * @param imageHeight 原图（已旋转）高度
+   */
+  public static TileBlender plan(int imageWidth, int imageHeight, int tileSize, int overlap,
+      int maxTiles) {
+    if (overlap <= 0 || overlap >= tileSize) {
+      throw new IllegalArgumentException("重叠宽度无效: " + overlap);
+    }
+    int nativeShortSide = Math.min(imageWidth, imageHeight);
+    if (maxTiles < 2 || nativeShortSide < tileSize) {
+      return null;
+    }
+    double aspect = (double) Math.max(imageWidth, imageHeight) / nativeShortSide;
+    int bestShortSide = 0;
+    for (int shortSide = tileSize; shortSide <= nativeShortSide; shortSide += CANVAS_STEP) {
+      int longSide = (int) Math.round(shortSide * aspect);
+      if (tileCount(shortSide, tileSize, overlap) * tileCount(longSide, tileSize, overlap)
+          > maxTiles) {
+        break;
+      }
+      bestShortSide = shortSide;
+    }
+    if (bestShortSide == 0) {
+      return null;
+    }
+    int bestLongSide = (int) Math.round(bestShortSide * aspect);
+    int width = imageWidth >= imageHeight ? bestLongSide : bestShortSide;
+    int height = imageWidth >= imageHeight ? bestShortSide : bestLongSide;
+    int columns = tileCount(width, tileSize, overlap);
+    int rows = tileCount(height, tileSize, overlap);
+    if (columns * rows < 2) {
+      return null;
+    }
+    return new TileBlender(width, height, tileSize, overlap, columns, rows);
+  }
+
+  /**
+   * 覆盖 length 像素所需的块数，相邻块至少重叠 overlap
+   */
+  static int tileCount(int length, int tileSize, int overlap) {
+    if (length <= tileSize) {
+      return 1;
+    }
+    int step = tileSize - overlap;
+    return (length - tileSize + step - 1) / step + 1;
+  }
+
+  /**
+   * 块均匀分布，首尾两块贴住画布边缘
+   */
+  private static int[] origins(int length, int tileSize, int count) {
+    int[] origins = new int[count];
+    for (int i = 1; i < count; i++) {
+      origins[i] = (int) Math.round((double) i * (length - tileSize) / (count - 1));
+    }
+    return origins;
+  }
+
+  public int getCanvasWidth() {
+    return canvasWidth;
+  }
+
+  public int getCanvasHeight() {
+    return canvasHeight;
+  }
+
+  public int getTileCount() {
+    return columnX.length * rowY.length;
+  }
+
+  /**
+   * 第 index 块在画布中的左上角，按行优先编号
+   */
+  public int getTileX(int index) {
+    return columnX[index % columnX.length];
+  }
+
+  public int getTileY(int index) {
+    return rowY[index / columnX.length];
+  }
+
+  /**
+   * 累加一块的预测结果，tile 为 tileSize x tileSize 行优先排列
+   * 与相邻块重叠的一侧在 feather 像素内线性淡出，贴住画布边缘的一侧保持完整权重
+   */
+  public void accumulate(int index, float[] tile) {
+    if (tile.length < tileSize * tileSize) {
+      throw new IllegalArgumentException("块的预测结果尺寸不匹配: " + tile.length);
+    }
+    int column = index % columnX.length;
+    int row = index / columnX.length;
+    float[] weightX = featherWeights(column > 0, column < columnX.length - 1);
+    float[] weightY = featherWeights(row > 0, row < rowY.length - 1);
+    int originX = columnX[column];
+    int originY = rowY[row];
+    for (int y = 0; y < tileSize; y++) {
+      int canvasRow = (originY + y) * canvasWidth + originX;
+      int tileRow = y * tileSize;
+      float wy = weightY[y];
+      for (int x = 0; x < tileSize; x++) {
+        float w = wy * weightX[x];
+        sum[canvasRow + x] += tile[tileRow + x] * w;
+        weight[canvasRow + x] += w;
+      }
+    }
+  }
+
+  private float[] featherWeights(boolean fadeStart, boolean fadeEnd) {
+    float[] weights = new float[tileSize];
+    for (int i = 0; i < tileSize; i++) {
+      float w = 1f;
+      if (fadeStart) {
+        w = Math.min(w, (i + 0.5f) / feather);
+      }
+      if (fadeEnd) {
+        w = Math.min(w, (tileSize - i - 0.5f) / feather);
+      }
+      weights[i] = w;
+    }
+    return weights;
+  }
+
+  /**
+   * 融合所有块，用膨胀后的全局预测抑制远离前景的误检，返回画布尺寸的预测结果
+   * 坐标换算与 {@link AlphaCompositor} 的双线性插值相同
+   *
+   * @param global 模型输入尺寸的全局预测（未后处理的0~1输出）
+   */
+  public float[] combine(float[] global, int globalWidth, int globalHeight) {
+    float[] gate = dilate(global, globalWidth, globalHeight, GATE_RADIUS);
+    AlphaCompositor.HorizontalWeights weights =
+        new AlphaCompositor.HorizontalWeights(canvasWidth, globalWidth);
+    float[] out = new float[canvasWidth * canvasHeight];
+    float scaleY = (float) canvasHeight / globalHeight;
+    for (int y = 0; y < canvasHeight; y++) {
+      float predY = y / scaleY;
+      int y1 = Math.max(0, Math.min(globalHeight - 1, (int) predY));
+      int y2 = Math.max(0, Math.min(globalHeight - 1, y1 + 1));
+      float fy = predY - y1;
+      float fy1 = 1 - fy;
+      int row1 = y1 * globalWidth;
+      int row2 = y2 * globalWidth;
+      int offset = y * canvasWidth;
+      for (int x = 0; x < canvasWidth; x++) {
+        int x1 = weights.x1[x];
+        int x2 = weights.x2[x];
+        float fx = weights.fx[x];
+        float fx1 = weights.fx1[x];
+        float g = gate[row1 + x1] * fx1 * fy1 + gate[row1 + x2] * fx * fy1
+            + gate[row2 + x1] * fx1 * fy + gate[row2 + x2] * fx * fy;
+        float w = weight[offset + x];
+        float tiled = w > 0 ? sum[offset + x] / w : 0;
+        out[offset + x] = tiled * smoothstep(GATE_LOW, GATE_HIGH, g);
+      }
+    }
+    return out;
+  }
+
+  /**
+   * 方形窗口的最大值滤波，先水平后垂直
+   */
+  static float[] dilate(float[] values, int width, int height, int radius) {
+    float[] horizontal = new float[width * height];
+    for (int y = 0; y < height; y++) {
+      int row = y * width;
+      for (int x = 0; x < width; x++) {
+        float max = -Float.MAX_VALUE;
+        for (int k = Math.max(0, x - radius); k <= Math.min(width - 1, x + radius); k++) {
+          max = Math.max(max, values[row + k]);
+        }
+        horizontal[row + x] = max;
+      }
+    }
+    float[] out = new float[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        float max = -Float.MAX_VALUE;
+        for (int k = Math.max(0, y - radius); k <= Math.min(height - 1, y + radius); k++) {
+          max = Math.max(max, horizontal[k * width + x]);
+        }
+        out[y * width + x] = max;
+      }
+    }
+    return out;
+  }
+
+  private static float smoothstep(float edge0, float edge1, float value) {
+    float t = Math.max(0f, Math.min(1f, (value - edge0) / (edge1 - edge0)));
+    return t * t * (3 - 2 * t);
+  }
+}
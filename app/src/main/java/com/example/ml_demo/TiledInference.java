@@ -0,0 +1,194 @@
+package com.example.ml_demo;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+
+import org.pytorch.IValue;
+import org.pytorch.Module;
+import org.pytorch.Tensor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 分块推理 - 在全局低分辨率推理之外，把按原图比例放大的画布分成互相重叠的块分别推理，由 {@link TileBlender} 融合
+ * 块的裁剪和归一化在有界线程池中进行，模型只在调用线程中串行调用，推理当前块时同时准备下一块
+ * 预处理缓冲区的数量限制了同时在内存中的块数
+ */
+public class TiledInference {
+  // 相邻块的最小重叠，也是羽化的宽度；320的块重叠64，较小的块按比例缩小
+  private static final int MIN_OVERLAP = 16;
+  // 预处理线程数和输入缓冲区数，与批量流水线一样交替使用两个缓冲区
+  private static final int WORKER_COUNT = 2;
+
+  /**
+   * 画布尺寸的融合结果（未后处理）
+   */
+  public static final class Output {
+    public final float[] predictions;
+    public final int width;
+    public final int height;
+    public final int tileCount;
+
+    Output(float[] predictions, int width, int height, int tileCount) {
+      this.predictions = predictions;
+      this.width = width;
+      this.height = height;
+      this.tileCount = tileCount;
+    }
+  }
+
+  private final int tileSize;
+  private final int overlap;
+  private final ExecutorService workers;
+  private final BlockingQueue<TensorPreprocessor> preprocessors =
+      new ArrayBlockingQueue<>(WORKER_COUNT);
+
+  public TiledInference(int tileSize) {
+    this.tileSize = tileSize;
+    this.overlap = overlap(tileSize);
+    final AtomicInteger count = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(WORKER_COUNT,
+        r -> new Thread(r, "tile-preprocess-" + count.incrementAndGet()));
+    for (int i = 0; i < WORKER_COUNT; i++) {
+      preprocessors.add(new TensorPreprocessor(tileSize, tileSize));
+    }
+  }
+
+  /**
+   * 对图片分块推理并与全局预测融合；图片太小或 maxTiles 小于2时返回null，调用者直接使用全局预测
+   * 同一时间只能有一个调用者，模型在调用线程中执行
+   *
+   * @param global    全局预测，未后处理；等比例预处理时是去掉填充后的 globalWidth x globalHeight
+   * @param cancelled 每块推理前检查，返回true时放弃剩余的块并抛出 CancellationException
+   */
+  public Output run(Module module, SampledImage image, float[] global, int globalWidth,
+      int globalHeight, int maxTiles, BooleanSupplier cancelled) throws IOException, InterruptedException {
+    final TileBlender blender = TileBlender.plan(image.getOrientedWidth(),
+        image.getOrientedHeight(), tileSize, overlap, maxTiles);
+    if (blender == null) {
+      return null;
+    }
+    // 画布不超过推理小图时直接从小图裁剪，否则才需要全分辨率图片
+    Bitmap inference = image.getInferenceBitmap();
+    final Bitmap source = Math.min(blender.getCanvasWidth(), blender.getCanvasHeight())
+        <= Math.min(inference.getWidth(), inference.getHeight())
+        ? inference : image.getFullResolutionBitmap();
+    final int orientation = image.getOrientation();
+
+    int count = blender.getTileCount();
+    List<Future<TileInput>> pending = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      final int index = i;
+      pending.add(workers.submit(() -> prepare(source, orientation, blender, index)));
+    }
+
+    // 第一个还没取走结果的块
+    int next = 0;
+    try {
+      for (int i = 0; i < count; i++) {
+        if (cancelled.getAsBoolean()) {
+          throw new CancellationException("tiles");
+        }
+        TileInput input = pending.get(i).get();
+        next = i + 1;
+        try {
+          Tensor output = module.forward(IValue.from(input.tensor)).toTuple()[0].toTensor();
+          blender.accumulate(input.index, output.getDataAsFloatArray());
+        } finally {
+          preprocessors.add(input.preprocessor);
+        }
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException("分块预处理失败", cause);
+    } finally {
+      drain(pending, next);
+    }
+    return new Output(blender.combine(global, globalWidth, globalHeight), blender.getCanvasWidth(),
+        blender.getCanvasHeight(), count);
+  }
+
+  /**
+   * 块的边长对应的重叠宽度
+   */
+  static int overlap(int tileSize) {
+    return Math.max(MIN_OVERLAP, tileSize / 5);
+  }
+
+  /**
+   * 停止预处理线程，正在使用的调用者会在下一块时失败
+   */
+  public void shutdown() {
+    workers.shutdownNow();
+  }
+
+  /**
+   * 把画布中的一块绘制到模型输入上，没有空闲的缓冲区时等待推理线程归还
+   */
+  private TileInput prepare(Bitmap source, int orientation, TileBlender blender, int index)
+      throws InterruptedException {
+    TensorPreprocessor preprocessor = preprocessors.take();
+    try {
+      Matrix matrix = SampledImage.orientedTransform(orientation, source.getWidth(),
+          source.getHeight(), blender.getCanvasWidth(), blender.getCanvasHeight());
+      matrix.postTranslate(-blender.getTileX(index), -blender.getTileY(index));
+      return new TileInput(index, preprocessor.process(source, matrix), preprocessor);
+    } catch (RuntimeException e) {
+      preprocessors.add(preprocessor);
+      throw e;
+    }
+  }
+
+  /**
+   * 取消还没开始的块，已经开始或完成的等它结束后归还缓冲区，保证下一次调用时缓冲区齐全
+   */
+  private void drain(List<Future<TileInput>> pending, int from) {
+    boolean interrupted = false;
+    for (int i = from; i < pending.size(); i++) {
+      Future<TileInput> future = pending.get(i);
+      if (future.cancel(false)) {
+        continue;
+      }
+      while (true) {
+        try {
+          preprocessors.add(future.get().preprocessor);
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException | CancellationException e) {
+          // 失败的块已经在 prepare() 中归还了缓冲区
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static class TileInput {
+    final int index;
+    final Tensor tensor;
+    final TensorPreprocessor preprocessor;
+
+    TileInput(int index, Tensor tensor, TensorPreprocessor preprocessor) {
+      this.index = index;
+      this.tensor = tensor;
+      this.preprocessor = preprocessor;
+    }
+  }
+}
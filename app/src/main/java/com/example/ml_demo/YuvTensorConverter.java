@@ -0,0 +1,145 @@
+package com.example.ml_demo;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * 相机帧直接转换为模型输入 - 从 YUV_420_888 的三个平面按最近邻采样，同时完成旋转、缩放、
+ * YUV→RGB（BT.601 全范围，与相机JPEG一致）和归一化，直接写入CHW排列的输入缓冲区，不经过ARGB的Bitmap
+ * 采样位置按帧尺寸、行距和旋转角度预先计算，帧格式不变时每帧只做查表
+ * 纯Java实现，只依赖 java.nio，可以在JVM上用合成的帧直接验证；非线程安全
+ */
+public final class YuvTensorConverter {
+  private final int outputWidth;
+  private final int outputHeight;
+  // 每个通道0~255的归一化结果
+  private final float[] lutR = new float[256];
+  private final float[] lutG = new float[256];
+  private final float[] lutB = new float[256];
+  // 每个输出像素在Y平面和UV平面中的位置，帧格式变化时重新计算
+  private final int[] yIndex;
+  private final int[] uvIndex;
+
+  private int frameWidth = -1;
+  private int frameHeight = -1;
+  private int yRowStride = -1;
+  private int uvRowStride = -1;
+  private int uvPixelStride = -1;
+  private int rotationDegrees = -1;
+
+  /**
+   * @param mean 与 {@link TensorNormalizer} 相同的RGB均值
+   */
+  public YuvTensorConverter(int outputWidth, int outputHeight, float[] mean, float[] std) {
+    this.outputWidth = outputWidth;
+    this.outputHeight = outputHeight;
+    this.yIndex = new int[outputWidth * outputHeight];
+    this.uvIndex = new int[outputWidth * outputHeight];
+    for (int v = 0; v < 256; v++) {
+      lutR[v] = (v / 255.0f - mean[0]) / std[0];
+      lutG[v] = (v / 255.0f - mean[1]) / std[1];
+      lutB[v] = (v / 255.0f - mean[2]) / std[2];
+    }
+  }
+
+  public int getOutputWidth() {
+    return outputWidth;
+  }
+
+  public int getOutputHeight() {
+    return outputHeight;
+  }
+
+  /**
+   * 转换一帧，输出为旋转后的画面拉伸到输出尺寸，不保持比例
+   * U、V平面的行距和像素间距相同（YUV_420_888 的约定），缓冲区的读取位置不会改变
+   *
+   * @param rotationDegrees 画面需要顺时针旋转的角度，0、90、180或270
+   * @param out             至少 3 * outputWidth * outputHeight，依次存放R、G、B平面
+   */
+  public void convert(ByteBuffer yPlane, ByteBuffer uPlane, ByteBuffer vPlane, int frameWidth,
+      int frameHeight, int yRowStride, int uvRowStride, int uvPixelStride, int rotationDegrees,
+      FloatBuffer out) {
+    if (out.capacity() < 3 * outputWidth * outputHeight) {
+      throw new IllegalArgumentException("输出缓冲区太小: " + out.capacity());
+    }
+    prepare(frameWidth, frameHeight, yRowStride, uvRowStride, uvPixelStride, rotationDegrees);
+    int planeSize = outputWidth * outputHeight;
+    int offsetG = planeSize;
+    int offsetB = 2 * planeSize;
+    for (int i = 0; i < planeSize; i++) {
+      int y = yPlane.get(yIndex[i]) & 0xff;
+      int u = (uPlane.get(uvIndex[i]) & 0xff) - 128;
+      int v = (vPlane.get(uvIndex[i]) & 0xff) - 128;
+      // 16位定点的 1.402、0.344136、0.714136、1.772
+      int r = y + ((91881 * v + 32768) >> 16);
+      int g = y - ((22554 * u + 46802 * v + 32768) >> 16);
+      int b = y + ((116130 * u + 32768) >> 16);
+      out.put(i, lutR[clamp(r)]);
+      out.put(offsetG + i, lutG[clamp(g)]);
+      out.put(offsetB + i, lutB[clamp(b)]);
+    }
+  }
+
+  private static int clamp(int value) {
+    return value < 0 ? 0 : (value > 255 ? 255 : value);
+  }
+
+  /**
+   * 帧格式变化时重新计算采样表，输出像素中心映射到旋转后画面，再映射回传感器坐标
+   */
+  private void prepare(int frameWidth, int frameHeight, int yRowStride, int uvRowStride,
+      int uvPixelStride, int rotationDegrees) {
+    if (frameWidth == this.frameWidth && frameHeight == this.frameHeight
+        && yRowStride == this.yRowStride && uvRowStride == this.uvRowStride
+        && uvPixelStride == this.uvPixelStride && rotationDegrees == this.rotationDegrees) {
+      return;
+    }
+    if (rotationDegrees % 90 != 0 || rotationDegrees < 0 || rotationDegrees >= 360) {
+      throw new IllegalArgumentException("不支持的旋转角度: " + rotationDegrees);
+    }
+    boolean transposed = rotationDegrees == 90 || rotationDegrees == 270;
+    int uprightWidth = transposed ? frameHeight : frameWidth;
+    int uprightHeight = transposed ? frameWidth : frameHeight;
+    int[] uprightX = new int[outputWidth];
+    for (int x = 0; x < outputWidth; x++) {
+      uprightX[x] = Math.min(uprightWidth - 1,
+          (int) ((x + 0.5f) * uprightWidth / outputWidth));
+    }
+    for (int y = 0; y < outputHeight; y++) {
+      int uy = Math.min(uprightHeight - 1, (int) ((y + 0.5f) * uprightHeight / outputHeight));
+      int row = y * outputWidth;
+      for (int x = 0; x < outputWidth; x++) {
+        int ux = uprightX[x];
+        int sx;
+        int sy;
+        switch (rotationDegrees) {
+          case 90 -> {
+            sx = uy;
+            sy = frameHeight - 1 - ux;
+          }
+          case 180 -> {
+            sx = frameWidth - 1 - ux;
+            sy = frameHeight - 1 - uy;
+          }
+          case 270 -> {
+            sx = frameWidth - 1 - uy;
+            sy = ux;
+          }
+          default -> {
+            sx = ux;
+            sy = uy;
+          }
+        }
+        yIndex[row + x] = sy * yRowStride + sx;
+        uvIndex[row + x] = (sy >> 1) * uvRowStride + (sx >> 1) * uvPixelStride;
+      }
+    }
+    this.frameWidth = frameWidth;
+    this.frameHeight = frameHeight;
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+    this.rotationDegrees = rotationDegrees;
+  }
+}
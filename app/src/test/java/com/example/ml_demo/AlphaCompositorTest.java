@@ -0,0 +1,158 @@
+package com.example.ml_demo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 按行分块并行的合成结果与原来的逐像素双线性插值循环逐位比较
+ */
+public class AlphaCompositorTest {
+  private static final long SEED = 20240515L;
+
+  @Test
+  public void oddWidthsMatchPerPixelLoop() {
+    Random random = new Random(SEED);
+    int[] widths = {1, 3, 7, 101, 319};
+    for (int width : widths) {
+      assertMatchesPerPixelLoop(random, 320, 320, width, 45, 4);
+    }
+  }
+
+  @Test
+  public void singleRowMatchesPerPixelLoop() {
+    Random random = new Random(SEED + 1);
+    int[] widths = {1, 2, 333, 640};
+    for (int width : widths) {
+      assertMatchesPerPixelLoop(random, 320, 320, width, 1, 4);
+    }
+  }
+
+  @Test
+  public void unevenRowSplitsMatchPerPixelLoop() {
+    // 每个子任务至少16行，这些高度在拆分后会留下不满一个任务的行带
+    Random random = new Random(SEED + 2);
+    int[] heights = {15, 16, 17, 33, 63, 65, 129, 257, 1001};
+    int[] parallelisms = {1, 3, 4, 7};
+    for (int height : heights) {
+      for (int parallelism : parallelisms) {
+        assertMatchesPerPixelLoop(random, 320, 320, 37, height, parallelism);
+      }
+    }
+  }
+
+  @Test
+  public void nonSquareMaskMatchesPerPixelLoop() {
+    // 等比例预处理和分块推理得到的掩码不是正方形
+    Random random = new Random(SEED + 3);
+    assertMatchesPerPixelLoop(random, 320, 213, 1500, 999, 4);
+    assertMatchesPerPixelLoop(random, 17, 9, 61, 43, 3);
+    assertMatchesPerPixelLoop(random, 1, 1, 5, 5, 2);
+  }
+
+  @Test
+  public void compositesInPlace() {
+    Random random = new Random(SEED + 4);
+    int width = 53;
+    int height = 71;
+    int[] pixels = randomPixels(random, width * height);
+    float[] predictions = randomPredictions(random, 64 * 48);
+    int[] expected = perPixelLoop(pixels, width, height, predictions, 64, 48);
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      new AlphaCompositor(64, 48, pool).composite(pixels, width, height, predictions, pixels);
+    } finally {
+      pool.shutdown();
+    }
+    assertPixelsEqual(expected, pixels, width);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsShortPredictions() {
+    new AlphaCompositor(4, 4).composite(new int[4], 2, 2, new float[15], new int[4]);
+  }
+
+  private static void assertMatchesPerPixelLoop(Random random, int maskWidth, int maskHeight,
+      int width, int height, int parallelism) {
+    int[] pixels = randomPixels(random, width * height);
+    float[] predictions = randomPredictions(random, maskWidth * maskHeight);
+    int[] expected = perPixelLoop(pixels, width, height, predictions, maskWidth, maskHeight);
+
+    int[] actual = new int[width * height];
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      new AlphaCompositor(maskWidth, maskHeight, pool).composite(pixels, width, height,
+          predictions, actual);
+    } finally {
+      pool.shutdown();
+    }
+    assertPixelsEqual(expected, actual, width);
+  }
+
+  private static void assertPixelsEqual(int[] expected, int[] actual, int width) {
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(width + "宽 (" + i % width + "," + i / width + ")", expected[i], actual[i]);
+    }
+  }
+
+  /**
+   * 原来 createCroppedBitmap 中的逐像素实现，getPixel/setPixel 换成数组读写
+   */
+  private static int[] perPixelLoop(int[] pixels, int width, int height, float[] predictions,
+      int maskWidth, int maskHeight) {
+    int[] out = new int[width * height];
+    float scaleX = (float) width / maskWidth;
+    float scaleY = (float) height / maskHeight;
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int originalPixel = pixels[y * width + x];
+        float predX = x / scaleX;
+        float predY = y / scaleY;
+
+        int x1 = Math.max(0, Math.min(maskWidth - 1, (int) predX));
+        int y1 = Math.max(0, Math.min(maskHeight - 1, (int) predY));
+        int x2 = Math.max(0, Math.min(maskWidth - 1, x1 + 1));
+        int y2 = Math.max(0, Math.min(maskHeight - 1, y1 + 1));
+
+        float fx = predX - x1;
+        float fy = predY - y1;
+
+        float pred1 = predictions[y1 * maskWidth + x1];
+        float pred2 = predictions[y1 * maskWidth + x2];
+        float pred3 = predictions[y2 * maskWidth + x1];
+        float pred4 = predictions[y2 * maskWidth + x2];
+
+        float interpolatedPred = pred1 * (1 - fx) * (1 - fy)
+            + pred2 * fx * (1 - fy)
+            + pred3 * (1 - fx) * fy
+            + pred4 * fx * fy;
+
+        int alpha = Math.max(0, Math.min(255, (int) (interpolatedPred * 255)));
+        // 与 Color.argb(alpha, red, green, blue) 相同
+        out[y * width + x] = (alpha << 24) | (originalPixel & 0x00FFFFFF);
+      }
+    }
+    return out;
+  }
+
+  private static int[] randomPixels(Random random, int size) {
+    int[] pixels = new int[size];
+    for (int i = 0; i < size; i++) {
+      pixels[i] = random.nextInt();
+    }
+    return pixels;
+  }
+
+  private static float[] randomPredictions(Random random, int size) {
+    float[] predictions = new float[size];
+    for (int i = 0; i < size; i++) {
+      // 包含略超出 [0, 1] 的值，覆盖透明度的截断
+      predictions[i] = random.nextFloat() * 1.2f - 0.1f;
+    }
+    return predictions;
+  }
+}
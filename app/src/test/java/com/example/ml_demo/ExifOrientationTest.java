@@ -0,0 +1,126 @@
+package com.example.ml_demo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * 按行带读取旋转后的图片，与先生成整张旋转后的图片再取行的结果逐像素比较
+ * 参考实现按 EXIF 规范直接写出每个方向下旋转后坐标对应的原图坐标
+ */
+public class ExifOrientationTest {
+  private static final int[] ORIENTATIONS = {
+      ExifOrientation.NORMAL, ExifOrientation.FLIP_HORIZONTAL, ExifOrientation.ROTATE_180,
+      ExifOrientation.FLIP_VERTICAL, ExifOrientation.TRANSPOSE, ExifOrientation.ROTATE_90,
+      ExifOrientation.TRANSVERSE, ExifOrientation.ROTATE_270
+  };
+
+  @Test
+  public void rowBandsMatchReferenceForEveryOrientation() {
+    Random random = new Random(19);
+    int[][] sizes = {{1, 1}, {1, 7}, {7, 1}, {5, 3}, {3, 5}, {16, 9}, {33, 17}};
+    int[] bandRows = {1, 2, 3, 4, 64};
+    for (int[] size : sizes) {
+      int[] raw = randomPixels(random, size[0] * size[1]);
+      for (int orientation : ORIENTATIONS) {
+        for (int rows : bandRows) {
+          assertBandsMatchReference(raw, size[0], size[1], orientation, rows);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void orientedSizeSwapsForQuarterTurns() {
+    for (int orientation : ORIENTATIONS) {
+      boolean swapped = orientation >= ExifOrientation.TRANSPOSE;
+      assertEquals(swapped, ExifOrientation.swapsDimensions(orientation));
+      assertEquals(swapped ? 3 : 5, ExifOrientation.orientedWidth(orientation, 5, 3));
+      assertEquals(swapped ? 5 : 3, ExifOrientation.orientedHeight(orientation, 5, 3));
+    }
+  }
+
+  /**
+   * 把旋转后的图片按 rows 行一带依次读出，最后一带可能不满 rows 行
+   */
+  private static void assertBandsMatchReference(int[] raw, int width, int height,
+      int orientation, int rows) {
+    int[] expected = reference(raw, width, height, orientation);
+    int orientedWidth = ExifOrientation.orientedWidth(orientation, width, height);
+    int orientedHeight = ExifOrientation.orientedHeight(orientation, width, height);
+    ExifOrientation.PixelReader reader = (pixels, x, y, w, h) -> {
+      for (int row = 0; row < h; row++) {
+        System.arraycopy(raw, (y + row) * width + x, pixels, row * w, w);
+      }
+    };
+    for (int y = 0; y < orientedHeight; y += rows) {
+      int bandRows = Math.min(rows, orientedHeight - y);
+      int[] band = new int[bandRows * orientedWidth];
+      ExifOrientation.readRows(reader, orientation, width, height, band, y, bandRows);
+      for (int i = 0; i < band.length; i++) {
+        int x = i % orientedWidth;
+        int row = y + i / orientedWidth;
+        assertEquals("orientation=" + orientation + " " + width + "x" + height + " rows=" + rows
+            + " (" + x + "," + row + ")", expected[row * orientedWidth + x], band[i]);
+      }
+    }
+  }
+
+  private static int[] reference(int[] raw, int width, int height, int orientation) {
+    int orientedWidth = ExifOrientation.orientedWidth(orientation, width, height);
+    int orientedHeight = ExifOrientation.orientedHeight(orientation, width, height);
+    int[] out = new int[orientedWidth * orientedHeight];
+    for (int y = 0; y < orientedHeight; y++) {
+      for (int x = 0; x < orientedWidth; x++) {
+        int rawX;
+        int rawY;
+        switch (orientation) {
+          case ExifOrientation.FLIP_HORIZONTAL -> {
+            rawX = width - 1 - x;
+            rawY = y;
+          }
+          case ExifOrientation.ROTATE_180 -> {
+            rawX = width - 1 - x;
+            rawY = height - 1 - y;
+          }
+          case ExifOrientation.FLIP_VERTICAL -> {
+            rawX = x;
+            rawY = height - 1 - y;
+          }
+          case ExifOrientation.TRANSPOSE -> {
+            rawX = y;
+            rawY = x;
+          }
+          case ExifOrientation.ROTATE_90 -> {
+            rawX = y;
+            rawY = height - 1 - x;
+          }
+          case ExifOrientation.TRANSVERSE -> {
+            rawX = width - 1 - y;
+            rawY = height - 1 - x;
+          }
+          case ExifOrientation.ROTATE_270 -> {
+            rawX = width - 1 - y;
+            rawY = x;
+          }
+          default -> {
+            rawX = x;
+            rawY = y;
+          }
+        }
+        out[y * orientedWidth + x] = raw[rawY * width + rawX];
+      }
+    }
+    return out;
+  }
+
+  private static int[] randomPixels(Random random, int size) {
+    int[] pixels = new int[size];
+    for (int i = 0; i < size; i++) {
+      pixels[i] = random.nextInt();
+    }
+    return pixels;
+  }
+}
@@ -0,0 +1,296 @@
+package com.example.ml_demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 用假的 Worker 验证调度：只推理最新的帧、计数一致、每一帧恰好归还一次
+ * 帧用整数编号表示，两个阶段通过闸门控制执行顺序
+ */
+public class LatestFrameSchedulerTest {
+  private static final long TIMEOUT_MILLIS = 5000;
+
+  @Test
+  public void newestPreparedFrameWinsWhileInferenceIsBusy() throws Exception {
+    FakeWorker worker = new FakeWorker();
+    worker.blockInference(1);
+    LatestFrameScheduler<Integer> scheduler = new LatestFrameScheduler<>(worker, Thread::new);
+    scheduler.start();
+
+    scheduler.offer(1);
+    waitUntil(() -> worker.inferenceStarted.getCount() == 0);
+    // 推理第1帧期间，2、3、4依次预处理完成，每一帧替换上一帧成为待推理的帧
+    for (int frame = 2; frame <= 4; frame++) {
+      scheduler.offer(frame);
+      final int prepared = frame;
+      waitUntil(() -> worker.isPreprocessed(prepared));
+    }
+    worker.inferenceGate.countDown();
+    waitUntil(() -> scheduler.getInferredCount() == 2);
+
+    assertEquals(List.of(1, 4), worker.inferredFrames());
+    assertEquals(4, scheduler.getOfferedCount());
+    assertEquals(2, scheduler.getDroppedCount());
+    scheduler.stop();
+    worker.assertEveryFrameReleasedOnce(4);
+  }
+
+  @Test
+  public void pendingFrameIsReplacedBeforePreprocessing() throws Exception {
+    FakeWorker worker = new FakeWorker();
+    worker.blockPreprocess(1);
+    LatestFrameScheduler<Integer> scheduler = new LatestFrameScheduler<>(worker, Thread::new);
+    scheduler.start();
+
+    scheduler.offer(1);
+    waitUntil(() -> worker.preprocessStarted.getCount() == 0);
+    // 预处理第1帧期间提交的帧互相替换，被替换的帧立即归还
+    for (int frame = 2; frame <= 6; frame++) {
+      scheduler.offer(frame);
+    }
+    for (int frame = 2; frame <= 5; frame++) {
+      assertEquals("frame " + frame, 1, worker.releaseCount(frame));
+    }
+    worker.preprocessGate.countDown();
+    waitUntil(() -> worker.inferredFrames().contains(6));
+    scheduler.stop();
+
+    // 第1帧预处理完成后，推理线程开始之前可能已经被第6帧替换
+    List<Integer> inferred = worker.inferredFrames();
+    assertTrue(inferred.toString(), inferred.equals(List.of(1, 6)) || inferred.equals(List.of(6)));
+    for (int frame = 2; frame <= 5; frame++) {
+      assertFalse("frame " + frame, worker.isPreprocessed(frame));
+    }
+    assertEquals(6, scheduler.getOfferedCount());
+    assertEquals(6 - inferred.size(), scheduler.getDroppedCount());
+    assertEquals(inferred.size(), scheduler.getInferredCount());
+    worker.assertEveryFrameReleasedOnce(6);
+  }
+
+  @Test
+  public void countsStayConsistentUnderLoad() throws Exception {
+    FakeWorker worker = new FakeWorker();
+    LatestFrameScheduler<Integer> scheduler = new LatestFrameScheduler<>(worker, Thread::new);
+    scheduler.start();
+    int frames = 2000;
+    for (int frame = 1; frame <= frames; frame++) {
+      scheduler.offer(frame);
+      if (frame % 100 == 0) {
+        Thread.sleep(1);
+      }
+    }
+    // 最后一帧总会被推理，之后不再有进行中的帧
+    waitUntil(() -> worker.inferredFrames().contains(frames));
+    scheduler.stop();
+
+    assertEquals(frames, scheduler.getOfferedCount());
+    assertEquals(scheduler.getOfferedCount(),
+        scheduler.getDroppedCount() + scheduler.getInferredCount());
+    assertEquals(scheduler.getInferredCount(), worker.inferredFrames().size());
+    List<Integer> inferred = worker.inferredFrames();
+    for (int i = 1; i < inferred.size(); i++) {
+      assertTrue("推理顺序 " + inferred, inferred.get(i) > inferred.get(i - 1));
+    }
+    worker.assertEveryFrameReleasedOnce(frames);
+  }
+
+  @Test
+  public void stopReleasesPendingFrame() throws Exception {
+    FakeWorker worker = new FakeWorker();
+    worker.blockPreprocess(1);
+    LatestFrameScheduler<Integer> scheduler = new LatestFrameScheduler<>(worker, Thread::new);
+    scheduler.start();
+
+    scheduler.offer(1);
+    waitUntil(() -> worker.preprocessStarted.getCount() == 0);
+    scheduler.offer(2);
+    assertEquals(0, worker.releaseCount(2));
+
+    // 停止时中断预处理线程，闸门等待被中断，第1帧按失败处理
+    scheduler.stop();
+    assertEquals(1, worker.releaseCount(1));
+    assertEquals(1, worker.releaseCount(2));
+    assertEquals(0, scheduler.getInferredCount());
+    assertTrue(worker.inferredFrames().isEmpty());
+
+    // 停止后提交的帧直接归还，不计入统计
+    scheduler.offer(3);
+    assertEquals(1, worker.releaseCount(3));
+    assertEquals(2, scheduler.getOfferedCount());
+    worker.assertEveryFrameReleasedOnce(3);
+  }
+
+  @Test
+  public void failedPreprocessDropsFrameAndContinues() throws Exception {
+    FakeWorker worker = new FakeWorker();
+    worker.failPreprocess(1);
+    LatestFrameScheduler<Integer> scheduler = new LatestFrameScheduler<>(worker, Thread::new);
+    scheduler.start();
+
+    scheduler.offer(1);
+    waitUntil(() -> worker.errors.get() == 1);
+    scheduler.offer(2);
+    waitUntil(() -> scheduler.getInferredCount() == 1);
+    scheduler.stop();
+
+    assertEquals(List.of(2), worker.inferredFrames());
+    assertEquals(1, scheduler.getDroppedCount());
+    worker.assertEveryFrameReleasedOnce(2);
+  }
+
+  @Test
+  public void failedInferenceReturnsSlot() throws Exception {
+    FakeWorker worker = new FakeWorker();
+    worker.failInference(1);
+    LatestFrameScheduler<Integer> scheduler = new LatestFrameScheduler<>(worker, Thread::new);
+    scheduler.start();
+
+    // 出错的帧也计入推理次数，缓冲区放回后可以继续使用
+    for (int frame = 1; frame <= LatestFrameScheduler.SLOT_COUNT + 2; frame++) {
+      scheduler.offer(frame);
+      final long inferred = frame;
+      waitUntil(() -> scheduler.getInferredCount() == inferred);
+    }
+    scheduler.stop();
+
+    assertEquals(1, worker.errors.get());
+    assertEquals(LatestFrameScheduler.SLOT_COUNT + 2, scheduler.getInferredCount());
+    assertEquals(0, scheduler.getDroppedCount());
+    worker.assertEveryFrameReleasedOnce(LatestFrameScheduler.SLOT_COUNT + 2);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void startsOnlyOnce() throws Exception {
+    LatestFrameScheduler<Integer> scheduler = new LatestFrameScheduler<>(new FakeWorker(),
+        Thread::new);
+    scheduler.start();
+    try {
+      scheduler.start();
+    } finally {
+      scheduler.stop();
+    }
+  }
+
+  private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        fail("等待超时");
+      }
+      Thread.sleep(1);
+    }
+  }
+
+  /**
+   * 预处理把帧编号写入缓冲区，推理读出编号，模拟真实的输入缓冲区
+   */
+  private static final class FakeWorker implements LatestFrameScheduler.Worker<Integer> {
+    final int[] slots = new int[LatestFrameScheduler.SLOT_COUNT];
+    final List<Integer> preprocessed = new ArrayList<>();
+    final List<Integer> inferred = new ArrayList<>();
+    final Map<Integer, AtomicInteger> releases = new ConcurrentHashMap<>();
+    final AtomicInteger errors = new AtomicInteger();
+    final CountDownLatch preprocessStarted = new CountDownLatch(1);
+    final CountDownLatch preprocessGate = new CountDownLatch(1);
+    final CountDownLatch inferenceStarted = new CountDownLatch(1);
+    final CountDownLatch inferenceGate = new CountDownLatch(1);
+    private int blockedPreprocess = -1;
+    private int blockedInference = -1;
+    private int failedPreprocess = -1;
+    private int failedInference = -1;
+
+    void blockPreprocess(int frame) {
+      blockedPreprocess = frame;
+    }
+
+    void blockInference(int frame) {
+      blockedInference = frame;
+    }
+
+    void failPreprocess(int frame) {
+      failedPreprocess = frame;
+    }
+
+    void failInference(int frame) {
+      failedInference = frame;
+    }
+
+    @Override
+    public void preprocess(Integer frame, int slot) throws Exception {
+      if (frame == blockedPreprocess) {
+        preprocessStarted.countDown();
+        if (!preprocessGate.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+          throw new IllegalStateException("预处理闸门超时");
+        }
+      }
+      if (frame == failedPreprocess) {
+        throw new IllegalStateException("预处理失败: " + frame);
+      }
+      synchronized (this) {
+        slots[slot] = frame;
+        preprocessed.add(frame);
+      }
+    }
+
+    @Override
+    public void infer(int slot) throws Exception {
+      int frame;
+      synchronized (this) {
+        frame = slots[slot];
+        inferred.add(frame);
+      }
+      if (frame == blockedInference) {
+        inferenceStarted.countDown();
+        if (!inferenceGate.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+          throw new IllegalStateException("推理闸门超时");
+        }
+      }
+      if (frame == failedInference) {
+        throw new IllegalStateException("推理失败: " + frame);
+      }
+    }
+
+    @Override
+    public void release(Integer frame) {
+      releases.computeIfAbsent(frame, key -> new AtomicInteger()).incrementAndGet();
+    }
+
+    @Override
+    public void onError(Exception e) {
+      errors.incrementAndGet();
+    }
+
+    synchronized List<Integer> inferredFrames() {
+      return new ArrayList<>(inferred);
+    }
+
+    synchronized boolean isPreprocessed(int frame) {
+      return preprocessed.contains(frame);
+    }
+
+    int releaseCount(int frame) {
+      AtomicInteger count = releases.get(frame);
+      return count != null ? count.get() : 0;
+    }
+
+    void assertEveryFrameReleasedOnce(int frames) {
+      for (int frame = 1; frame <= frames; frame++) {
+        assertEquals("frame " + frame, 1, releaseCount(frame));
+      }
+      assertEquals(frames, releases.size());
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.example.ml_demo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 融合后的 process() 与多遍参考实现逐位比较
+ */
+public class MaskPostProcessorTest {
+  private static final long SEED = 20240601L;
+
+  @Test
+  public void matchesReferenceOnSmallSizes() {
+    MaskPostProcessor processor = new MaskPostProcessor();
+    Random random = new Random(SEED);
+    int[][] sizes = {{1, 1}, {2, 2}, {1, 5}, {5, 1}, {2, 7}, {7, 2}};
+    for (int[] size : sizes) {
+      assertMatchesReference(processor, randomMask(random, size[0] * size[1]), size[0], size[1]);
+    }
+  }
+
+  @Test
+  public void matchesReferenceOnThreeWideAndThreeHigh() {
+    MaskPostProcessor processor = new MaskPostProcessor();
+    Random random = new Random(SEED + 1);
+    for (int n = 1; n <= 9; n++) {
+      assertMatchesReference(processor, randomMask(random, 3 * n), 3, n);
+      assertMatchesReference(processor, randomMask(random, 3 * n), n, 3);
+    }
+  }
+
+  @Test
+  public void matchesReferenceOnModelSizes() {
+    // 同一个实例先处理大图再处理小图，复用的行缓冲区比宽度长
+    MaskPostProcessor processor = new MaskPostProcessor();
+    Random random = new Random(SEED + 2);
+    int[][] sizes = {{320, 320}, {64, 48}, {17, 31}, {256, 192}};
+    for (int[] size : sizes) {
+      assertMatchesReference(processor, randomMask(random, size[0] * size[1]), size[0], size[1]);
+    }
+  }
+
+  @Test
+  public void matchesReferenceOnLogits() {
+    // 模型输出未经过sigmoid时的取值范围
+    MaskPostProcessor processor = new MaskPostProcessor();
+    Random random = new Random(SEED + 3);
+    int width = 40;
+    int height = 30;
+    float[] mask = new float[width * height];
+    for (int i = 0; i < mask.length; i++) {
+      mask[i] = (float) (random.nextGaussian() * 8);
+    }
+    assertMatchesReference(processor, mask, width, height);
+  }
+
+  @Test
+  public void constantMaskProducesNaNLikeReference() {
+    // 最大值等于最小值时两种实现都除以0，结果全部是NaN
+    MaskPostProcessor processor = new MaskPostProcessor();
+    int[][] sizes = {{1, 1}, {2, 2}, {3, 3}, {3, 8}, {16, 9}};
+    for (int[] size : sizes) {
+      float[] mask = new float[size[0] * size[1]];
+      Arrays.fill(mask, 0.75f);
+      float[] actual = assertMatchesReference(processor, mask, size[0], size[1]);
+      for (float value : actual) {
+        assertEquals(Float.NaN, value, 0f);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsShortBuffer() {
+    new MaskPostProcessor().process(new float[5], 3, 2);
+  }
+
+  /**
+   * 比较两种实现的每个元素，NaN按 Float.floatToIntBits 的约定视为相同，返回 process() 的结果
+   */
+  private static float[] assertMatchesReference(MaskPostProcessor processor, float[] mask,
+      int width, int height) {
+    float[] expected = reference(mask.clone(), width, height);
+    float[] actual = mask.clone();
+    processor.process(actual, width, height);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(width + "x" + height + " #" + i + " " + expected[i] + " / " + actual[i],
+          Float.floatToIntBits(expected[i]), Float.floatToIntBits(actual[i]));
+    }
+    return actual;
+  }
+
+  private static float[] reference(float[] preds, int width, int height) {
+    MaskPostProcessor.normalizePredictions(preds);
+    float[] edges = MaskPostProcessor.detectEdges(preds, width, height);
+    float[] smoothed = MaskPostProcessor.applySmoothingFilter(preds, width, height);
+    for (int i = 0; i < width * height; i++) {
+      preds[i] = preds[i] * (1 - edges[i]) + smoothed[i] * edges[i];
+    }
+    return preds;
+  }
+
+  private static float[] randomMask(Random random, int size) {
+    float[] mask = new float[size];
+    for (int i = 0; i < size; i++) {
+      mask[i] = random.nextFloat();
+    }
+    return mask;
+  }
+}
@@ -0,0 +1,327 @@
+package com.example.ml_demo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 用合成的 YUV_420_888 平面验证采样位置、旋转方向和颜色转换
+ * 参考实现先用浮点公式转换为RGB，再逐次顺时针旋转90度，最后按输出像素中心最近邻采样
+ */
+public class YuvTensorConverterTest {
+  private static final float[] MEAN = {0.485f, 0.456f, 0.406f};
+  private static final float[] STD = {0.229f, 0.224f, 0.225f};
+  private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+  private static final int FRAME_WIDTH = 12;
+  private static final int FRAME_HEIGHT = 8;
+  // 行尾填充，模拟相机缓冲区的行距大于宽度
+  private static final int ROW_PADDING = 4;
+
+  @Test
+  public void planarChromaMatchesReference() {
+    Frame frame = Frame.random(new Random(1), FRAME_WIDTH, FRAME_HEIGHT, 1);
+    for (int rotation : ROTATIONS) {
+      assertMatchesReference(frame, rotation, 5, 7);
+      assertMatchesReference(frame, rotation, 16, 16);
+    }
+  }
+
+  @Test
+  public void interleavedChromaMatchesReference() {
+    Frame frame = Frame.random(new Random(2), FRAME_WIDTH, FRAME_HEIGHT, 2);
+    for (int rotation : ROTATIONS) {
+      assertMatchesReference(frame, rotation, 5, 7);
+      assertMatchesReference(frame, rotation, 16, 16);
+    }
+  }
+
+  @Test
+  public void uprightSizeReadsEveryPixelOnce() {
+    // 输出尺寸等于旋转后的画面尺寸时，采样是一一对应的
+    for (int pixelStride = 1; pixelStride <= 2; pixelStride++) {
+      Frame frame = Frame.random(new Random(3 + pixelStride), FRAME_WIDTH, FRAME_HEIGHT,
+          pixelStride);
+      for (int rotation : ROTATIONS) {
+        boolean transposed = rotation == 90 || rotation == 270;
+        assertMatchesReference(frame, rotation, transposed ? FRAME_HEIGHT : FRAME_WIDTH,
+            transposed ? FRAME_WIDTH : FRAME_HEIGHT);
+      }
+    }
+  }
+
+  @Test
+  public void sameInstanceFollowsFormatChanges() {
+    // 采样表按帧格式缓存，行距、像素间距和旋转变化时都要重新计算
+    YuvTensorConverter converter = new YuvTensorConverter(6, 6, MEAN, STD);
+    Random random = new Random(5);
+    for (int pixelStride = 1; pixelStride <= 2; pixelStride++) {
+      Frame frame = Frame.random(random, FRAME_WIDTH, FRAME_HEIGHT, pixelStride);
+      for (int rotation : ROTATIONS) {
+        assertMatchesReference(converter, frame, rotation);
+      }
+    }
+  }
+
+  @Test
+  public void pureColorsConvertToExpectedRgb() {
+    // BT.601 全范围：中性色度是灰色，V偏红，U偏蓝；后两个是纯红、纯蓝按8位取整后的YUV
+    assertEquals(new Rgb(128, 128, 128), convertSolid(128, 128, 128));
+    assertEquals(new Rgb(255, 255, 255), convertSolid(255, 128, 128));
+    assertEquals(new Rgb(0, 0, 0), convertSolid(0, 128, 128));
+    assertEquals(new Rgb(254, 0, 0), convertSolid(76, 85, 255));
+    assertEquals(new Rgb(0, 0, 254), convertSolid(29, 255, 107));
+  }
+
+  @Test
+  public void buffersAreNotConsumed() {
+    Frame frame = Frame.random(new Random(6), FRAME_WIDTH, FRAME_HEIGHT, 2);
+    YuvTensorConverter converter = new YuvTensorConverter(4, 4, MEAN, STD);
+    FloatBuffer out = FloatBuffer.allocate(3 * 4 * 4);
+    frame.convert(converter, 90, out);
+    assertEquals(0, frame.y.position());
+    assertEquals(0, frame.u.position());
+    assertEquals(0, frame.v.position());
+    assertEquals(0, out.position());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnsupportedRotation() {
+    Frame frame = Frame.random(new Random(7), FRAME_WIDTH, FRAME_HEIGHT, 1);
+    frame.convert(new YuvTensorConverter(4, 4, MEAN, STD), 45, FloatBuffer.allocate(48));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsSmallOutput() {
+    Frame frame = Frame.random(new Random(8), FRAME_WIDTH, FRAME_HEIGHT, 1);
+    frame.convert(new YuvTensorConverter(4, 4, MEAN, STD), 0, FloatBuffer.allocate(47));
+  }
+
+  private static void assertMatchesReference(Frame frame, int rotation, int outputWidth,
+      int outputHeight) {
+    assertMatchesReference(new YuvTensorConverter(outputWidth, outputHeight, MEAN, STD), frame,
+        rotation);
+  }
+
+  private static void assertMatchesReference(YuvTensorConverter converter, Frame frame,
+      int rotation) {
+    int outputWidth = converter.getOutputWidth();
+    int outputHeight = converter.getOutputHeight();
+    int planeSize = outputWidth * outputHeight;
+    FloatBuffer out = FloatBuffer.allocate(3 * planeSize);
+    frame.convert(converter, rotation, out);
+
+    Rgb[][] upright = frame.toRgb();
+    for (int turns = rotation / 90; turns > 0; turns--) {
+      upright = rotateClockwise(upright);
+    }
+    int uprightHeight = upright.length;
+    int uprightWidth = upright[0].length;
+    for (int y = 0; y < outputHeight; y++) {
+      int sy = Math.min(uprightHeight - 1, (int) ((y + 0.5) * uprightHeight / outputHeight));
+      for (int x = 0; x < outputWidth; x++) {
+        int sx = Math.min(uprightWidth - 1, (int) ((x + 0.5) * uprightWidth / outputWidth));
+        Rgb expected = upright[sy][sx];
+        int i = y * outputWidth + x;
+        String where = "rotation=" + rotation + " stride=" + frame.uvPixelStride + " "
+            + outputWidth + "x" + outputHeight + " (" + x + "," + y + ")";
+        assertChannel(where + " R", expected.r, out.get(i), 0);
+        assertChannel(where + " G", expected.g, out.get(planeSize + i), 1);
+        assertChannel(where + " B", expected.b, out.get(2 * planeSize + i), 2);
+      }
+    }
+  }
+
+  /**
+   * 定点运算和浮点参考的取整最多相差1级
+   */
+  private static void assertChannel(String message, int expected, float actual, int channel) {
+    float normalized = (expected / 255.0f - MEAN[channel]) / STD[channel];
+    float tolerance = 1 / 255.0f / STD[channel] + 1e-5f;
+    assertEquals(message, normalized, actual, tolerance);
+  }
+
+  private static Rgb convertSolid(int y, int u, int v) {
+    Frame frame = Frame.solid(4, 4, y, u, v);
+    YuvTensorConverter converter = new YuvTensorConverter(1, 1, MEAN, STD);
+    FloatBuffer out = FloatBuffer.allocate(3);
+    frame.convert(converter, 0, out);
+    return new Rgb(denormalize(out.get(0), 0), denormalize(out.get(1), 1),
+        denormalize(out.get(2), 2));
+  }
+
+  private static int denormalize(float value, int channel) {
+    return Math.round((value * STD[channel] + MEAN[channel]) * 255);
+  }
+
+  private static Rgb[][] rotateClockwise(Rgb[][] image) {
+    int height = image.length;
+    int width = image[0].length;
+    Rgb[][] rotated = new Rgb[width][height];
+    for (int y = 0; y < width; y++) {
+      for (int x = 0; x < height; x++) {
+        rotated[y][x] = image[height - 1 - x][y];
+      }
+    }
+    return rotated;
+  }
+
+  /**
+   * 合成的一帧，U、V平面按 pixelStride 排列：1为各自独立的平面，2为交错存放（与NV21相同）
+   */
+  private static final class Frame {
+    final int width;
+    final int height;
+    final int yRowStride;
+    final int uvRowStride;
+    final int uvPixelStride;
+    final ByteBuffer y;
+    final ByteBuffer u;
+    final ByteBuffer v;
+    final int[][] luma;
+    final int[][] chromaU;
+    final int[][] chromaV;
+
+    private Frame(int width, int height, int uvPixelStride, int[][] luma, int[][] chromaU,
+        int[][] chromaV) {
+      this.width = width;
+      this.height = height;
+      this.uvPixelStride = uvPixelStride;
+      this.luma = luma;
+      this.chromaU = chromaU;
+      this.chromaV = chromaV;
+      this.yRowStride = width + ROW_PADDING;
+      this.uvRowStride = width / 2 * uvPixelStride + ROW_PADDING;
+
+      byte[] yBytes = new byte[yRowStride * height];
+      for (int row = 0; row < height; row++) {
+        for (int col = 0; col < width; col++) {
+          yBytes[row * yRowStride + col] = (byte) luma[row][col];
+        }
+      }
+      this.y = ByteBuffer.wrap(yBytes);
+
+      int chromaWidth = width / 2;
+      int chromaHeight = height / 2;
+      if (uvPixelStride == 1) {
+        byte[] uBytes = new byte[uvRowStride * chromaHeight];
+        byte[] vBytes = new byte[uvRowStride * chromaHeight];
+        for (int row = 0; row < chromaHeight; row++) {
+          for (int col = 0; col < chromaWidth; col++) {
+            uBytes[row * uvRowStride + col] = (byte) chromaU[row][col];
+            vBytes[row * uvRowStride + col] = (byte) chromaV[row][col];
+          }
+        }
+        this.u = ByteBuffer.wrap(uBytes);
+        this.v = ByteBuffer.wrap(vBytes);
+      } else {
+        // V U V U ...，两个平面是同一块内存错开一个字节的视图
+        byte[] vu = new byte[uvRowStride * chromaHeight + 1];
+        for (int row = 0; row < chromaHeight; row++) {
+          for (int col = 0; col < chromaWidth; col++) {
+            vu[row * uvRowStride + col * 2] = (byte) chromaV[row][col];
+            vu[row * uvRowStride + col * 2 + 1] = (byte) chromaU[row][col];
+          }
+        }
+        ByteBuffer shared = ByteBuffer.wrap(vu);
+        this.v = shared.duplicate();
+        shared.position(1);
+        this.u = shared.slice();
+      }
+    }
+
+    static Frame random(Random random, int width, int height, int uvPixelStride) {
+      int[][] luma = new int[height][width];
+      int[][] chromaU = new int[height / 2][width / 2];
+      int[][] chromaV = new int[height / 2][width / 2];
+      fill(random, luma);
+      fill(random, chromaU);
+      fill(random, chromaV);
+      return new Frame(width, height, uvPixelStride, luma, chromaU, chromaV);
+    }
+
+    static Frame solid(int width, int height, int y, int u, int v) {
+      int[][] luma = new int[height][width];
+      int[][] chromaU = new int[height / 2][width / 2];
+      int[][] chromaV = new int[height / 2][width / 2];
+      for (int[] row : luma) {
+        Arrays.fill(row, y);
+      }
+      for (int row = 0; row < height / 2; row++) {
+        Arrays.fill(chromaU[row], u);
+        Arrays.fill(chromaV[row], v);
+      }
+      return new Frame(width, height, 1, luma, chromaU, chromaV);
+    }
+
+    private static void fill(Random random, int[][] plane) {
+      for (int[] row : plane) {
+        for (int i = 0; i < row.length; i++) {
+          row[i] = random.nextInt(256);
+        }
+      }
+    }
+
+    void convert(YuvTensorConverter converter, int rotation, FloatBuffer out) {
+      converter.convert(y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride,
+          rotation, out);
+    }
+
+    /**
+     * 浮点公式的参考转换，每个色度样本覆盖2x2个亮度像素
+     */
+    Rgb[][] toRgb() {
+      Rgb[][] rgb = new Rgb[height][width];
+      for (int row = 0; row < height; row++) {
+        for (int col = 0; col < width; col++) {
+          double l = luma[row][col];
+          double cu = chromaU[row / 2][col / 2] - 128;
+          double cv = chromaV[row / 2][col / 2] - 128;
+          rgb[row][col] = new Rgb(clamp(l + 1.402 * cv), clamp(l - 0.344136 * cu - 0.714136 * cv),
+              clamp(l + 1.772 * cu));
+        }
+      }
+      return rgb;
+    }
+
+    private static int clamp(double value) {
+      return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+  }
+
+  private static final class Rgb {
+    final int r;
+    final int g;
+    final int b;
+
+    Rgb(int r, int g, int b) {
+      this.r = r;
+      this.g = g;
+      this.b = b;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Rgb)) {
+        return false;
+      }
+      Rgb other = (Rgb) o;
+      return r == other.r && g == other.g && b == other.b;
+    }
+
+    @Override
+    public int hashCode() {
+      return (r << 16) | (g << 8) | b;
+    }
+
+    @Override
+    public String toString() {
+      return "(" + r + ", " + g + ", " + b + ")";
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.example.ml_demo.benchmark;
+
+import com.example.ml_demo.AlphaCompositor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 抠图合成：320x320预测结果双线性插值到不同尺寸的原图上
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AlphaCompositorBenchmark {
+  private static final int MASK_SIZE = 320;
+
+  @Param({ImageSizes.MODEL_INPUT, ImageSizes.FULL_HD, ImageSizes.TWELVE_MP})
+  public String size;
+
+  private int width;
+  private int height;
+  private int[] pixels;
+  private int[] out;
+  private float[] predictions;
+  private ForkJoinPool singleThreadPool;
+  private AlphaCompositor parallelCompositor;
+  private AlphaCompositor singleThreadCompositor;
+
+  @Setup
+  public void setUp() {
+    width = ImageSizes.width(size);
+    height = ImageSizes.height(size);
+    pixels = ImageSizes.randomPixels(width, height, 7);
+    out = new int[pixels.length];
+    predictions = ImageSizes.randomPredictions(MASK_SIZE, MASK_SIZE, 42);
+    for (int i = 0; i < predictions.length; i++) {
+      predictions[i] = predictions[i] > 0 ? 1f : 0f;
+    }
+    singleThreadPool = new ForkJoinPool(1);
+    parallelCompositor = new AlphaCompositor(MASK_SIZE, MASK_SIZE);
+    singleThreadCompositor = new AlphaCompositor(MASK_SIZE, MASK_SIZE, singleThreadPool);
+  }
+
+  @Benchmark
+  public int[] compositeParallel() {
+    parallelCompositor.composite(pixels, width, height, predictions, out);
+    return out;
+  }
+
+  @Benchmark
+  public int[] compositeSingleThread() {
+    singleThreadCompositor.composite(pixels, width, height, predictions, out);
+    return out;
+  }
+}
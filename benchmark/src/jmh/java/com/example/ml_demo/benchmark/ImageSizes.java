@@ -0,0 +1,50 @@
+package com.example.ml_demo.benchmark;
+
+import java.util.Random;
+
+/**
+ * 基准测试使用的图片尺寸和测试数据
+ * 320x320 为模型输入尺寸，1920x1080 为1080p，4000x3000 为1200万像素照片
+ */
+final class ImageSizes {
+  static final String MODEL_INPUT = "320x320";
+  static final String FULL_HD = "1920x1080";
+  static final String TWELVE_MP = "4000x3000";
+
+  private ImageSizes() {
+  }
+
+  static int width(String size) {
+    return Integer.parseInt(size.substring(0, size.indexOf('x')));
+  }
+
+  static int height(String size) {
+    return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+  }
+
+  /**
+   * 模拟模型输出：中间为前景的显著性分布加随机噪声
+   */
+  static float[] randomPredictions(int width, int height, long seed) {
+    Random random = new Random(seed);
+    float[] preds = new float[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        float dx = (x - width / 2f) / width;
+        float dy = (y - height / 2f) / height;
+        float saliency = dx * dx + dy * dy < 0.09f ? 8f : -8f;
+        preds[y * width + x] = saliency + (float) random.nextGaussian();
+      }
+    }
+    return preds;
+  }
+
+  static int[] randomPixels(int width, int height, long seed) {
+    Random random = new Random(seed);
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = 0xFF000000 | random.nextInt(0x01000000);
+    }
+    return pixels;
+  }
+}
@@ -0,0 +1,77 @@
+package com.example.ml_demo.benchmark;
+
+import com.example.ml_demo.MaskPostProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 掩码后处理：原来的多遍实现与融合后的单遍实现
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MaskPostProcessorBenchmark {
+  @Param({ImageSizes.MODEL_INPUT, ImageSizes.FULL_HD, ImageSizes.TWELVE_MP})
+  public String size;
+
+  private int width;
+  private int height;
+  private float[] source;
+  private float[] normalized;
+  private float[] preds;
+  private final MaskPostProcessor maskPostProcessor = new MaskPostProcessor();
+
+  @Setup(Level.Trial)
+  public void setUpTrial() {
+    width = ImageSizes.width(size);
+    height = ImageSizes.height(size);
+    source = ImageSizes.randomPredictions(width, height, 42);
+    normalized = source.clone();
+    MaskPostProcessor.normalizePredictions(normalized);
+    preds = new float[source.length];
+  }
+
+  @Setup(Level.Invocation)
+  public void resetPredictions() {
+    System.arraycopy(source, 0, preds, 0, source.length);
+  }
+
+  @Benchmark
+  public float[] normalizePredictions() {
+    MaskPostProcessor.normalizePredictions(preds);
+    return preds;
+  }
+
+  @Benchmark
+  public float[] detectEdges() {
+    return MaskPostProcessor.detectEdges(normalized, width, height);
+  }
+
+  @Benchmark
+  public float[] applySmoothingFilter() {
+    return MaskPostProcessor.applySmoothingFilter(normalized, width, height);
+  }
+
+  @Benchmark
+  public float[] referencePipeline() {
+    MaskPostProcessor.normalizePredictions(preds);
+    MaskPostProcessor.applyEdgeSmoothing(preds, width, height);
+    return preds;
+  }
+
+  @Benchmark
+  public float[] fusedPipeline() {
+    maskPostProcessor.process(preds, width, height);
+    return preds;
+  }
+}
@@ -0,0 +1,48 @@
+package com.example.ml_demo.benchmark;
+
+import com.example.ml_demo.TensorNormalizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 张量归一化：与 TensorImageUtils.bitmapToFloat32Tensor 相同的 mean/std 计算
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TensorNormalizerBenchmark {
+  // 与 TensorImageUtils.TORCHVISION_NORM_MEAN_RGB / TORCHVISION_NORM_STD_RGB 相同
+  private static final float[] MEAN_RGB = {0.485f, 0.456f, 0.406f};
+  private static final float[] STD_RGB = {0.229f, 0.224f, 0.225f};
+
+  @Param({ImageSizes.MODEL_INPUT, ImageSizes.FULL_HD, ImageSizes.TWELVE_MP})
+  public String size;
+
+  private int pixelCount;
+  private int[] pixels;
+  private float[] out;
+
+  @Setup
+  public void setUp() {
+    int width = ImageSizes.width(size);
+    int height = ImageSizes.height(size);
+    pixelCount = width * height;
+    pixels = ImageSizes.randomPixels(width, height, 11);
+    out = new float[3 * pixelCount];
+  }
+
+  @Benchmark
+  public float[] normalize() {
+    TensorNormalizer.normalize(pixels, pixelCount, MEAN_RGB, STD_RGB, out, 0);
+    return out;
+  }
+}